@@ -0,0 +1,122 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.codec.CalldataDecoder;
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.SelectorRegistry;
+import com.blockchain.tools.eth.codec.StaticAbiDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding return data and calldata: web3j FunctionReturnDecoder, through decoderInputData, against the decoders of the codec package
+ *
+ * The static decoders are the ones the Commons.result* methods of the templates use, except resultString which goes through web3j
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AbiDecoderBenchmark {
+
+    private static final String TO = "0x552115849813d334C58f2757037F68E2963C4c5e";
+
+    private static final BigInteger AMOUNT = new BigInteger("1000000000000000000");
+
+    private String uint256Data;
+
+    private String addressData;
+
+    private String stringData;
+
+    /**
+     * transfer(address,uint256) calldata, selector included
+     */
+    private String transferCalldata;
+
+    private SelectorRegistry registry;
+
+    @Setup
+    public void setup(){
+        uint256Data = "0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(new Uint256(AMOUNT)));
+        addressData = "0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(new Address(TO)));
+        stringData = "0x" + FunctionEncoder.encodeConstructor(Arrays.<Type>asList(new Utf8String("ipfs://QmYwAPJzv5CZsnA625s3Xf2nemtYgPpHdWEz79ojWnPbdG/1")));
+        transferCalldata = EthAbiCodecTool.getInputData("transfer", new Address(TO), new Uint256(AMOUNT));
+        registry = SelectorRegistry.builder();
+    }
+
+    @Benchmark
+    public List<Type> decoderInputDataUint256(){
+        return EthAbiCodecTool.decoderInputData(uint256Data, new TypeReference<Uint256>() {});
+    }
+
+    /**
+     * Commons.resultBigInteger
+     */
+    @Benchmark
+    public BigInteger staticDecoderUint256(){
+        return StaticAbiDecoder.decodeUint256(uint256Data, 0);
+    }
+
+    @Benchmark
+    public List<Type> decoderInputDataAddress(){
+        return EthAbiCodecTool.decoderInputData(addressData, new TypeReference<Address>() {});
+    }
+
+    /**
+     * Commons.resultAddress
+     */
+    @Benchmark
+    public String staticDecoderAddress(){
+        return StaticAbiDecoder.decodeAddress(addressData, 0);
+    }
+
+    /**
+     * Commons.resultString
+     */
+    @Benchmark
+    public List<Type> decoderInputDataString(){
+        return EthAbiCodecTool.decoderInputData(stringData, new TypeReference<Utf8String>() {});
+    }
+
+    /**
+     * Calldata of a known function, the arguments after the selector
+     */
+    @Benchmark
+    public List<Type> decoderInputDataCalldata(){
+        return EthAbiCodecTool.decoderInputData(
+                "0x" + transferCalldata.substring(10),
+                new TypeReference<Address>() {},
+                new TypeReference<Uint256>() {}
+        );
+    }
+
+    /**
+     * Calldata of any registered function: selector lookup, then the prebuilt decoder
+     */
+    @Benchmark
+    public List<Type> selectorRegistry(){
+        CalldataDecoder decoder = registry.get(transferCalldata);
+        return decoder.decode(transferCalldata);
+    }
+}
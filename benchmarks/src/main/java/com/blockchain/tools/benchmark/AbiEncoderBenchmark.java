@@ -0,0 +1,100 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
+import com.blockchain.tools.eth.codec.StaticAbiEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding transfer(address,uint256) calldata: web3j FunctionEncoder against the encoders of the codec package
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AbiEncoderBenchmark {
+
+    private static final String TO = "0x552115849813d334C58f2757037F68E2963C4c5e";
+
+    private static final BigInteger AMOUNT = new BigInteger("1000000000000000000");
+
+    private PreparedFunction transfer;
+
+    private StaticAbiEncoder encoder;
+
+    @Setup
+    public void setup(){
+        transfer = EthAbiCodecTool.prepare("transfer", Address.class, Uint256.class);
+        encoder = StaticAbiEncoder.builder(transfer);
+    }
+
+    /**
+     * The path before the codec caches: Function object, signature hash and hex encoding on every call
+     */
+    @Benchmark
+    public String functionEncoder(){
+        Function function = new Function(
+                "transfer",
+                Arrays.<Type>asList(new Address(TO), new Uint256(AMOUNT)),
+                new ArrayList<>()
+        );
+        return FunctionEncoder.encode(function);
+    }
+
+    @Benchmark
+    public String getInputData(){
+        return EthAbiCodecTool.getInputData("transfer", new Address(TO), new Uint256(AMOUNT));
+    }
+
+    /**
+     * Selector only, the signature is built from the arguments and its hash comes from the selector cache
+     */
+    @Benchmark
+    public String getFunAbiCode(){
+        return EthAbiCodecTool.getFunAbiCode("transfer", new Address(TO), new Uint256(AMOUNT));
+    }
+
+    @Benchmark
+    public String preparedFunction(){
+        return transfer.encode(new Address(TO), new Uint256(AMOUNT));
+    }
+
+    /**
+     * Bytes written into the reused buffer, no copy
+     */
+    @Benchmark
+    public byte[] staticEncoder(){
+        return encoder.reset().putAddress(TO).putUint256(AMOUNT).array();
+    }
+
+    /**
+     * Same as the web3j path end to end: hex calldata out
+     */
+    @Benchmark
+    public String staticEncoderToHex(){
+        encoder.reset().putAddress(TO).putUint256(AMOUNT);
+        return Numeric.toHexString(encoder.toByteArray());
+    }
+}
@@ -0,0 +1,121 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
+import com.blockchain.tools.eth.contract.template.ERC1155Contract;
+import com.blockchain.tools.eth.contract.util.model.BatchBalances;
+import com.blockchain.tools.eth.rpc.MockWeb3jService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.request.Transaction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ERC1155 balanceOfBatch for a growing number of (address, tokenId) pairs
+ *
+ * encode is the calldata alone, built the way ERC1155Contract does. The other benchmarks are whole reads against
+ * MockWeb3jService without latency: the calldata, the JSON-RPC response mapping and the decoding of the balances
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceOfBatchBenchmark {
+
+    private static final String TOKEN = "0x428862f821b1A5eFff5B258583572451229eEeA6";
+
+    private static final PreparedFunction BALANCE_OF_BATCH = EthAbiCodecTool.prepare(
+            "balanceOfBatch",
+            new TypeReference<DynamicArray<Address>>() {},
+            new TypeReference<DynamicArray<Uint256>>() {}
+    );
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private List<String> addresses;
+
+    private List<BigInteger> tokenIds;
+
+    private ERC1155Contract erc1155;
+
+    @Setup
+    public void setup(){
+        addresses = new ArrayList<>(size);
+        tokenIds = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            addresses.add(String.format("0x%040x", i + 1));
+            tokenIds.add(BigInteger.valueOf(i));
+        }
+
+        MockWeb3jService mock = MockWeb3jService.builder()
+                .on("eth_call", params -> balances(((Transaction) params.get(0)).getData()));
+        erc1155 = ERC1155Contract.builder(Web3j.build(mock), TOKEN);
+    }
+
+    @Benchmark
+    public String encode(){
+        Address[] addressArray = new Address[size];
+        Uint256[] tokenIdArray = new Uint256[size];
+        for(int i = 0; i < size; i++){
+            addressArray[i] = new Address(addresses.get(i));
+            tokenIdArray[i] = new Uint256(tokenIds.get(i));
+        }
+        return BALANCE_OF_BATCH.encode(
+                new DynamicArray<>(Address.class, addressArray),
+                new DynamicArray<>(Uint256.class, tokenIdArray)
+        );
+    }
+
+    /**
+     * The balances are decoded by web3j
+     */
+    @Benchmark
+    public List<BigInteger> balanceOfBatch() throws Exception {
+        return erc1155.balanceOfBatch(addresses, tokenIds);
+    }
+
+    /**
+     * The balances are read in place into a BatchBalances, one chunk per 500 pairs
+     */
+    @Benchmark
+    public BatchBalances balanceOfBatchChunked() throws Exception {
+        return erc1155.balanceOfBatchChunked(addresses, tokenIds);
+    }
+
+    /**
+     * Return data of balanceOfBatch with one balance per pair of the calldata
+     * @param calldata
+     * @return
+     */
+    private static String balances(String calldata){
+        // Selector, then the offsets of the two arrays, then the length of the first
+        int count = Integer.parseInt(calldata.substring(10 + 64 * 2, 10 + 64 * 3), 16);
+        StringBuilder builder = new StringBuilder(2 + 64 * (count + 2));
+        builder.append("0x").append(String.format("%064x%064x", 32, count));
+        for(int i = 0; i < count; i++){
+            builder.append(String.format("%064x", 1000 + i));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.signer.CredentialsSigner;
+import com.blockchain.tools.eth.signer.SignerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.crypto.TransactionEncoder;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RLP encoding and signing of an ERC20 transfer, the work sendRawTransaction does between the fees and the broadcast
+ *
+ * The key is fixed so every run signs the same bytes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RlpSigningBenchmark {
+
+    /**
+     * A well known test key, never use it on a real chain
+     */
+    private static final String PRIVATE_KEY = "4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+
+    private static final String TOKEN = "0x428862f821b1A5eFff5B258583572451229eEeA6";
+
+    private static final long CHAIN_ID = 1;
+
+    private RawTransaction legacy;
+
+    private RawTransaction eip1559;
+
+    private CredentialsSigner signer;
+
+    private String signedLegacy;
+
+    @Setup
+    public void setup(){
+        String inputData = EthAbiCodecTool.getInputData("transfer",
+                new Address("0x552115849813d334C58f2757037F68E2963C4c5e"),
+                new Uint256(new BigInteger("1000000000000000000")));
+
+        legacy = RawTransaction.createTransaction(
+                BigInteger.valueOf(7), BigInteger.valueOf(20_000_000_000L), BigInteger.valueOf(60_000), TOKEN, BigInteger.ZERO, inputData);
+        eip1559 = RawTransaction.createTransaction(
+                CHAIN_ID, BigInteger.valueOf(7), BigInteger.valueOf(60_000), TOKEN, BigInteger.ZERO, inputData,
+                BigInteger.valueOf(1_000_000_000L), BigInteger.valueOf(40_000_000_000L));
+
+        signer = CredentialsSigner.builder(Credentials.create(PRIVATE_KEY));
+        signedLegacy = Numeric.toHexString(signer.signTransaction(legacy, CHAIN_ID));
+    }
+
+    /**
+     * RLP of the unsigned EIP-155 payload, the bytes that are hashed and signed
+     */
+    @Benchmark
+    public byte[] encodeLegacy(){
+        return TransactionEncoder.encode(legacy, CHAIN_ID);
+    }
+
+    @Benchmark
+    public byte[] encodeEip1559(){
+        return TransactionEncoder.encode(eip1559);
+    }
+
+    /**
+     * Hash, ECDSA signature and RLP of the signed transaction
+     */
+    @Benchmark
+    public byte[] signLegacy(){
+        return signer.signTransaction(legacy, CHAIN_ID);
+    }
+
+    @Benchmark
+    public byte[] signEip1559(){
+        return signer.signTransaction(eip1559, CHAIN_ID);
+    }
+
+    /**
+     * Signing with a private key on the SendModel: the key pair comes from SignerRegistry
+     */
+    @Benchmark
+    public byte[] signWithRegistry(){
+        return SignerRegistry.get(PRIVATE_KEY).signTransaction(legacy, CHAIN_ID);
+    }
+
+    /**
+     * Signing with the key pair derived on every call, what SignerRegistry saves
+     */
+    @Benchmark
+    public byte[] signWithKeyDerivation(){
+        return TransactionEncoder.signMessage(legacy, CHAIN_ID, Credentials.create(PRIVATE_KEY));
+    }
+
+    @Benchmark
+    public RawTransaction decodeSigned(){
+        return TransactionDecoder.decode(signedLegacy);
+    }
+}
@@ -0,0 +1,113 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
+import com.blockchain.tools.eth.contract.util.EthContractUtil;
+import com.blockchain.tools.eth.contract.util.TransactionPipeline;
+import com.blockchain.tools.eth.contract.util.model.SendModel;
+import com.blockchain.tools.eth.contract.util.model.SendResultModel;
+import com.blockchain.tools.eth.rpc.MockWeb3jService;
+import com.blockchain.tools.eth.signer.CredentialsSigner;
+import com.blockchain.tools.eth.signer.Signer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and broadcasting a batch of transfers through TransactionPipeline, for a growing number of signing threads
+ *
+ * The node is MockWeb3jService without latency, so the time is spent signing and the throughput shows how signing scales with cores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningPipelineBenchmark {
+
+    private static final int TRANSACTIONS = 1000;
+
+    private static final int SENDERS = 8;
+
+    private static final String TOKEN = "0x428862f821b1A5eFff5B258583572451229eEeA6";
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private ForkJoinPool signingPool;
+
+    private TransactionPipeline pipeline;
+
+    private Signer[] signers;
+
+    private List<String> inputDataList;
+
+    @Setup
+    public void setup() throws Exception {
+        MockWeb3jService mock = MockWeb3jService.builder()
+                .on("eth_getTransactionCount", params -> "0x0")
+                .on("eth_sendRawTransaction", params -> "0x" + Numeric.toHexStringNoPrefixZeroPadded(BigInteger.ONE, 64));
+        EthContractUtil ethContractUtil = EthContractUtil.builder(Web3j.build(mock));
+
+        signingPool = new ForkJoinPool(parallelism);
+        pipeline = TransactionPipeline.builder(ethContractUtil).setSigningPool(signingPool);
+
+        // Keys are derived up front, the benchmark measures signing only
+        signers = new Signer[SENDERS];
+        for(int i = 0; i < SENDERS; i++){
+            signers[i] = CredentialsSigner.builder(Credentials.create(Keys.createEcKeyPair()));
+        }
+
+        PreparedFunction transfer = EthAbiCodecTool.prepare("transfer", Address.class, Uint256.class);
+        inputDataList = new ArrayList<>(TRANSACTIONS);
+        for(int i = 0; i < TRANSACTIONS; i++){
+            inputDataList.add(transfer.encode(new Address(TOKEN), new Uint256(BigInteger.valueOf(i))));
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        signingPool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public List<CompletableFuture<SendResultModel>> submit() throws Exception {
+        List<SendModel> sendModels = new ArrayList<>(TRANSACTIONS);
+        for(int i = 0; i < TRANSACTIONS; i++){
+            sendModels.add(SendModel.builder()
+                    .setSigner(signers[i % SENDERS])
+                    .setToAddress(TOKEN)
+                    .setGasPrice(BigInteger.TEN)
+                    .setChainId(97));
+        }
+
+        List<CompletableFuture<SendResultModel>> results = pipeline.submit(sendModels, inputDataList);
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        return results;
+    }
+}
@@ -0,0 +1,171 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.rpc.StreamingRpcClient;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsing an eth_getLogs response of ERC20 transfers: web3j object mapping against StreamingRpcClient
+ *
+ * Run with -prof gc for the allocation per response. The main method reports the peak heap of each path,
+ * with a small heap the streaming path still completes while the mapping runs out of memory:
+ * <pre>
+ * java -Xmx64m -cp target/benchmarks.jar com.blockchain.tools.benchmark.StreamingLogsBenchmark 200000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StreamingLogsBenchmark {
+
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    @Param({"10000", "100000"})
+    public int logs;
+
+    private File response;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        response = writeResponse(logs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        response.delete();
+    }
+
+    /**
+     * The web3j path: the whole response becomes an EthLog before the first log can be used
+     */
+    @Benchmark
+    public int web3jMapping() throws Exception {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(response))) {
+            return ObjectMapperFactory.getObjectMapper().readValue(in, EthLog.class).getLogs().size();
+        }
+    }
+
+    @Benchmark
+    public long streaming() throws Exception {
+        AtomicLong blocks = new AtomicLong();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(response))) {
+            StreamingRpcClient.readLogs(in, log -> blocks.addAndGet(log.getBlockNumber().longValue()));
+        }
+        return blocks.get();
+    }
+
+    /**
+     * Peak heap of each path for one response
+     * @param args number of logs, 200000 by default
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        StreamingLogsBenchmark benchmark = new StreamingLogsBenchmark();
+        benchmark.response = writeResponse(count);
+        try {
+            System.out.println("response of " + count + " logs, " + benchmark.response.length() / (1024 * 1024) + " MB");
+            // Warm up so class loading is not counted
+            benchmark.streaming();
+            System.out.println("streaming peak heap:     " + peakHeap(benchmark::streaming) / (1024 * 1024) + " MB");
+            try {
+                System.out.println("web3j mapping peak heap: " + peakHeap(benchmark::web3jMapping) / (1024 * 1024) + " MB");
+            } catch (OutOfMemoryError e){
+                System.out.println("web3j mapping peak heap: OutOfMemoryError with -Xmx" + Runtime.getRuntime().maxMemory() / (1024 * 1024) + "m");
+            }
+        } finally {
+            benchmark.response.delete();
+        }
+    }
+
+    /**
+     * Heap in use at the peak of a run, above what was in use before it
+     */
+    private static long peakHeap(Run run) throws Exception {
+        System.gc();
+        long before = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                before += pool.getUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        run.run();
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak - before;
+    }
+
+    /**
+     * Write an eth_getLogs response with the given number of transfer logs to a temporary file
+     */
+    private static File writeResponse(int count) throws Exception {
+        File file = File.createTempFile("eth_getLogs", ".json");
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("jsonrpc", "2.0");
+            generator.writeNumberField("id", 1);
+            generator.writeArrayFieldStart("result");
+            for(int i = 0; i < count; i++){
+                String word = String.format("%064x", i);
+                generator.writeStartObject();
+                generator.writeStringField("address", "0x428862f821b1a5efff5b258583572451229eeea6");
+                generator.writeArrayFieldStart("topics");
+                generator.writeString(TRANSFER);
+                generator.writeString("0x000000000000000000000000b4e32492e9725c3215f1662cf28db1862ed1ee84");
+                generator.writeString("0x" + word);
+                generator.writeEndArray();
+                generator.writeStringField("data", "0x" + word);
+                generator.writeStringField("blockNumber", "0x" + Integer.toHexString(30000000 + i / 100));
+                generator.writeStringField("transactionHash", "0x" + word);
+                generator.writeStringField("transactionIndex", "0x" + Integer.toHexString(i % 100));
+                generator.writeStringField("blockHash", "0x" + word);
+                generator.writeStringField("logIndex", "0x" + Integer.toHexString(i % 100));
+                generator.writeBooleanField("removed", false);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return file;
+    }
+
+    private interface Run {
+
+        Object run() throws Exception;
+    }
+}
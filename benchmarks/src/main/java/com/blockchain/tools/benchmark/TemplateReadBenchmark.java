@@ -0,0 +1,121 @@
+package com.blockchain.tools.benchmark;
+
+import com.blockchain.tools.eth.contract.template.ERC20Contract;
+import com.blockchain.tools.eth.contract.template.ERC721Contract;
+import com.blockchain.tools.eth.rpc.MockWeb3jService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.request.Transaction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One read through a template, from the encoding of the call to the decoding of the result by Commons.result*
+ *
+ * The node is MockWeb3jService without latency, the time is the client side of a read: encoding, the JSON-RPC response mapping and decoding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateReadBenchmark {
+
+    private static final String TOKEN = "0x428862f821b1A5eFff5B258583572451229eEeA6";
+
+    private static final String OWNER = "0x552115849813d334C58f2757037F68E2963C4c5e";
+
+    private static final BigInteger TOKEN_ID = BigInteger.valueOf(42);
+
+    private ERC20Contract erc20;
+
+    private ERC721Contract erc721;
+
+    @Setup
+    public void setup(){
+        String uint256 = encode(new Uint256(new BigInteger("1000000000000000000")));
+        String address = encode(new Address(OWNER));
+        String bool = encode(new Bool(true));
+        String string = encode(new Utf8String("ipfs://QmYwAPJzv5CZsnA625s3Xf2nemtYgPpHdWEz79ojWnPbdG/42"));
+
+        MockWeb3jService mock = MockWeb3jService.builder()
+                .on("eth_call", params -> {
+                    String selector = ((Transaction) params.get(0)).getData().substring(0, 10);
+                    switch (selector){
+                        case "0x6352211e": // ownerOf(uint256)
+                            return address;
+                        case "0xe985e9c5": // isApprovedForAll(address,address)
+                            return bool;
+                        case "0xc87b56dd": // tokenURI(uint256)
+                            return string;
+                        default:
+                            return uint256;
+                    }
+                });
+        Web3j web3j = Web3j.build(mock);
+        erc20 = ERC20Contract.builder(web3j, TOKEN);
+        erc721 = ERC721Contract.builder(web3j, TOKEN);
+    }
+
+    /**
+     * Commons.resultBigInteger
+     */
+    @Benchmark
+    public BigInteger balanceOf() throws Exception {
+        return erc20.balanceOf(OWNER);
+    }
+
+    /**
+     * The same read through the async path, joined
+     */
+    @Benchmark
+    public BigInteger balanceOfAsync(){
+        return erc20.balanceOfAsync(OWNER).join();
+    }
+
+    /**
+     * Commons.resultAddress
+     */
+    @Benchmark
+    public String ownerOf() throws Exception {
+        return erc721.ownerOf(TOKEN_ID);
+    }
+
+    /**
+     * Commons.resultBool
+     */
+    @Benchmark
+    public Boolean isApprovedForAll() throws Exception {
+        return erc721.isApprovedForAll(OWNER, TOKEN);
+    }
+
+    /**
+     * Commons.resultString
+     */
+    @Benchmark
+    public String tokenURI() throws Exception {
+        return erc721.tokenURI(TOKEN_ID);
+    }
+
+    private static String encode(Type value){
+        return "0x" + FunctionEncoder.encodeConstructor(Arrays.asList(value));
+    }
+}
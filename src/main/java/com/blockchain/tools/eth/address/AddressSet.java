@@ -0,0 +1,431 @@
+package com.blockchain.tools.eth.address;
+
+import com.blockchain.tools.eth.event.LogIndexer;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of addresses packed off heap
+ *
+ * Each address takes 20 bytes in an open addressing table in a direct buffer, instead of a hex String
+ * of about 100 bytes plus a HashSet entry on the heap, so millions of addresses fit in tens of megabytes.
+ * An optional Bloom filter in front answers most misses without touching the table,
+ * which is what a deposit scanner sees for almost every transfer.
+ *
+ * Lookups are safe from many threads once the set is built, adding is not thread safe:
+ * <pre>
+ * AddressSet deposits = AddressSet.load(Paths.get("deposits.bin"), true);
+ * deposits.contains("0xb4e32492E9725c3215F1662Cf28Db1862ed1EE84");
+ * </pre>
+ */
+public class AddressSet {
+
+    private static final int ADDRESS_BYTES = 20;
+
+    /**
+     * Largest number of slots, the table must stay addressable by an int offset
+     */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    /**
+     * Bits of the Bloom filter per expected address, about 1% false positives with 3 hashes
+     */
+    private static final int BLOOM_BITS_PER_ADDRESS = 10;
+
+    private static final int BLOOM_HASHES = 3;
+
+    /**
+     * Slots of 20 bytes, all zero marks an empty slot
+     */
+    private ByteBuffer table;
+
+    private int capacity;
+
+    private int size;
+
+    /**
+     * The zero address can not be stored in the table since it marks empty slots
+     */
+    private boolean containsZero;
+
+    /**
+     * Bloom filter bits, null if there is no filter
+     */
+    private long[] bloom;
+
+    private AddressSet(int expectedSize, boolean bloomFilter){
+        int capacity = 16;
+        while (capacity < expectedSize * 2L && capacity < MAX_CAPACITY){
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        if(bloomFilter){
+            long bits = Math.max(64L, (long) expectedSize * BLOOM_BITS_PER_ADDRESS);
+            bloom = new long[(int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64)];
+        }
+    }
+
+    /**
+     * @param expectedSize number of addresses the set is sized for, it grows past it
+     * @return
+     */
+    public static AddressSet builder(int expectedSize){
+        return new AddressSet(expectedSize, false);
+    }
+
+    /**
+     * @param expectedSize number of addresses the set is sized for, it grows past it
+     * @param bloomFilter put a Bloom filter sized for expectedSize in front of the table
+     * @return
+     */
+    public static AddressSet builder(int expectedSize, boolean bloomFilter){
+        return new AddressSet(expectedSize, bloomFilter);
+    }
+
+    /**
+     * Load a file of packed 20 byte addresses, as written by {@link #save(Path)}, through a memory mapping
+     * @param file
+     * @param bloomFilter
+     * @return
+     * @throws IOException
+     */
+    public static AddressSet load(Path file, boolean bloomFilter) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if(length % ADDRESS_BYTES != 0){
+                throw new IOException(file + " is not a file of 20 byte addresses, its length is " + length);
+            }
+            AddressSet addressSet = new AddressSet((int) Math.min(MAX_CAPACITY / 2, length / ADDRESS_BYTES), bloomFilter);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            for(int offset = 0; offset < length; offset += ADDRESS_BYTES){
+                addressSet.add(mapped.getLong(offset), mapped.getLong(offset + 8), mapped.getInt(offset + 16));
+            }
+            return addressSet;
+        }
+    }
+
+    /**
+     * Write the addresses packed, 20 bytes each
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ADDRESS_BYTES * 4096);
+            if(containsZero){
+                buffer.put(new byte[ADDRESS_BYTES]);
+            }
+            for(int slot = 0; slot < capacity; slot++){
+                int offset = slot * ADDRESS_BYTES;
+                if(isEmpty(offset)){
+                    continue;
+                }
+                if(!buffer.hasRemaining()){
+                    buffer.flip();
+                    while (buffer.hasRemaining()){
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.putLong(table.getLong(offset)).putLong(table.getLong(offset + 8)).putInt(table.getInt(offset + 16));
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Add an address given as hex, with or without 0x
+     * @param address
+     * @return false if it was already in the set
+     */
+    public boolean add(String address){
+        int start = start(address, address.length() - 40);
+        return add(parseLong(address, start), parseLong(address, start + 16), parseInt(address, start + 32));
+    }
+
+    /**
+     * Add an address given as 20 bytes
+     * @param address
+     * @return false if it was already in the set
+     */
+    public boolean add(byte[] address){
+        if(address.length != ADDRESS_BYTES){
+            throw new IllegalArgumentException("an address must be 20 bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        return add(buffer.getLong(0), buffer.getLong(8), buffer.getInt(16));
+    }
+
+    /**
+     * Whether the set holds an address given as hex, with or without 0x, in any case
+     * @param address
+     * @return
+     */
+    public boolean contains(String address){
+        if(address == null){
+            return false;
+        }
+        int start = start(address, address.length() - 40);
+        return contains(parseLong(address, start), parseLong(address, start + 16), parseInt(address, start + 32));
+    }
+
+    /**
+     * Whether the set holds an address given as 20 bytes
+     * @param address
+     * @return
+     */
+    public boolean contains(byte[] address){
+        if(address == null || address.length != ADDRESS_BYTES){
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        return contains(buffer.getLong(0), buffer.getLong(8), buffer.getInt(16));
+    }
+
+    /**
+     * Whether the set holds the address of an indexed address topic, the address is the last 20 bytes of the topic
+     * @param topic 32 bytes as hex, e.g. topic 2 of a Transfer log
+     * @return
+     */
+    public boolean containsTopic(String topic){
+        if(topic == null || topic.length() < 40){
+            return false;
+        }
+        int start = topic.length() - 40;
+        return contains(parseLong(topic, start), parseLong(topic, start + 16), parseInt(topic, start + 32));
+    }
+
+    /**
+     * Wrap a log listener so it only receives the logs whose topic at the given position is an address of this set,
+     * e.g. position 2 of Transfer logs for transfers to the set
+     * @param topicIndex
+     * @param listener
+     * @return
+     */
+    public LogIndexer.LogListener filter(int topicIndex, LogIndexer.LogListener listener){
+        return (fromBlock, toBlock, logs) -> {
+            List<Log> matched = new ArrayList<>();
+            for(Log log : logs){
+                List<String> topics = log.getTopics();
+                if(topics != null && topics.size() > topicIndex && containsTopic(topics.get(topicIndex))){
+                    matched.add(log);
+                }
+            }
+            listener.onLogs(fromBlock, toBlock, matched);
+        };
+    }
+
+    /**
+     * Hand every address to the consumer, as lower case hex with 0x, in no particular order
+     * @param consumer
+     * @throws Exception
+     */
+    public void forEach(AddressConsumer consumer) throws Exception {
+        char[] hex = new char[42];
+        hex[0] = '0';
+        hex[1] = 'x';
+        if(containsZero){
+            consumer.accept("0x0000000000000000000000000000000000000000");
+        }
+        for(int slot = 0; slot < capacity; slot++){
+            int offset = slot * ADDRESS_BYTES;
+            if(isEmpty(offset)){
+                continue;
+            }
+            for(int i = 0; i < ADDRESS_BYTES; i++){
+                int value = table.get(offset + i) & 0xff;
+                hex[2 + i * 2] = Character.forDigit(value >>> 4, 16);
+                hex[3 + i * 2] = Character.forDigit(value & 0x0f, 16);
+            }
+            consumer.accept(new String(hex));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Bytes held off heap by the table
+     * @return
+     */
+    public long getOffHeapBytes(){
+        return (long) capacity * ADDRESS_BYTES;
+    }
+
+    private boolean add(long high, long middle, int low){
+        if(high == 0 && middle == 0 && low == 0){
+            if(containsZero){
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        if((size + 1) * 2L > capacity){
+            if(capacity >= MAX_CAPACITY){
+                throw new IllegalStateException("an AddressSet holds at most " + MAX_CAPACITY / 2 + " addresses");
+            }
+            resize(capacity << 1);
+        }
+        if(!insert(high, middle, low)){
+            return false;
+        }
+        size++;
+        if(bloom != null){
+            long hash = hash(high, middle, low);
+            long step = mix(middle ^ low);
+            long bits = (long) bloom.length * 64;
+            for(int i = 0; i < BLOOM_HASHES; i++){
+                long bit = Math.floorMod(hash + i * step, bits);
+                bloom[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(long high, long middle, int low){
+        if(high == 0 && middle == 0 && low == 0){
+            return containsZero;
+        }
+        long hash = hash(high, middle, low);
+        if(bloom != null){
+            long step = mix(middle ^ low);
+            long bits = (long) bloom.length * 64;
+            for(int i = 0; i < BLOOM_HASHES; i++){
+                long bit = Math.floorMod(hash + i * step, bits);
+                if((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0){
+                    return false;
+                }
+            }
+        }
+
+        int mask = capacity - 1;
+        for(int slot = (int) hash & mask; ; slot = (slot + 1) & mask){
+            int offset = slot * ADDRESS_BYTES;
+            long slotHigh = table.getLong(offset);
+            long slotMiddle = table.getLong(offset + 8);
+            int slotLow = table.getInt(offset + 16);
+            if(slotHigh == high && slotMiddle == middle && slotLow == low){
+                return true;
+            }
+            if(slotHigh == 0 && slotMiddle == 0 && slotLow == 0){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Put an address into the table, linear probing
+     * @return false if it was already there
+     */
+    private boolean insert(long high, long middle, int low){
+        int mask = capacity - 1;
+        for(int slot = (int) hash(high, middle, low) & mask; ; slot = (slot + 1) & mask){
+            int offset = slot * ADDRESS_BYTES;
+            long slotHigh = table.getLong(offset);
+            long slotMiddle = table.getLong(offset + 8);
+            int slotLow = table.getInt(offset + 16);
+            if(slotHigh == 0 && slotMiddle == 0 && slotLow == 0){
+                table.putLong(offset, high).putLong(offset + 8, middle).putInt(offset + 16, low);
+                return true;
+            }
+            if(slotHigh == high && slotMiddle == middle && slotLow == low){
+                return false;
+            }
+        }
+    }
+
+    private void resize(int newCapacity){
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for(int slot = 0; slot < oldCapacity; slot++){
+            int offset = slot * ADDRESS_BYTES;
+            long high = old.getLong(offset);
+            long middle = old.getLong(offset + 8);
+            int low = old.getInt(offset + 16);
+            if(high != 0 || middle != 0 || low != 0){
+                insert(high, middle, low);
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        this.capacity = capacity;
+        this.table = ByteBuffer.allocateDirect(capacity * ADDRESS_BYTES);
+    }
+
+    private boolean isEmpty(int offset){
+        return table.getLong(offset) == 0 && table.getLong(offset + 8) == 0 && table.getInt(offset + 16) == 0;
+    }
+
+    private static long hash(long high, long middle, int low){
+        return mix(high ^ Long.rotateLeft(middle, 21) ^ ((long) low << 7));
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads the bits of the address over the whole long
+     */
+    private static long mix(long value){
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Start of the 40 hex digits of an address
+     */
+    private static int start(String address, int start){
+        if(start == 0 || (start == 2 && address.charAt(0) == '0' && (address.charAt(1) == 'x' || address.charAt(1) == 'X'))){
+            return start;
+        }
+        throw new IllegalArgumentException("invalid address " + address);
+    }
+
+    private static long parseLong(String hex, int start){
+        long value = 0;
+        for(int i = start; i < start + 16; i++){
+            value = (value << 4) | digit(hex, i);
+        }
+        return value;
+    }
+
+    private static int parseInt(String hex, int start){
+        int value = 0;
+        for(int i = start; i < start + 8; i++){
+            value = (value << 4) | digit(hex, i);
+        }
+        return value;
+    }
+
+    private static int digit(String hex, int position){
+        int digit = Character.digit(hex.charAt(position), 16);
+        if(digit < 0){
+            throw new IllegalArgumentException("invalid hex character at " + position + ": " + hex);
+        }
+        return digit;
+    }
+
+    /**
+     * Receives the addresses of the set
+     */
+    public interface AddressConsumer {
+
+        void accept(String address) throws Exception;
+    }
+}
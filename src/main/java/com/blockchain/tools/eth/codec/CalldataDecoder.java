@@ -0,0 +1,293 @@
+package com.blockchain.tools.eth.codec;
+
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.abi.datatypes.generated.Bytes32;
+import org.web3j.abi.datatypes.generated.Bytes4;
+import org.web3j.abi.datatypes.generated.Int256;
+import org.web3j.abi.datatypes.generated.Uint128;
+import org.web3j.abi.datatypes.generated.Uint16;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.abi.datatypes.generated.Uint64;
+import org.web3j.abi.datatypes.generated.Uint8;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the inputData of one function, built once and kept in a {@link SelectorRegistry}
+ *
+ * The reader of each parameter is picked when the decoder is built. The types used by the token standards
+ * (address, bool, uint, int256, bytes32, bytes, string, uint256[], address[]) are read straight out of the calldata,
+ * a function with any other parameter type is decoded with FunctionReturnDecoder and type references built once
+ */
+public class CalldataDecoder {
+
+    private static final int WORD = 32;
+
+    /**
+     * Bytes of the selector in front of the arguments
+     */
+    private static final int SELECTOR = 4;
+
+    private final PreparedFunction function;
+
+    /**
+     * Selector as an int, the key of the registry
+     */
+    private final int selectorValue;
+
+    /**
+     * Names of the parameters from the ABI, empty names if they are not known
+     */
+    private final List<String> parameterNames;
+
+    /**
+     * Reader of each parameter, null if one of them has no reader and the fallback is used
+     */
+    private final ArgumentReader[] readers;
+
+    /**
+     * Type references for FunctionReturnDecoder, only built when a parameter has no reader
+     */
+    private final List<TypeReference<Type>> outputParameters;
+
+    CalldataDecoder(PreparedFunction function, List<TypeReference<?>> parameterTypes, List<String> parameterNames){
+        this.function = function;
+        this.selectorValue = Numeric.toBigInt(function.getSelector()).intValue();
+        this.parameterNames = parameterNames;
+
+        List<String> typeNames = function.getParameterTypes();
+        ArgumentReader[] readers = new ArgumentReader[typeNames.size()];
+        for(int i = 0; i < readers.length; i++){
+            readers[i] = reader(typeNames.get(i));
+            if(readers[i] == null){
+                readers = null;
+                break;
+            }
+        }
+        this.readers = readers;
+
+        if(readers == null){
+            List<TypeReference<Type>> outputParameters = new ArrayList<>(parameterTypes.size());
+            for(TypeReference<?> parameterType : parameterTypes){
+                outputParameters.add((TypeReference<Type>) parameterType);
+            }
+            this.outputParameters = outputParameters;
+        } else {
+            this.outputParameters = null;
+        }
+    }
+
+    /**
+     * Decode the arguments of the inputData of a transaction
+     * @param inputData hex with the selector in front
+     * @return the arguments in order
+     */
+    public List<Type> decode(String inputData){
+        if(readers == null){
+            int prefix = inputData.startsWith("0x") || inputData.startsWith("0X") ? 2 : 0;
+            return FunctionReturnDecoder.decode("0x" + inputData.substring(prefix + SELECTOR * 2), outputParameters);
+        }
+        return decode(Numeric.hexStringToByteArray(inputData));
+    }
+
+    /**
+     * Decode the arguments of the inputData of a transaction
+     * @param inputData with the selector in front
+     * @return the arguments in order
+     */
+    public List<Type> decode(byte[] inputData){
+        if(readers == null){
+            return decode(Numeric.toHexString(inputData));
+        }
+        List<Type> values = new ArrayList<>(readers.length);
+        try {
+            for(int i = 0; i < readers.length; i++){
+                values.add(readers[i].read(inputData, SELECTOR + i * WORD));
+            }
+        } catch (IndexOutOfBoundsException | ArithmeticException e){
+            throw new IllegalArgumentException("inputData is too short or malformed for " + function.getSignature());
+        }
+        return values;
+    }
+
+    public String getFunctionName() {
+        return function.getFunctionName();
+    }
+
+    public String getSignature() {
+        return function.getSignature();
+    }
+
+    public String getSelector() {
+        return function.getSelector();
+    }
+
+    public int getSelectorValue() {
+        return selectorValue;
+    }
+
+    public List<String> getParameterTypes() {
+        return function.getParameterTypes();
+    }
+
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * Whether the arguments are read without FunctionReturnDecoder
+     * @return
+     */
+    public boolean isDirect() {
+        return readers != null;
+    }
+
+    /**
+     * Reader of an ABI type, null if it has none
+     * @param typeName
+     * @return
+     */
+    private static ArgumentReader reader(String typeName){
+        switch (typeName){
+            case "address":
+                return (data, head) -> readAddress(data, head);
+            case "bool":
+                return (data, head) -> new Bool(word(data, head)[WORD - 1] != 0);
+            case "uint8":
+                return (data, head) -> new Uint8(readUint(data, head));
+            case "uint16":
+                return (data, head) -> new Uint16(readUint(data, head));
+            case "uint32":
+                return (data, head) -> new Uint32(readUint(data, head));
+            case "uint64":
+                return (data, head) -> new Uint64(readUint(data, head));
+            case "uint128":
+                return (data, head) -> new Uint128(readUint(data, head));
+            case "uint256":
+                return (data, head) -> new Uint256(readUint(data, head));
+            case "int256":
+                return (data, head) -> new Int256(new BigInteger(word(data, head)));
+            case "bytes4":
+                return (data, head) -> new Bytes4(Arrays.copyOfRange(word(data, head), 0, 4));
+            case "bytes32":
+                return (data, head) -> new Bytes32(word(data, head));
+            case "bytes":
+                return (data, head) -> new DynamicBytes(readBytes(data, head));
+            case "string":
+                return (data, head) -> new Utf8String(new String(readBytes(data, head), StandardCharsets.UTF_8));
+            case "uint256[]":
+                return (data, head) -> {
+                    int start = tail(data, head);
+                    int length = readArrayLength(data, start);
+                    List<Uint256> elements = new ArrayList<>(length);
+                    for(int i = 0; i < length; i++){
+                        elements.add(new Uint256(readUint(data, start + WORD + i * WORD)));
+                    }
+                    return new DynamicArray<>(Uint256.class, elements);
+                };
+            case "address[]":
+                return (data, head) -> {
+                    int start = tail(data, head);
+                    int length = readArrayLength(data, start);
+                    List<Address> elements = new ArrayList<>(length);
+                    for(int i = 0; i < length; i++){
+                        elements.add(readAddress(data, start + WORD + i * WORD));
+                    }
+                    return new DynamicArray<>(Address.class, elements);
+                };
+            default:
+                return null;
+        }
+    }
+
+    private static Address readAddress(byte[] data, int offset){
+        checkWord(data, offset);
+        return new Address(new BigInteger(1, Arrays.copyOfRange(data, offset + 12, offset + WORD)));
+    }
+
+    private static BigInteger readUint(byte[] data, int offset){
+        checkWord(data, offset);
+        // Most values fit in a long, read those without copying the word
+        for(int i = offset; i < offset + WORD - 7; i++){
+            if(data[i] != 0){
+                return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD));
+            }
+        }
+        long value = 0;
+        for(int i = offset + WORD - 7; i < offset + WORD; i++){
+            value = (value << 8) | (data[i] & 0xff);
+        }
+        return BigInteger.valueOf(value);
+    }
+
+    /**
+     * Content of a bytes or string parameter
+     */
+    private static byte[] readBytes(byte[] data, int head){
+        int start = tail(data, head);
+        int length = readLength(data, start);
+        if(data.length < (long) start + WORD + length){
+            throw new IndexOutOfBoundsException();
+        }
+        return Arrays.copyOfRange(data, start + WORD, start + WORD + length);
+    }
+
+    /**
+     * Position of the tail of a dynamic parameter, its head word holds the offset from the first argument
+     */
+    private static int tail(byte[] data, int head){
+        return SELECTOR + readLength(data, head);
+    }
+
+    private static int readLength(byte[] data, int offset){
+        return readUint(data, offset).intValueExact();
+    }
+
+    /**
+     * Number of elements of an array, checked against the calldata before anything is allocated for them
+     */
+    private static int readArrayLength(byte[] data, int start){
+        int length = readLength(data, start);
+        if(data.length < start + WORD + (long) length * WORD){
+            throw new IndexOutOfBoundsException();
+        }
+        return length;
+    }
+
+    private static byte[] word(byte[] data, int offset){
+        checkWord(data, offset);
+        return Arrays.copyOfRange(data, offset, offset + WORD);
+    }
+
+    private static void checkWord(byte[] data, int offset){
+        if(offset < 0 || data.length < offset + WORD){
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /**
+     * Reads one parameter
+     */
+    private interface ArgumentReader {
+
+        /**
+         * @param data inputData with the selector
+         * @param head position of the head word of the parameter
+         * @return
+         */
+        Type read(byte[] data, int head);
+    }
+}
@@ -5,15 +5,30 @@ import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.Utils;
 import org.web3j.abi.datatypes.*;
+import org.web3j.crypto.Hash;
 
+import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ABI codec
  */
 public class EthAbiCodecTool {
 
+    /**
+     * Maximum number of signatures kept in the selector cache
+     */
+    private static final int SELECTOR_CACHE_SIZE = 4096;
+
+    /**
+     * Function selectors keyed by signature, e.g. balanceOf(address) -> 0x70a08231
+     */
+    private static final Map<String, String> SELECTOR_CACHE = new ConcurrentHashMap<>();
+
     /**
      * Encode the function as inputData
      * @param functionName
@@ -21,13 +36,11 @@ public class EthAbiCodecTool {
      * @return
      */
     public static String getInputData(String functionName, Type... inputTypes){
-        List<Type> inputTypeList = new ArrayList<>();
-        for(Type type : inputTypes){
-            inputTypeList.add(type);
+        String selector = getSelector(getSignature(functionName, inputTypes));
+        if(inputTypes.length == 0){
+            return selector;
         }
-
-        Function function = new Function(functionName, inputTypeList, new ArrayList<>());
-        return FunctionEncoder.encode(function);
+        return selector + FunctionEncoder.encodeConstructor(Arrays.asList(inputTypes));
     }
 
     /**
@@ -37,11 +50,7 @@ public class EthAbiCodecTool {
      * @return
      */
     public static String getFunAbiCode(String functionName, Type... inputTypes) {
-        String inputData = getInputData(functionName, inputTypes);
-        if(inputData == null || inputData.equals("")){
-            return null;
-        }
-        return inputData.substring(0, 10);
+        return getSelector(getSignature(functionName, inputTypes));
     }
 
     /**
@@ -57,4 +66,113 @@ public class EthAbiCodecTool {
         }
         return FunctionReturnDecoder.decode(inputData, Utils.convert(inputTypeList));
     }
+
+    /**
+     * Prepare a function without parameters whose selector is computed once
+     * @param functionName
+     * @return
+     */
+    public static PreparedFunction prepare(String functionName){
+        return prepare(functionName, new ArrayList<>());
+    }
+
+    /**
+     * Prepare a function whose selector is computed once, for the parameter types of web3j, e.g. Address.class
+     * @param functionName
+     * @param parameterTypes
+     * @return
+     */
+    @SafeVarargs
+    public static PreparedFunction prepare(String functionName, Class<? extends Type>... parameterTypes){
+        List<String> typeNames = new ArrayList<>(parameterTypes.length);
+        for(Class<? extends Type> parameterType : parameterTypes){
+            typeNames.add(AbiTypes.getTypeAString(parameterType));
+        }
+        return prepare(functionName, typeNames);
+    }
+
+    /**
+     * Prepare a function whose selector is computed once, for parameter types that need generics, e.g. DynamicArray&lt;Address&gt;
+     * @param functionName
+     * @param parameterTypes
+     * @return
+     */
+    public static PreparedFunction prepare(String functionName, TypeReference<?>... parameterTypes){
+        List<String> typeNames = new ArrayList<>(parameterTypes.length);
+        for(TypeReference<?> parameterType : parameterTypes){
+            typeNames.add(getTypeName(parameterType.getType()));
+        }
+        return prepare(functionName, typeNames);
+    }
+
+    /**
+     * Get the selector of a canonical signature, e.g. balanceOf(address)
+     *
+     * Selectors are cached, so the Keccak hash is computed once per signature
+     * @param signature
+     * @return
+     */
+    public static String getSelector(String signature){
+        String selector = SELECTOR_CACHE.get(signature);
+        if(selector != null){
+            return selector;
+        }
+
+        selector = Hash.sha3String(signature).substring(0, 10);
+        if(SELECTOR_CACHE.size() >= SELECTOR_CACHE_SIZE){
+            SELECTOR_CACHE.clear();
+        }
+        SELECTOR_CACHE.put(signature, selector);
+        return selector;
+    }
+
+    private static PreparedFunction prepare(String functionName, List<String> typeNames){
+        StringBuilder signature = new StringBuilder(functionName).append('(');
+        for(int i = 0; i < typeNames.size(); i++){
+            if(i > 0){
+                signature.append(',');
+            }
+            signature.append(typeNames.get(i));
+        }
+        signature.append(')');
+
+        String signatureString = signature.toString();
+        return new PreparedFunction(functionName, typeNames, signatureString, getSelector(signatureString));
+    }
+
+    private static String getSignature(String functionName, Type... inputTypes){
+        StringBuilder signature = new StringBuilder(functionName).append('(');
+        for(int i = 0; i < inputTypes.length; i++){
+            if(i > 0){
+                signature.append(',');
+            }
+            signature.append(inputTypes[i].getTypeAsString());
+        }
+        return signature.append(')').toString();
+    }
+
+    /**
+     * ABI type name of a web3j type, arrays are resolved from their generic parameter
+     * @param type
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static String getTypeName(java.lang.reflect.Type type){
+        if(type instanceof Class){
+            return AbiTypes.getTypeAString((Class<? extends Type>) type);
+        }
+        if(type instanceof ParameterizedType){
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            String componentName = getTypeName(parameterizedType.getActualTypeArguments()[0]);
+            if(DynamicArray.class.isAssignableFrom(rawType)){
+                return componentName + "[]";
+            }
+            if(StaticArray.class.isAssignableFrom(rawType) && rawType != StaticArray.class){
+                // StaticArray2 ... StaticArray32 carry their length in the class name
+                return componentName + "[" + rawType.getSimpleName().substring("StaticArray".length()) + "]";
+            }
+        }
+        throw new IllegalArgumentException("unsupported parameter type " + type.getTypeName());
+    }
 }
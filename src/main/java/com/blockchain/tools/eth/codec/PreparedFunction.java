@@ -0,0 +1,77 @@
+package com.blockchain.tools.eth.codec;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Type;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A contract function whose signature and selector are computed once
+ *
+ * Create it with {@link EthAbiCodecTool#prepare(String, Class[])} and keep it,
+ * encoding only has to encode the arguments
+ */
+public class PreparedFunction {
+
+    /**
+     * Name of the function
+     */
+    private final String functionName;
+
+    /**
+     * ABI types of the parameters, e.g. address, uint256[]
+     */
+    private final List<String> parameterTypes;
+
+    /**
+     * Canonical signature, e.g. balanceOf(address)
+     */
+    private final String signature;
+
+    /**
+     * First 4 bytes of the Keccak hash of the signature, hex encoded with 0x
+     */
+    private final String selector;
+
+    PreparedFunction(String functionName, List<String> parameterTypes, String signature, String selector){
+        this.functionName = functionName;
+        this.parameterTypes = Collections.unmodifiableList(parameterTypes);
+        this.signature = signature;
+        this.selector = selector;
+    }
+
+    /**
+     * Encode the arguments as inputData
+     *
+     * The arguments must match the parameter types of the function, in order
+     * @param parameters
+     * @return
+     */
+    public String encode(Type... parameters){
+        if(parameters.length != parameterTypes.size()){
+            throw new IllegalArgumentException(signature + " takes " + parameterTypes.size() + " arguments, got " + parameters.length);
+        }
+        if(parameters.length == 0){
+            return selector;
+        }
+        return selector + FunctionEncoder.encodeConstructor(Arrays.asList(parameters));
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    public List<String> getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+}
@@ -0,0 +1,314 @@
+package com.blockchain.tools.eth.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.AbiDefinition;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finds the decoder of a transaction by the selector of its inputData
+ *
+ * Selectors are kept as int keys in an open addressing table, so a lookup parses 8 hex characters and probes an int array,
+ * without building a substring. The table is copied on registration and read without locking,
+ * register the functions up front and share the registry between threads:
+ * <pre>
+ * SelectorRegistry registry = SelectorRegistry.builder()
+ *         .registerAbi(new File("pair.abi.json"));
+ *
+ * CalldataDecoder decoder = registry.get(transaction.getInput());
+ * if(decoder != null){
+ *     List&lt;Type&gt; values = decoder.decode(transaction.getInput());
+ * }
+ * </pre>
+ * A selector registered twice keeps the last decoder
+ */
+public class SelectorRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SelectorRegistry.class);
+
+    /**
+     * Functions of ERC20, ERC721 and ERC1155, the ones shared by the standards are listed once
+     */
+    private static final String[] STANDARD_FUNCTIONS = {
+            // ERC20
+            "transfer(address,uint256)",
+            "transferFrom(address,address,uint256)",
+            "approve(address,uint256)",
+            "balanceOf(address)",
+            "allowance(address,address)",
+            "totalSupply()",
+            "name()",
+            "symbol()",
+            "decimals()",
+            // ERC721
+            "safeTransferFrom(address,address,uint256)",
+            "safeTransferFrom(address,address,uint256,bytes)",
+            "setApprovalForAll(address,bool)",
+            "getApproved(uint256)",
+            "isApprovedForAll(address,address)",
+            "ownerOf(uint256)",
+            "tokenURI(uint256)",
+            // ERC1155
+            "safeTransferFrom(address,address,uint256,uint256,bytes)",
+            "safeBatchTransferFrom(address,address,uint256[],uint256[],bytes)",
+            "balanceOf(address,uint256)",
+            "balanceOfBatch(address[],uint256[])",
+            "uri(uint256)"
+    };
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Table table = new Table(16);
+
+    private SelectorRegistry(){
+    }
+
+    /**
+     * A registry with the functions of ERC20, ERC721 and ERC1155
+     * @return
+     */
+    public static SelectorRegistry builder(){
+        return builder(true);
+    }
+
+    /**
+     * @param standardFunctions whether to register the functions of ERC20, ERC721 and ERC1155
+     * @return
+     */
+    public static SelectorRegistry builder(boolean standardFunctions){
+        SelectorRegistry registry = new SelectorRegistry();
+        if(standardFunctions){
+            for(String signature : STANDARD_FUNCTIONS){
+                registry.register(signature);
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Register a function by its canonical signature, e.g. transfer(address,uint256)
+     * @param signature
+     * @return
+     */
+    public SelectorRegistry register(String signature){
+        int open = signature.indexOf('(');
+        if(open <= 0 || !signature.endsWith(")")){
+            throw new IllegalArgumentException("not a function signature: " + signature);
+        }
+        String parameters = signature.substring(open + 1, signature.length() - 1).trim();
+        List<String> typeNames = parameters.isEmpty() ? new ArrayList<>() : Arrays.asList(parameters.split(","));
+        return register(signature.substring(0, open).trim(), typeNames, Collections.nCopies(typeNames.size(), ""));
+    }
+
+    /**
+     * Register a function by its parameter types
+     * @param functionName
+     * @param parameterTypes
+     * @return
+     */
+    public SelectorRegistry register(String functionName, TypeReference<?>... parameterTypes){
+        PreparedFunction function = EthAbiCodecTool.prepare(functionName, parameterTypes);
+        return put(new CalldataDecoder(function, Arrays.asList(parameterTypes), Collections.nCopies(parameterTypes.length, "")));
+    }
+
+    /**
+     * Register the functions of an ABI JSON, functions with tuple parameters are left out
+     * @param abiJson
+     * @return
+     * @throws Exception if the JSON is not an ABI
+     */
+    public SelectorRegistry registerAbi(String abiJson) throws Exception {
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        return registerAbi(objectMapper.readValue(abiJson, AbiDefinition[].class));
+    }
+
+    /**
+     * Register the functions of an ABI JSON file, functions with tuple parameters are left out
+     * @param abiFile
+     * @return
+     * @throws Exception if the file can not be read or is not an ABI
+     */
+    public SelectorRegistry registerAbi(File abiFile) throws Exception {
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        return registerAbi(objectMapper.readValue(abiFile, AbiDefinition[].class));
+    }
+
+    private SelectorRegistry registerAbi(AbiDefinition[] definitions) throws Exception {
+        for(AbiDefinition definition : definitions){
+            if(!"function".equals(definition.getType()) || definition.getName() == null){
+                continue;
+            }
+            List<String> typeNames = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            boolean tuple = false;
+            for(AbiDefinition.NamedType input : definition.getInputs()){
+                if(input.getType().startsWith("tuple")){
+                    tuple = true;
+                    break;
+                }
+                typeNames.add(input.getType());
+                names.add(input.getName() == null ? "" : input.getName());
+            }
+            if(tuple){
+                logger.debug("skipping " + definition.getName() + ", tuple parameters are not supported");
+                continue;
+            }
+            register(definition.getName(), typeNames, names);
+        }
+        return this;
+    }
+
+    private SelectorRegistry register(String functionName, List<String> typeNames, List<String> parameterNames){
+        List<TypeReference<?>> parameterTypes = new ArrayList<>(typeNames.size());
+        for(int i = 0; i < typeNames.size(); i++){
+            String typeName = canonical(typeNames.get(i).trim());
+            try {
+                parameterTypes.add(TypeReference.makeTypeReference(typeName));
+            } catch (ClassNotFoundException e){
+                throw new IllegalArgumentException("unknown ABI type " + typeName + " in " + functionName, e);
+            }
+        }
+        PreparedFunction function = EthAbiCodecTool.prepare(functionName, parameterTypes.toArray(new TypeReference<?>[0]));
+        return put(new CalldataDecoder(function, parameterTypes, new ArrayList<>(parameterNames)));
+    }
+
+    /**
+     * Decoder of the selector of an inputData
+     * @param inputData hex, with or without 0x
+     * @return null if the selector is not registered or the inputData is shorter than a selector
+     */
+    public CalldataDecoder get(String inputData){
+        if(inputData == null){
+            return null;
+        }
+        int prefix = inputData.startsWith("0x") || inputData.startsWith("0X") ? 2 : 0;
+        if(inputData.length() < prefix + 8){
+            return null;
+        }
+        int selector = 0;
+        for(int i = prefix; i < prefix + 8; i++){
+            int digit = Character.digit(inputData.charAt(i), 16);
+            if(digit < 0){
+                return null;
+            }
+            selector = (selector << 4) | digit;
+        }
+        return get(selector);
+    }
+
+    /**
+     * Decoder of a selector
+     * @param selector the first 4 bytes of the inputData as a big endian int
+     * @return null if the selector is not registered
+     */
+    public CalldataDecoder get(int selector){
+        return table.get(selector);
+    }
+
+    /**
+     * Decode the arguments of an inputData
+     * @param inputData
+     * @return null if the selector is not registered
+     */
+    public List<Type> decode(String inputData){
+        CalldataDecoder decoder = get(inputData);
+        return decoder == null ? null : decoder.decode(inputData);
+    }
+
+    /**
+     * Number of registered selectors
+     * @return
+     */
+    public int size(){
+        return table.size;
+    }
+
+    private SelectorRegistry put(CalldataDecoder decoder){
+        lock.lock();
+        try {
+            Table current = table;
+            Table next = new Table(current.size + 1 > current.keys.length / 2 ? current.keys.length * 2 : current.keys.length);
+            for(int i = 0; i < current.keys.length; i++){
+                if(current.values[i] != null){
+                    next.put(current.keys[i], current.values[i]);
+                }
+            }
+            next.put(decoder.getSelectorValue(), decoder);
+            table = next;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * uint and int are aliases of uint256 and int256 in an ABI, the selector is computed from the full name
+     * @param typeName
+     * @return
+     */
+    private static String canonical(String typeName){
+        if(typeName.equals("uint") || typeName.startsWith("uint[")){
+            return "uint256" + typeName.substring(4);
+        }
+        if(typeName.equals("int") || typeName.startsWith("int[")){
+            return "int256" + typeName.substring(3);
+        }
+        return typeName;
+    }
+
+    /**
+     * Open addressing table of int keys, at most half full, a slot is empty when its value is null
+     */
+    private static class Table {
+
+        private final int[] keys;
+
+        private final CalldataDecoder[] values;
+
+        private final int mask;
+
+        private int size;
+
+        private Table(int capacity){
+            keys = new int[capacity];
+            values = new CalldataDecoder[capacity];
+            mask = capacity - 1;
+        }
+
+        private CalldataDecoder get(int key){
+            // The selector is already a hash, its low bits spread well
+            int slot = key & mask;
+            while (values[slot] != null){
+                if(keys[slot] == key){
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private void put(int key, CalldataDecoder value){
+            int slot = key & mask;
+            while (values[slot] != null){
+                if(keys[slot] == key){
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.blockchain.tools.eth.codec;
+
+import java.math.BigInteger;
+
+/**
+ * Reads static return values (uint256, address, bool) straight out of eth_call return data
+ *
+ * Each value is one 32 byte word at a fixed position, so it is parsed in place,
+ * without FunctionReturnDecoder resolving types by reflection.
+ * Every method returns null for the empty 0x response, which is what a node returns when the address has no code
+ */
+public class StaticAbiDecoder {
+
+    /**
+     * Hex characters in one word
+     */
+    private static final int WORD_HEX = 64;
+
+    private static final int WORD = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Read a uint256 from hex return data
+     * @param returnData hex, with or without 0x
+     * @param index position of the word, starting from 0
+     * @return
+     */
+    public static BigInteger decodeUint256(String returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+
+        // Most values fit in a long, parse those without building a hex substring
+        int firstDigit = start;
+        while (firstDigit < start + WORD_HEX && returnData.charAt(firstDigit) == '0'){
+            firstDigit++;
+        }
+        if(start + WORD_HEX - firstDigit <= 15){
+            long value = 0;
+            for(int i = firstDigit; i < start + WORD_HEX; i++){
+                value = (value << 4) | digit(returnData, i);
+            }
+            return BigInteger.valueOf(value);
+        }
+        return new BigInteger(returnData.substring(firstDigit, start + WORD_HEX), 16);
+    }
+
+    /**
+     * Read an address from hex return data
+     * @param returnData hex, with or without 0x
+     * @param index position of the word, starting from 0
+     * @return lower case address with 0x
+     */
+    public static String decodeAddress(String returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+        char[] address = new char[42];
+        address[0] = '0';
+        address[1] = 'x';
+        for(int i = 0; i < 40; i++){
+            address[i + 2] = Character.toLowerCase(returnData.charAt(start + 24 + i));
+        }
+        return new String(address);
+    }
+
+    /**
+     * Read a bool from hex return data
+     * @param returnData hex, with or without 0x
+     * @param index position of the word, starting from 0
+     * @return
+     */
+    public static Boolean decodeBool(String returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+        for(int i = start; i < start + WORD_HEX; i++){
+            if(returnData.charAt(i) != '0'){
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Read a uint256 from binary return data
+     * @param returnData
+     * @param index position of the word, starting from 0
+     * @return
+     */
+    public static BigInteger decodeUint256(byte[] returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+
+        int firstByte = start;
+        while (firstByte < start + WORD && returnData[firstByte] == 0){
+            firstByte++;
+        }
+        if(start + WORD - firstByte <= 7){
+            long value = 0;
+            for(int i = firstByte; i < start + WORD; i++){
+                value = (value << 8) | (returnData[i] & 0xff);
+            }
+            return BigInteger.valueOf(value);
+        }
+        byte[] magnitude = new byte[start + WORD - firstByte];
+        System.arraycopy(returnData, firstByte, magnitude, 0, magnitude.length);
+        return new BigInteger(1, magnitude);
+    }
+
+    /**
+     * Read an address from binary return data
+     * @param returnData
+     * @param index position of the word, starting from 0
+     * @return lower case address with 0x
+     */
+    public static String decodeAddress(byte[] returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+        char[] address = new char[42];
+        address[0] = '0';
+        address[1] = 'x';
+        for(int i = 0; i < 20; i++){
+            int value = returnData[start + 12 + i] & 0xff;
+            address[2 + i * 2] = HEX[value >>> 4];
+            address[3 + i * 2] = HEX[value & 0x0f];
+        }
+        return new String(address);
+    }
+
+    /**
+     * Read a bool from binary return data
+     * @param returnData
+     * @param index position of the word, starting from 0
+     * @return
+     */
+    public static Boolean decodeBool(byte[] returnData, int index){
+        int start = wordStart(returnData, index);
+        if(start < 0){
+            return null;
+        }
+        for(int i = start; i < start + WORD; i++){
+            if(returnData[i] != 0){
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Position of the first hex character of a word, -1 if the return data is empty
+     * @param returnData
+     * @param index
+     * @return
+     */
+    private static int wordStart(String returnData, int index){
+        if(returnData == null){
+            return -1;
+        }
+        int prefix = returnData.startsWith("0x") || returnData.startsWith("0X") ? 2 : 0;
+        if(returnData.length() == prefix){
+            return -1;
+        }
+        int start = prefix + index * WORD_HEX;
+        if(returnData.length() < start + WORD_HEX){
+            throw new IllegalArgumentException("return data is too short to hold word " + index + ": " + returnData);
+        }
+        return start;
+    }
+
+    private static int wordStart(byte[] returnData, int index){
+        if(returnData == null || returnData.length == 0){
+            return -1;
+        }
+        int start = index * WORD;
+        if(returnData.length < start + WORD){
+            throw new IllegalArgumentException("return data is too short to hold word " + index);
+        }
+        return start;
+    }
+
+    private static int digit(String hex, int position){
+        int digit = Character.digit(hex.charAt(position), 16);
+        if(digit < 0){
+            throw new IllegalArgumentException("invalid hex character at " + position + ": " + hex);
+        }
+        return digit;
+    }
+}
@@ -0,0 +1,317 @@
+package com.blockchain.tools.eth.codec;
+
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes calls of functions whose parameters are all static types (address, uintN, intN, bool, bytes32 ...)
+ *
+ * Every parameter is one 32 byte word, so the words are written straight into a reusable byte array,
+ * without web3j Type objects or hex strings in between.
+ * An encoder is not thread safe, keep one per thread and reuse it:
+ * <pre>
+ * StaticAbiEncoder encoder = StaticAbiEncoder.builder(EthAbiCodecTool.prepare("transfer", Address.class, Uint256.class));
+ * byte[] inputData = encoder.reset().putAddress(to).putUint256(amount).toByteArray();
+ * </pre>
+ */
+public class StaticAbiEncoder {
+
+    private static final int WORD = 32;
+
+    /**
+     * Function being encoded
+     */
+    private final PreparedFunction function;
+
+    /**
+     * Selector of the function
+     */
+    private final byte[] selector;
+
+    /**
+     * The calldata, selector and one word per parameter
+     */
+    private final byte[] buffer;
+
+    /**
+     * Bit width of each parameter, positive for uintN, negative for intN, 0 for the other types
+     */
+    private final int[] widths;
+
+    /**
+     * Write position in the buffer
+     */
+    private int position;
+
+    private StaticAbiEncoder(PreparedFunction function){
+        for(String parameterType : function.getParameterTypes()){
+            if(!isStatic(parameterType)){
+                throw new IllegalArgumentException(function.getSignature() + " has the dynamic parameter type " + parameterType);
+            }
+        }
+        this.function = function;
+        this.selector = Numeric.hexStringToByteArray(function.getSelector());
+        this.buffer = new byte[selector.length + function.getParameterTypes().size() * WORD];
+        this.widths = new int[function.getParameterTypes().size()];
+        for(int i = 0; i < widths.length; i++){
+            widths[i] = width(function.getParameterTypes().get(i));
+        }
+        reset();
+    }
+
+    public static StaticAbiEncoder builder(PreparedFunction function){
+        return new StaticAbiEncoder(function);
+    }
+
+    /**
+     * Start a new call, the selector is written and the parameters can follow
+     * @return
+     */
+    public StaticAbiEncoder reset(){
+        System.arraycopy(selector, 0, buffer, 0, selector.length);
+        position = selector.length;
+        return this;
+    }
+
+    /**
+     * Write an address given as hex, with or without 0x
+     * @param address
+     * @return
+     */
+    public StaticAbiEncoder putAddress(String address){
+        int offset = address.startsWith("0x") || address.startsWith("0X") ? 2 : 0;
+        if(address.length() - offset != 40){
+            throw new IllegalArgumentException("invalid address " + address);
+        }
+        int start = nextWord();
+        Arrays.fill(buffer, start, start + 12, (byte) 0);
+        for(int i = 0; i < 20; i++){
+            int high = Character.digit(address.charAt(offset + i * 2), 16);
+            int low = Character.digit(address.charAt(offset + i * 2 + 1), 16);
+            if(high < 0 || low < 0){
+                throw new IllegalArgumentException("invalid address " + address);
+            }
+            buffer[start + 12 + i] = (byte) ((high << 4) | low);
+        }
+        return this;
+    }
+
+    /**
+     * Write an address given as 20 bytes
+     * @param address
+     * @return
+     */
+    public StaticAbiEncoder putAddress(byte[] address){
+        if(address.length != 20){
+            throw new IllegalArgumentException("an address must be 20 bytes");
+        }
+        int start = nextWord();
+        Arrays.fill(buffer, start, start + 12, (byte) 0);
+        System.arraycopy(address, 0, buffer, start + 12, 20);
+        return this;
+    }
+
+    /**
+     * Write an unsigned integer, it must fit in the uintN of the parameter
+     * @param value
+     * @return
+     */
+    public StaticAbiEncoder putUint256(BigInteger value){
+        if(value.signum() < 0){
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        return putInt256(value);
+    }
+
+    /**
+     * Write a non negative integer, it must fit in the uintN or intN of the parameter
+     * @param value
+     * @return
+     */
+    public StaticAbiEncoder putUint(long value){
+        if(value < 0){
+            throw new IllegalArgumentException("value must not be negative: " + value);
+        }
+        return putInt(value);
+    }
+
+    /**
+     * Write a signed integer in two's complement, it must fit in the intN of the parameter
+     * @param value
+     * @return
+     */
+    public StaticAbiEncoder putInt256(BigInteger value){
+        if(value.bitLength() < 64){
+            return putInt(value.longValue());
+        }
+        checkWidth(value.signum() < 0, value.bitLength(), value);
+
+        // toByteArray is two's complement, its leading byte carries the sign
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, WORD);
+        int start = nextWord();
+        Arrays.fill(buffer, start, start + WORD - length, value.signum() < 0 ? (byte) 0xff : (byte) 0);
+        System.arraycopy(bytes, bytes.length - length, buffer, start + WORD - length, length);
+        return this;
+    }
+
+    /**
+     * Write a signed integer in two's complement, it must fit in the intN of the parameter
+     * @param value
+     * @return
+     */
+    public StaticAbiEncoder putInt(long value){
+        // Bits of the magnitude, the sign bit excluded, as BigInteger.bitLength counts them
+        int bitLength = 64 - Long.numberOfLeadingZeros(value < 0 ? ~value : value);
+        checkWidth(value < 0, bitLength, value);
+
+        int start = nextWord();
+        Arrays.fill(buffer, start, start + WORD - 8, value < 0 ? (byte) 0xff : (byte) 0);
+        for(int i = 0; i < 8; i++){
+            buffer[start + WORD - 1 - i] = (byte) (value >>> (i * 8));
+        }
+        return this;
+    }
+
+    /**
+     * Write a bool
+     * @param value
+     * @return
+     */
+    public StaticAbiEncoder putBool(boolean value){
+        int start = nextWord();
+        Arrays.fill(buffer, start, start + WORD, (byte) 0);
+        buffer[start + WORD - 1] = (byte) (value ? 1 : 0);
+        return this;
+    }
+
+    /**
+     * Write a bytesN value, it is padded on the right
+     * @param value at most 32 bytes
+     * @return
+     */
+    public StaticAbiEncoder putBytes(byte[] value){
+        if(value.length > WORD){
+            throw new IllegalArgumentException("bytesN is at most 32 bytes");
+        }
+        int start = nextWord();
+        System.arraycopy(value, 0, buffer, start, value.length);
+        Arrays.fill(buffer, start + value.length, start + WORD, (byte) 0);
+        return this;
+    }
+
+    /**
+     * Number of bytes written so far
+     * @return
+     */
+    public int size(){
+        return position;
+    }
+
+    /**
+     * The internal buffer, valid up to {@link #size()} until the next reset
+     * @return
+     */
+    public byte[] array(){
+        return buffer;
+    }
+
+    /**
+     * Copy the calldata out
+     * @return
+     */
+    public byte[] toByteArray(){
+        checkComplete();
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Write the calldata into a ByteBuffer
+     * @param target
+     */
+    public void writeTo(ByteBuffer target){
+        checkComplete();
+        target.put(buffer, 0, position);
+    }
+
+    public PreparedFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Check that an integer fits in the type of the next parameter
+     * @param negative
+     * @param bitLength bits of the value, the sign bit excluded
+     * @param value
+     */
+    private void checkWidth(boolean negative, int bitLength, Object value){
+        int index = (position - selector.length) / WORD;
+        if(index >= widths.length){
+            // nextWord reports the extra argument
+            return;
+        }
+        int width = widths[index];
+        boolean fits;
+        if(width > 0){
+            fits = !negative && bitLength <= width;
+        } else if(width < 0){
+            fits = bitLength < -width;
+        } else {
+            // Not an integer parameter, any value of one word
+            fits = bitLength <= (negative ? 255 : 256);
+        }
+        if(!fits){
+            throw new IllegalArgumentException("value does not fit in " + function.getParameterTypes().get(index) + ": " + value);
+        }
+    }
+
+    private int nextWord(){
+        if(position + WORD > buffer.length){
+            throw new IllegalStateException(function.getSignature() + " takes " + function.getParameterTypes().size() + " arguments");
+        }
+        int start = position;
+        position += WORD;
+        return start;
+    }
+
+    private void checkComplete(){
+        if(position != buffer.length){
+            throw new IllegalStateException(function.getSignature() + " takes " + function.getParameterTypes().size()
+                    + " arguments, " + (position - selector.length) / WORD + " written");
+        }
+    }
+
+    /**
+     * Bit width of an integer type, positive for uintN, negative for intN
+     * @param type
+     * @return 0 if the type is not an integer
+     */
+    private static int width(String type){
+        if(type.startsWith("uint")){
+            return type.length() == 4 ? 256 : Integer.parseInt(type.substring(4));
+        }
+        if(type.startsWith("int")){
+            return type.length() == 3 ? -256 : -Integer.parseInt(type.substring(3));
+        }
+        return 0;
+    }
+
+    /**
+     * Whether an ABI type is encoded in place as one word
+     * @param type
+     * @return
+     */
+    private static boolean isStatic(String type){
+        if(type.endsWith("]")){
+            return false;
+        }
+        return type.equals("address")
+                || type.equals("bool")
+                || type.startsWith("uint")
+                || type.startsWith("int")
+                || (type.startsWith("bytes") && type.length() > "bytes".length());
+    }
+}
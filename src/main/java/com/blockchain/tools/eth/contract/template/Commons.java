@@ -1,23 +1,32 @@
 package com.blockchain.tools.eth.contract.template;
 
+import com.blockchain.tools.eth.codec.StaticAbiDecoder;
 import com.blockchain.tools.eth.contract.util.EthContractUtil;
+import com.blockchain.tools.eth.contract.util.model.MulticallCall;
+import com.blockchain.tools.eth.contract.util.model.MulticallResult;
 import com.blockchain.tools.eth.contract.util.model.SendModel;
 import com.blockchain.tools.eth.contract.util.model.SendResultModel;
+import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
-import org.web3j.abi.datatypes.Address;
-import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.Utils;
 import org.web3j.abi.datatypes.Type;
-import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.utils.Numeric;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Public methods for contract templates
  */
 public class Commons {
 
+    private static final List<TypeReference<Type>> STRING_OUTPUT = Utils.convert(Collections.singletonList(new TypeReference<Utf8String>() {}));
+
     /**
      * Query and return a data of type Uint256
      *
@@ -28,17 +37,19 @@ public class Commons {
      * @throws IOException
      */
     public static BigInteger resultBigInteger(EthContractUtil ethContractUtil, String contractAddress, String inputData) throws Exception {
-        List<Type> result = ethContractUtil.select(contractAddress,
-                inputData,
-                new TypeReference<Uint256>() {
-                }
-        );
-
-        if (result == null || result.size() < 1 || result.get(0) == null || result.get(0).getValue() == null) {
-            return null;
-        }
+        return StaticAbiDecoder.decodeUint256(ethContractUtil.call(contractAddress, inputData), 0);
+    }
 
-        return new BigInteger(result.get(0).getValue().toString());
+    /**
+     * Query and return a data of type Uint256, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @return
+     */
+    public static CompletableFuture<BigInteger> resultBigIntegerAsync(EthContractUtil ethContractUtil, String contractAddress, String inputData) {
+        return ethContractUtil.callAsync(contractAddress, inputData).thenApply(value -> StaticAbiDecoder.decodeUint256(value, 0));
     }
 
     /**
@@ -51,17 +62,19 @@ public class Commons {
      * @throws IOException
      */
     public static String resultAddress(EthContractUtil ethContractUtil, String contractAddress, String inputData) throws Exception {
-        List<Type> result = ethContractUtil.select(contractAddress,
-                inputData,
-                new TypeReference<Address>() {
-                }
-        );
-
-        if (result == null || result.size() < 1 || result.get(0) == null || result.get(0).getValue() == null) {
-            return null;
-        }
+        return StaticAbiDecoder.decodeAddress(ethContractUtil.call(contractAddress, inputData), 0);
+    }
 
-        return result.get(0).getValue().toString();
+    /**
+     * Query and return a data of type Address, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @return
+     */
+    public static CompletableFuture<String> resultAddressAsync(EthContractUtil ethContractUtil, String contractAddress, String inputData) {
+        return ethContractUtil.callAsync(contractAddress, inputData).thenApply(value -> StaticAbiDecoder.decodeAddress(value, 0));
     }
 
     /**
@@ -74,17 +87,198 @@ public class Commons {
      * @throws IOException
      */
     public static Boolean resultBool(EthContractUtil ethContractUtil, String contractAddress, String inputData) throws Exception {
-        List<Type> result = ethContractUtil.select(contractAddress,
-                inputData,
-                new TypeReference<Bool>() {
-                }
-        );
+        return StaticAbiDecoder.decodeBool(ethContractUtil.call(contractAddress, inputData), 0);
+    }
+
+    /**
+     * Query and return a data of type Bool, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @return
+     */
+    public static CompletableFuture<Boolean> resultBoolAsync(EthContractUtil ethContractUtil, String contractAddress, String inputData) {
+        return ethContractUtil.callAsync(contractAddress, inputData).thenApply(value -> StaticAbiDecoder.decodeBool(value, 0));
+    }
+
+    /**
+     * Query and return a data of type string
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    public static String resultString(EthContractUtil ethContractUtil, String contractAddress, String inputData) throws Exception {
+        return decodeString(ethContractUtil.call(contractAddress, inputData));
+    }
+
+    /**
+     * Query and return a data of type string, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @return
+     */
+    public static CompletableFuture<String> resultStringAsync(EthContractUtil ethContractUtil, String contractAddress, String inputData) {
+        return ethContractUtil.callAsync(contractAddress, inputData).thenApply(value -> decodeString(value));
+    }
 
-        if (result == null || result.size() < 1 || result.get(0) == null || result.get(0).getValue() == null) {
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type Uint256
+     *
+     * The results are in the same order as inputDataList, null for the calls that failed
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     * @throws Exception
+     */
+    public static List<BigInteger> resultBigIntegerMany(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) throws Exception {
+        return toBigIntegerList(selectMany(ethContractUtil, contractAddress, inputDataList));
+    }
+
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type Uint256, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     */
+    public static CompletableFuture<List<BigInteger>> resultBigIntegerManyAsync(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) {
+        return ethContractUtil.selectManyAsync(toCalls(contractAddress, inputDataList)).thenApply(Commons::toBigIntegerList);
+    }
+
+    private static List<BigInteger> toBigIntegerList(List<MulticallResult> results) {
+        List<BigInteger> values = new ArrayList<>(results.size());
+        for (MulticallResult result : results) {
+            try {
+                values.add(result.isSuccess() ? StaticAbiDecoder.decodeUint256(result.getReturnData(), 0) : null);
+            } catch (IllegalArgumentException e) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type Address
+     *
+     * The results are in the same order as inputDataList, null for the calls that failed
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     * @throws Exception
+     */
+    public static List<String> resultAddressMany(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) throws Exception {
+        return toAddressList(selectMany(ethContractUtil, contractAddress, inputDataList));
+    }
+
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type Address, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     */
+    public static CompletableFuture<List<String>> resultAddressManyAsync(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) {
+        return ethContractUtil.selectManyAsync(toCalls(contractAddress, inputDataList)).thenApply(Commons::toAddressList);
+    }
+
+    private static List<String> toAddressList(List<MulticallResult> results) {
+        List<String> values = new ArrayList<>(results.size());
+        for (MulticallResult result : results) {
+            try {
+                values.add(result.isSuccess() ? StaticAbiDecoder.decodeAddress(result.getReturnData(), 0) : null);
+            } catch (IllegalArgumentException e) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type string
+     *
+     * The results are in the same order as inputDataList, null for the calls that failed
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     * @throws Exception
+     */
+    public static List<String> resultStringMany(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) throws Exception {
+        return toStringList(selectMany(ethContractUtil, contractAddress, inputDataList));
+    }
+
+    /**
+     * Query many functions of one contract with Multicall3 and return data of type string, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     */
+    public static CompletableFuture<List<String>> resultStringManyAsync(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) {
+        return ethContractUtil.selectManyAsync(toCalls(contractAddress, inputDataList)).thenApply(Commons::toStringList);
+    }
+
+    private static List<String> toStringList(List<MulticallResult> results) {
+        List<String> values = new ArrayList<>(results.size());
+        for (MulticallResult result : results) {
+            try {
+                values.add(result.isSuccess() ? decodeString(result.getReturnData()) : null);
+            } catch (RuntimeException e) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Decode return data holding one string, null for the empty response
+     *
+     * @param returnData
+     * @return
+     */
+    private static String decodeString(String returnData) {
+        if (returnData == null || Numeric.cleanHexPrefix(returnData).isEmpty()) {
             return null;
         }
+        List<Type> values = FunctionReturnDecoder.decode(returnData, STRING_OUTPUT);
+        return values.isEmpty() ? null : (String) values.get(0).getValue();
+    }
 
-        return new Boolean(result.get(0).getValue().toString());
+    /**
+     * Query many functions of one contract with Multicall3
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputDataList
+     * @return
+     * @throws Exception
+     */
+    private static List<MulticallResult> selectMany(EthContractUtil ethContractUtil, String contractAddress, List<String> inputDataList) throws Exception {
+        return ethContractUtil.selectMany(toCalls(contractAddress, inputDataList));
+    }
+
+    private static List<MulticallCall> toCalls(String contractAddress, List<String> inputDataList) {
+        List<MulticallCall> calls = new ArrayList<>(inputDataList.size());
+        for (String inputData : inputDataList) {
+            calls.add(MulticallCall.builder()
+                    .setContractAddress(contractAddress)
+                    .setInputData(inputData));
+        }
+        return calls;
     }
 
     /**
@@ -101,6 +295,19 @@ public class Commons {
         return ethContractUtil.select(contractAddress, inputData, outputTypes);
     }
 
+    /**
+     * Calling custom functions to query contracts, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param contractAddress
+     * @param inputData
+     * @param outputTypes
+     * @return
+     */
+    public static CompletableFuture<List<Type>> otherSelectAsync(EthContractUtil ethContractUtil, String contractAddress, String inputData, TypeReference... outputTypes) {
+        return ethContractUtil.selectAsync(contractAddress, inputData, outputTypes);
+    }
+
     /**
      * Calling custom functions to write contracts
      *
@@ -116,4 +323,19 @@ public class Commons {
                 inputData
         );
     }
+
+    /**
+     * Calling custom functions to write contracts, without blocking the caller
+     *
+     * @param ethContractUtil
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public static CompletableFuture<SendResultModel> otherTransactionAsync(EthContractUtil ethContractUtil, SendModel sendModel, String inputData) {
+        return ethContractUtil.sendRawTransactionAsync(
+                sendModel,
+                inputData
+        );
+    }
 }
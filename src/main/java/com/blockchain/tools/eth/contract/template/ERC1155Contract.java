@@ -1,7 +1,11 @@
 package com.blockchain.tools.eth.contract.template;
 
 import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
+import com.blockchain.tools.eth.codec.StaticAbiDecoder;
 import com.blockchain.tools.eth.contract.util.EthContractUtil;
+import com.blockchain.tools.eth.contract.util.Futures;
+import com.blockchain.tools.eth.contract.util.model.BatchBalances;
 import com.blockchain.tools.eth.contract.util.model.SendModel;
 import com.blockchain.tools.eth.contract.util.model.SendResultModel;
 import org.web3j.abi.TypeReference;
@@ -13,12 +17,54 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Calling ERC1155 contracts
  */
 public class ERC1155Contract {
 
+    /**
+     * Functions of the standard, their selectors are computed once
+     */
+    private static final PreparedFunction BALANCE_OF = EthAbiCodecTool.prepare("balanceOf", Address.class, Uint256.class);
+    private static final PreparedFunction BALANCE_OF_BATCH = EthAbiCodecTool.prepare(
+            "balanceOfBatch",
+            new TypeReference<DynamicArray<Address>>() {},
+            new TypeReference<DynamicArray<Uint256>>() {}
+    );
+    private static final PreparedFunction SAFE_TRANSFER_FROM = EthAbiCodecTool.prepare("safeTransferFrom", Address.class, Address.class, Uint256.class, Uint256.class, DynamicBytes.class);
+    private static final PreparedFunction SAFE_BATCH_TRANSFER_FROM = EthAbiCodecTool.prepare(
+            "safeBatchTransferFrom",
+            new TypeReference<Address>() {},
+            new TypeReference<Address>() {},
+            new TypeReference<DynamicArray<Uint256>>() {},
+            new TypeReference<DynamicArray<Uint256>>() {},
+            new TypeReference<DynamicBytes>() {}
+    );
+
+    /**
+     * Default number of pairs per eth_call of balanceOfBatchChunked
+     */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
+
+    /**
+     * Default number of chunks of balanceOfBatchChunked running at the same time
+     */
+    public static final int DEFAULT_BATCH_PARALLELISM = 8;
+
+    /**
+     * Runs the chunks of balanceOfBatchChunked, the threads only wait on the node
+     */
+    private static final ExecutorService BATCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-erc1155-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Contract address
      */
@@ -36,14 +82,24 @@ public class ERC1155Contract {
      */
     private ERC721Contract erc721Contract;
 
-    private ERC1155Contract(Web3j web3j, String contractAddress) {
+    private ERC1155Contract(EthContractUtil ethContractUtil, String contractAddress) {
         this.contractAddress = contractAddress;
-        this.ethContractUtil = ethContractUtil.builder(web3j);
-        this.erc721Contract = ERC721Contract.builder(web3j, contractAddress);
+        this.ethContractUtil = ethContractUtil;
+        this.erc721Contract = ERC721Contract.builder(ethContractUtil, contractAddress);
     }
 
     public static ERC1155Contract builder(Web3j web3j, String contractAddress) {
-        return new ERC1155Contract(web3j, contractAddress);
+        return new ERC1155Contract(EthContractUtil.builder(web3j), contractAddress);
+    }
+
+    /**
+     * Share an EthContractUtil, e.g. the one of a SnapshotSession
+     * @param ethContractUtil
+     * @param contractAddress
+     * @return
+     */
+    public static ERC1155Contract builder(EthContractUtil ethContractUtil, String contractAddress) {
+        return new ERC1155Contract(ethContractUtil, contractAddress);
     }
 
     /**
@@ -58,8 +114,25 @@ public class ERC1155Contract {
         return Commons.resultBigInteger(
                 ethContractUtil,
                 contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "balanceOf",
+                BALANCE_OF.encode(
+                        new Address(address),
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #balanceOf(String, BigInteger)} without blocking the caller
+     *
+     * @param address
+     * @param tokenId
+     * @return
+     */
+    public CompletableFuture<BigInteger> balanceOfAsync(String address, BigInteger tokenId) {
+        return Commons.resultBigIntegerAsync(
+                ethContractUtil,
+                contractAddress,
+                BALANCE_OF.encode(
                         new Address(address),
                         new Uint256(tokenId)
                 )
@@ -79,26 +152,31 @@ public class ERC1155Contract {
             throw new Exception("ERC1155: accounts and ids length mismatch");
         }
 
-        Address[] addressArray = new Address[addresses.size()];
-        Uint256[] tokenIdArray = new Uint256[tokenIds.size()];
-
-        for (int i = 0; i < addresses.size(); i++) {
-            addressArray[i] = new Address(addresses.get(i));
-        }
+        return toBalanceList(ethContractUtil.select(contractAddress,
+                encodeBalanceOfBatch(addresses, tokenIds),
+                new TypeReference<DynamicArray<Uint256>>() {}
+        ));
+    }
 
-        for (int i = 0; i < tokenIds.size(); i++) {
-            tokenIdArray[i] = new Uint256(tokenIds.get(i));
+    /**
+     * {@link #balanceOfBatch(List, List)} without blocking the caller
+     *
+     * @param addresses
+     * @param tokenIds
+     * @return
+     */
+    public CompletableFuture<List<BigInteger>> balanceOfBatchAsync(List<String> addresses, List<BigInteger> tokenIds) {
+        if (addresses == null || tokenIds == null || addresses.size() != tokenIds.size()) {
+            return Futures.failed(new Exception("ERC1155: accounts and ids length mismatch"));
         }
 
-        List<Type> result = ethContractUtil.select(contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "balanceOfBatch",
-                        new DynamicArray(Address.class, addressArray),
-                        new DynamicArray(Uint256.class, tokenIdArray)
-                ),
+        return ethContractUtil.selectAsync(contractAddress,
+                encodeBalanceOfBatch(addresses, tokenIds),
                 new TypeReference<DynamicArray<Uint256>>() {}
-        );
+        ).thenApply(this::toBalanceList);
+    }
 
+    private List<BigInteger> toBalanceList(List<Type> result) {
         if (result == null || result.size() < 1 || result.get(0) == null || result.get(0).getValue() == null) {
             return null;
         }
@@ -116,7 +194,7 @@ public class ERC1155Contract {
             }
 
             if(obj.getValue() != null){
-                resultArray.add(new BigInteger(obj.getValue().toString()));
+                resultArray.add((BigInteger) obj.getValue());
             } else {
                 resultArray.add(BigInteger.ZERO);
             }
@@ -125,6 +203,198 @@ public class ERC1155Contract {
         return resultArray;
     }
 
+    /**
+     * {balanceOfBatch} for large inputs, with the default chunk size and parallelism
+     *
+     * @param addresses
+     * @param tokenIds
+     * @return
+     * @throws Exception
+     */
+    public BatchBalances balanceOfBatchChunked(List<String> addresses, List<BigInteger> tokenIds) throws Exception {
+        return balanceOfBatchChunked(addresses, tokenIds, DEFAULT_BATCH_CHUNK_SIZE, DEFAULT_BATCH_PARALLELISM);
+    }
+
+    /**
+     * {balanceOfBatch} for large inputs
+     *
+     * The pairs are split into chunks of chunkSize, each chunk is one eth_call and several run at the same time.
+     * A chunk that fails, e.g. over the gas or response limit of the node, marks its pairs as failed in the result
+     * and the other chunks still complete
+     *
+     * @param addresses
+     * @param tokenIds
+     * @param chunkSize pairs per eth_call
+     * @param parallelism chunks running at the same time
+     * @return the balances in the order of the pairs
+     * @throws Exception if the lists do not match
+     */
+    public BatchBalances balanceOfBatchChunked(List<String> addresses, List<BigInteger> tokenIds, int chunkSize, int parallelism) throws Exception {
+        if (addresses == null || tokenIds == null || addresses.size() != tokenIds.size()) {
+            throw new Exception("ERC1155: accounts and ids length mismatch");
+        }
+        if (chunkSize < 1) {
+            throw new Exception("chunkSize must be greater than 0");
+        }
+
+        int size = addresses.size();
+        BatchBalances balances = new BatchBalances(size);
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        AtomicInteger nextChunk = new AtomicInteger();
+
+        int workers = Math.max(1, Math.min(parallelism, chunks));
+        CompletableFuture<?>[] futures = new CompletableFuture[workers];
+        for (int i = 0; i < workers; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                    int from = chunk * chunkSize;
+                    int to = Math.min(size, from + chunkSize);
+                    try {
+                        readChunk(addresses.subList(from, to), tokenIds.subList(from, to), balances, from);
+                    } catch (Exception e) {
+                        balances.setFailed(from, to, e.getMessage());
+                    }
+                }
+            }, BATCH_EXECUTOR);
+        }
+        CompletableFuture.allOf(futures).join();
+        return balances;
+    }
+
+    /**
+     * {@link #balanceOfBatchChunked(List, List)} without blocking the caller
+     *
+     * @param addresses
+     * @param tokenIds
+     * @return
+     */
+    public CompletableFuture<BatchBalances> balanceOfBatchChunkedAsync(List<String> addresses, List<BigInteger> tokenIds) {
+        return balanceOfBatchChunkedAsync(addresses, tokenIds, DEFAULT_BATCH_CHUNK_SIZE, DEFAULT_BATCH_PARALLELISM);
+    }
+
+    /**
+     * {@link #balanceOfBatchChunked(List, List, int, int)} without blocking the caller
+     *
+     * No thread waits for the chunks, each of the parallelism lanes sends its next chunk when the previous one completes
+     *
+     * @param addresses
+     * @param tokenIds
+     * @param chunkSize pairs per eth_call
+     * @param parallelism chunks running at the same time
+     * @return
+     */
+    public CompletableFuture<BatchBalances> balanceOfBatchChunkedAsync(List<String> addresses, List<BigInteger> tokenIds, int chunkSize, int parallelism) {
+        if (addresses == null || tokenIds == null || addresses.size() != tokenIds.size()) {
+            return Futures.failed(new Exception("ERC1155: accounts and ids length mismatch"));
+        }
+        if (chunkSize < 1) {
+            return Futures.failed(new Exception("chunkSize must be greater than 0"));
+        }
+
+        int size = addresses.size();
+        BatchBalances balances = new BatchBalances(size);
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        AtomicInteger nextChunk = new AtomicInteger();
+
+        int lanes = Math.max(1, Math.min(parallelism, chunks));
+        CompletableFuture<?>[] futures = new CompletableFuture[lanes];
+        for (int i = 0; i < lanes; i++) {
+            futures[i] = readChunksAsync(addresses, tokenIds, chunkSize, chunks, nextChunk, balances);
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> balances);
+    }
+
+    /**
+     * Read the chunks of one lane, one after the other
+     *
+     * @param addresses
+     * @param tokenIds
+     * @param chunkSize
+     * @param chunks number of chunks
+     * @param nextChunk next chunk to read, shared by the lanes
+     * @param balances
+     * @return
+     */
+    private CompletableFuture<Void> readChunksAsync(List<String> addresses, List<BigInteger> tokenIds, int chunkSize, int chunks,
+                                                    AtomicInteger nextChunk, BatchBalances balances) {
+        int chunk = nextChunk.getAndIncrement();
+        if (chunk >= chunks) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int from = chunk * chunkSize;
+        int to = Math.min(addresses.size(), from + chunkSize);
+
+        return ethContractUtil.callAsync(contractAddress, encodeBalanceOfBatch(addresses.subList(from, to), tokenIds.subList(from, to)))
+                .handle((returnData, e) -> {
+                    if (e != null) {
+                        balances.setFailed(from, to, Futures.unwrap(e).getMessage());
+                        return null;
+                    }
+                    try {
+                        readChunk(returnData, balances, from, to - from);
+                    } catch (Exception readError) {
+                        balances.setFailed(from, to, readError.getMessage());
+                    }
+                    return null;
+                })
+                .thenCompose(v -> readChunksAsync(addresses, tokenIds, chunkSize, chunks, nextChunk, balances));
+    }
+
+    /**
+     * One eth_call of balanceOfBatch, the return data is read in place into the result
+     *
+     * @param addresses
+     * @param tokenIds
+     * @param balances
+     * @param offset index of the first pair of the chunk
+     * @throws Exception
+     */
+    private void readChunk(List<String> addresses, List<BigInteger> tokenIds, BatchBalances balances, int offset) throws Exception {
+        readChunk(ethContractUtil.call(contractAddress, encodeBalanceOfBatch(addresses, tokenIds)), balances, offset, addresses.size());
+    }
+
+    /**
+     * Read the return data of one eth_call of balanceOfBatch into the result
+     *
+     * @param returnData
+     * @param balances
+     * @param offset index of the first pair of the chunk
+     * @param count number of pairs of the chunk
+     * @throws Exception
+     */
+    private void readChunk(String returnData, BatchBalances balances, int offset, int count) throws Exception {
+        // Word 0 is the offset of the array, word 1 its length, then one word per balance
+        BigInteger length = StaticAbiDecoder.decodeUint256(returnData, 1);
+        if (length == null) {
+            throw new Exception("balanceOfBatch returned nothing, the contract may not exist");
+        }
+        if (length.intValue() != count) {
+            throw new Exception("balanceOfBatch returned " + length + " balances for " + count + " pairs");
+        }
+        for (int i = 0; i < count; i++) {
+            balances.set(offset + i, StaticAbiDecoder.decodeUint256(returnData, 2 + i));
+        }
+    }
+
+    private String encodeBalanceOfBatch(List<String> addresses, List<BigInteger> tokenIds) {
+        Address[] addressArray = new Address[addresses.size()];
+        Uint256[] tokenIdArray = new Uint256[tokenIds.size()];
+
+        for (int i = 0; i < addresses.size(); i++) {
+            addressArray[i] = new Address(addresses.get(i));
+        }
+
+        for (int i = 0; i < tokenIds.size(); i++) {
+            tokenIdArray[i] = new Uint256(tokenIds.get(i));
+        }
+
+        return BALANCE_OF_BATCH.encode(
+                new DynamicArray(Address.class, addressArray),
+                new DynamicArray(Uint256.class, tokenIdArray)
+        );
+    }
+
     /**
      * Returns true if `operator` is approved to transfer ``account``'s tokens.
      *
@@ -137,6 +407,17 @@ public class ERC1155Contract {
         return erc721Contract.isApprovedForAll(owner, spender);
     }
 
+    /**
+     * {@link #isApprovedForAll(String, String)} without blocking the caller
+     *
+     * @param owner
+     * @param spender
+     * @return
+     */
+    public CompletableFuture<Boolean> isApprovedForAllAsync(String owner, String spender) {
+        return erc721Contract.isApprovedForAllAsync(owner, spender);
+    }
+
     /**
      * Grants or revokes permission to `operator` to transfer the caller's tokens, according to `approved`,
      *
@@ -152,6 +433,18 @@ public class ERC1155Contract {
         return erc721Contract.setApprovalForAll(to, approved, sendModel);
     }
 
+    /**
+     * {@link #setApprovalForAll(String, Boolean, SendModel)} without blocking the caller
+     *
+     * @param to
+     * @param approved
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> setApprovalForAllAsync(String to, Boolean approved, SendModel sendModel) {
+        return erc721Contract.setApprovalForAllAsync(to, approved, sendModel);
+    }
+
     /**
      * Transfers `amount` tokens of token type `id` from `from` to `to`.
      *
@@ -169,8 +462,31 @@ public class ERC1155Contract {
     public SendResultModel safeTransferFrom(String from, String to, BigInteger tokenId, BigInteger amount, byte[] data, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "safeTransferFrom",
+                SAFE_TRANSFER_FROM.encode(
+                        new Address(from),
+                        new Address(to),
+                        new Uint256(tokenId),
+                        new Uint256(amount),
+                        new DynamicBytes(data)
+                )
+        );
+    }
+
+    /**
+     * {@link #safeTransferFrom(String, String, BigInteger, BigInteger, byte[], SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param tokenId
+     * @param amount
+     * @param data
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> safeTransferFromAsync(String from, String to, BigInteger tokenId, BigInteger amount, byte[] data, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                SAFE_TRANSFER_FROM.encode(
                         new Address(from),
                         new Address(to),
                         new Uint256(tokenId),
@@ -195,6 +511,37 @@ public class ERC1155Contract {
      * @throws Exception
      */
     public SendResultModel safeBatchTransferFrom(String from, String to, List<BigInteger> tokenIds, List<BigInteger> amounts, byte[] data, SendModel sendModel) throws Exception {
+        return otherTransaction(
+                sendModel,
+                encodeSafeBatchTransferFrom(from, to, tokenIds, amounts, data)
+        );
+    }
+
+    /**
+     * {@link #safeBatchTransferFrom(String, String, List, List, byte[], SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param tokenIds
+     * @param amounts
+     * @param data
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> safeBatchTransferFromAsync(String from, String to, List<BigInteger> tokenIds, List<BigInteger> amounts, byte[] data, SendModel sendModel) {
+        String inputData;
+        try {
+            inputData = encodeSafeBatchTransferFrom(from, to, tokenIds, amounts, data);
+        } catch (Exception e) {
+            return Futures.failed(e);
+        }
+        return otherTransactionAsync(
+                sendModel,
+                inputData
+        );
+    }
+
+    private String encodeSafeBatchTransferFrom(String from, String to, List<BigInteger> tokenIds, List<BigInteger> amounts, byte[] data) throws Exception {
         if (tokenIds == null || amounts == null || tokenIds.size() != amounts.size()) {
             throw new Exception("ERC1155: ids and amounts length mismatch");
         }
@@ -210,16 +557,12 @@ public class ERC1155Contract {
             amountArray[i] = new Uint256(amounts.get(i));
         }
 
-        return otherTransaction(
-                sendModel,
-                EthAbiCodecTool.getInputData(
-                        "safeBatchTransferFrom",
-                        new Address(from),
-                        new Address(to),
-                        new DynamicArray(Uint256.class, tokenIdArray),
-                        new DynamicArray(Uint256.class, amountArray),
-                        new DynamicBytes(data)
-                )
+        return SAFE_BATCH_TRANSFER_FROM.encode(
+                new Address(from),
+                new Address(to),
+                new DynamicArray(Uint256.class, tokenIdArray),
+                new DynamicArray(Uint256.class, amountArray),
+                new DynamicBytes(data)
         );
     }
 
@@ -235,6 +578,17 @@ public class ERC1155Contract {
         return Commons.otherSelect(ethContractUtil, contractAddress, inputData, outputTypes);
     }
 
+    /**
+     * {@link #otherSelect(String, TypeReference...)} without blocking the caller
+     *
+     * @param inputData
+     * @param outputTypes
+     * @return
+     */
+    public CompletableFuture<List<Type>> otherSelectAsync(String inputData, TypeReference... outputTypes) {
+        return Commons.otherSelectAsync(ethContractUtil, contractAddress, inputData, outputTypes);
+    }
+
     /**
      * Calling custom functions to write contracts
      *
@@ -247,4 +601,16 @@ public class ERC1155Contract {
         sendModel.setToAddress(contractAddress);
         return Commons.otherTransaction(ethContractUtil, sendModel, inputData);
     }
+
+    /**
+     * {@link #otherTransaction(SendModel, String)} without blocking the caller
+     *
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> otherTransactionAsync(SendModel sendModel, String inputData) {
+        sendModel.setToAddress(contractAddress);
+        return Commons.otherTransactionAsync(ethContractUtil, sendModel, inputData);
+    }
 }
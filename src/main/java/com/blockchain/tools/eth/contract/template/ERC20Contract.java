@@ -1,6 +1,7 @@
 package com.blockchain.tools.eth.contract.template;
 
 import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
 import com.blockchain.tools.eth.contract.util.EthContractUtil;
 import com.blockchain.tools.eth.contract.util.model.SendModel;
 import com.blockchain.tools.eth.contract.util.model.SendResultModel;
@@ -12,13 +13,25 @@ import org.web3j.protocol.Web3j;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Calling ERC20 contracts
  */
 public class ERC20Contract {
 
+    /**
+     * Functions of the standard, their selectors are computed once
+     */
+    private static final PreparedFunction TOTAL_SUPPLY = EthAbiCodecTool.prepare("totalSupply");
+    private static final PreparedFunction BALANCE_OF = EthAbiCodecTool.prepare("balanceOf", Address.class);
+    private static final PreparedFunction ALLOWANCE = EthAbiCodecTool.prepare("allowance", Address.class, Address.class);
+    private static final PreparedFunction TRANSFER = EthAbiCodecTool.prepare("transfer", Address.class, Uint256.class);
+    private static final PreparedFunction TRANSFER_FROM = EthAbiCodecTool.prepare("transferFrom", Address.class, Address.class, Uint256.class);
+    private static final PreparedFunction APPROVE = EthAbiCodecTool.prepare("approve", Address.class, Uint256.class);
+
     /**
      * Contract address
      */
@@ -31,13 +44,23 @@ public class ERC20Contract {
      */
     private EthContractUtil ethContractUtil;
 
-    private ERC20Contract(Web3j web3j, String contractAddress) {
+    private ERC20Contract(EthContractUtil ethContractUtil, String contractAddress) {
         this.contractAddress = contractAddress;
-        this.ethContractUtil = ethContractUtil.builder(web3j);
+        this.ethContractUtil = ethContractUtil;
     }
 
     public static ERC20Contract builder(Web3j web3j, String contractAddress) {
-        return new ERC20Contract(web3j, contractAddress);
+        return new ERC20Contract(EthContractUtil.builder(web3j), contractAddress);
+    }
+
+    /**
+     * Use an existing EthContractUtil, e.g. one pinned to a block by a SnapshotSession
+     * @param ethContractUtil
+     * @param contractAddress
+     * @return
+     */
+    public static ERC20Contract builder(EthContractUtil ethContractUtil, String contractAddress) {
+        return new ERC20Contract(ethContractUtil, contractAddress);
     }
 
     /**
@@ -49,9 +72,20 @@ public class ERC20Contract {
         return Commons.resultBigInteger(
                 ethContractUtil,
                 contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "totalSupply"
-                )
+                TOTAL_SUPPLY.encode()
+        );
+    }
+
+    /**
+     * {@link #totalSupply()} without blocking the caller
+     *
+     * @return
+     */
+    public CompletableFuture<BigInteger> totalSupplyAsync() {
+        return Commons.resultBigIntegerAsync(
+                ethContractUtil,
+                contractAddress,
+                TOTAL_SUPPLY.encode()
         );
     }
 
@@ -65,13 +99,60 @@ public class ERC20Contract {
         return Commons.resultBigInteger(
                 ethContractUtil,
                 contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "balanceOf",
+                BALANCE_OF.encode(
+                        new Address(account)
+                )
+        );
+    }
+
+    /**
+     * {@link #balanceOf(String)} without blocking the caller
+     *
+     * @param account
+     * @return
+     */
+    public CompletableFuture<BigInteger> balanceOfAsync(String account) {
+        return Commons.resultBigIntegerAsync(
+                ethContractUtil,
+                contractAddress,
+                BALANCE_OF.encode(
                         new Address(account)
                 )
         );
     }
 
+    /**
+     * Returns the amount of tokens owned by each account, with Multicall3.
+     *
+     * The results are in the same order as accounts, null for the queries that failed
+     * @param accounts
+     * @return
+     * @throws Exception
+     */
+    public List<BigInteger> balanceOfMany(List<String> accounts) throws Exception {
+        return Commons.resultBigIntegerMany(ethContractUtil, contractAddress, encodeBalanceOf(accounts));
+    }
+
+    /**
+     * {@link #balanceOfMany(List)} without blocking the caller
+     *
+     * @param accounts
+     * @return
+     */
+    public CompletableFuture<List<BigInteger>> balanceOfManyAsync(List<String> accounts) {
+        return Commons.resultBigIntegerManyAsync(ethContractUtil, contractAddress, encodeBalanceOf(accounts));
+    }
+
+    private static List<String> encodeBalanceOf(List<String> accounts) {
+        List<String> inputDataList = new ArrayList<>(accounts.size());
+        for (String account : accounts) {
+            inputDataList.add(BALANCE_OF.encode(
+                    new Address(account)
+            ));
+        }
+        return inputDataList;
+    }
+
     /**
      * Returns the remaining number of tokens that `spender` will be
      * allowed to spend on behalf of `owner` through {transferFrom}. This is
@@ -85,8 +166,23 @@ public class ERC20Contract {
      */
     public BigInteger allowance(String owner, String spender) throws Exception {
         return Commons.resultBigInteger(ethContractUtil, contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "allowance",
+                ALLOWANCE.encode(
+                        new Address(owner),
+                        new Address(spender)
+                )
+        );
+    }
+
+    /**
+     * {@link #allowance(String, String)} without blocking the caller
+     *
+     * @param owner
+     * @param spender
+     * @return
+     */
+    public CompletableFuture<BigInteger> allowanceAsync(String owner, String spender) {
+        return Commons.resultBigIntegerAsync(ethContractUtil, contractAddress,
+                ALLOWANCE.encode(
                         new Address(owner),
                         new Address(spender)
                 )
@@ -106,8 +202,25 @@ public class ERC20Contract {
     public SendResultModel transfer(String to, BigInteger amount, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "transfer",
+                TRANSFER.encode(
+                        new Address(to),
+                        new Uint256(amount)
+                )
+        );
+    }
+
+    /**
+     * {@link #transfer(String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param to
+     * @param amount
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> transferAsync(String to, BigInteger amount, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                TRANSFER.encode(
                         new Address(to),
                         new Uint256(amount)
                 )
@@ -131,8 +244,27 @@ public class ERC20Contract {
     public SendResultModel transferFrom(String from, String to, BigInteger amount, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "transferFrom",
+                TRANSFER_FROM.encode(
+                        new Address(from),
+                        new Address(to),
+                        new Uint256(amount)
+                )
+        );
+    }
+
+    /**
+     * {@link #transferFrom(String, String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param amount
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> transferFromAsync(String from, String to, BigInteger amount, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                TRANSFER_FROM.encode(
                         new Address(from),
                         new Address(to),
                         new Uint256(amount)
@@ -152,8 +284,25 @@ public class ERC20Contract {
     public SendResultModel approve(String spender, BigInteger amount, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "approve",
+                APPROVE.encode(
+                        new Address(spender),
+                        new Uint256(amount)
+                )
+        );
+    }
+
+    /**
+     * {@link #approve(String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param spender
+     * @param amount
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> approveAsync(String spender, BigInteger amount, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                APPROVE.encode(
                         new Address(spender),
                         new Uint256(amount)
                 )
@@ -172,6 +321,17 @@ public class ERC20Contract {
         return Commons.otherSelect(ethContractUtil, contractAddress, inputData, outputTypes);
     }
 
+    /**
+     * {@link #otherSelect(String, TypeReference...)} without blocking the caller
+     *
+     * @param inputData
+     * @param outputTypes
+     * @return
+     */
+    public CompletableFuture<List<Type>> otherSelectAsync(String inputData, TypeReference... outputTypes) {
+        return Commons.otherSelectAsync(ethContractUtil, contractAddress, inputData, outputTypes);
+    }
+
     /**
      * Calling custom functions to write contracts
      *
@@ -184,4 +344,16 @@ public class ERC20Contract {
         sendModel.setToAddress(contractAddress);
         return Commons.otherTransaction(ethContractUtil, sendModel, inputData);
     }
+
+    /**
+     * {@link #otherTransaction(SendModel, String)} without blocking the caller
+     *
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> otherTransactionAsync(SendModel sendModel, String inputData) {
+        sendModel.setToAddress(contractAddress);
+        return Commons.otherTransactionAsync(ethContractUtil, sendModel, inputData);
+    }
 }
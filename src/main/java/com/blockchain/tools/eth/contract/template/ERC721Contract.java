@@ -1,6 +1,7 @@
 package com.blockchain.tools.eth.contract.template;
 
 import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.codec.PreparedFunction;
 import com.blockchain.tools.eth.contract.util.EthContractUtil;
 import com.blockchain.tools.eth.contract.util.model.SendModel;
 import com.blockchain.tools.eth.contract.util.model.SendResultModel;
@@ -14,13 +15,30 @@ import org.web3j.protocol.Web3j;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Calling ERC721 contracts
  */
 public class ERC721Contract {
 
+    /**
+     * Functions of the standard, their selectors are computed once
+     */
+    private static final PreparedFunction BALANCE_OF = EthAbiCodecTool.prepare("balanceOf", Address.class);
+    private static final PreparedFunction OWNER_OF = EthAbiCodecTool.prepare("ownerOf", Uint256.class);
+    private static final PreparedFunction IS_APPROVED_FOR_ALL = EthAbiCodecTool.prepare("isApprovedForAll", Address.class, Address.class);
+    private static final PreparedFunction GET_APPROVED = EthAbiCodecTool.prepare("getApproved", Uint256.class);
+    private static final PreparedFunction SAFE_TRANSFER_FROM_WITH_DATA = EthAbiCodecTool.prepare("safeTransferFrom", Address.class, Address.class, Uint256.class, DynamicBytes.class);
+    private static final PreparedFunction SAFE_TRANSFER_FROM = EthAbiCodecTool.prepare("safeTransferFrom", Address.class, Address.class, Uint256.class);
+    private static final PreparedFunction TRANSFER_FROM = EthAbiCodecTool.prepare("transferFrom", Address.class, Address.class, Uint256.class);
+    private static final PreparedFunction APPROVE = EthAbiCodecTool.prepare("approve", Address.class, Uint256.class);
+    private static final PreparedFunction SET_APPROVAL_FOR_ALL = EthAbiCodecTool.prepare("setApprovalForAll", Address.class, Bool.class);
+    private static final PreparedFunction TOKEN_URI = EthAbiCodecTool.prepare("tokenURI", Uint256.class);
+    private static final PreparedFunction TOKEN_OF_OWNER_BY_INDEX = EthAbiCodecTool.prepare("tokenOfOwnerByIndex", Address.class, Uint256.class);
+
     /**
      * Contract address
      */
@@ -33,13 +51,23 @@ public class ERC721Contract {
      */
     private EthContractUtil ethContractUtil;
 
-    private ERC721Contract(Web3j web3j, String contractAddress) {
+    private ERC721Contract(EthContractUtil ethContractUtil, String contractAddress) {
         this.contractAddress = contractAddress;
-        this.ethContractUtil = ethContractUtil.builder(web3j);
+        this.ethContractUtil = ethContractUtil;
     }
 
     public static ERC721Contract builder(Web3j web3j, String contractAddress) {
-        return new ERC721Contract(web3j, contractAddress);
+        return new ERC721Contract(EthContractUtil.builder(web3j), contractAddress);
+    }
+
+    /**
+     * Build on an existing EthContractUtil, reads follow its block parameter
+     * @param ethContractUtil
+     * @param contractAddress
+     * @return
+     */
+    public static ERC721Contract builder(EthContractUtil ethContractUtil, String contractAddress) {
+        return new ERC721Contract(ethContractUtil, contractAddress);
     }
 
     /**
@@ -53,8 +81,23 @@ public class ERC721Contract {
         return Commons.resultBigInteger(
                 ethContractUtil,
                 contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "balanceOf",
+                BALANCE_OF.encode(
+                        new Address(address)
+                )
+        );
+    }
+
+    /**
+     * {@link #balanceOf(String)} without blocking the caller
+     *
+     * @param address
+     * @return
+     */
+    public CompletableFuture<BigInteger> balanceOfAsync(String address) {
+        return Commons.resultBigIntegerAsync(
+                ethContractUtil,
+                contractAddress,
+                BALANCE_OF.encode(
                         new Address(address)
                 )
         );
@@ -69,13 +112,187 @@ public class ERC721Contract {
      */
     public String ownerOf(BigInteger tokenId) throws Exception {
         return Commons.resultAddress(ethContractUtil, contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "ownerOf",
+                OWNER_OF.encode(
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #ownerOf(BigInteger)} without blocking the caller
+     *
+     * @param tokenId
+     * @return
+     */
+    public CompletableFuture<String> ownerOfAsync(BigInteger tokenId) {
+        return Commons.resultAddressAsync(ethContractUtil, contractAddress,
+                OWNER_OF.encode(
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * Returns the owner of each token, with Multicall3.
+     *
+     * The results are in the same order as tokenIds, null for the queries that failed
+     *
+     * @param tokenIds
+     * @return
+     * @throws Exception
+     */
+    public List<String> ownerOfMany(List<BigInteger> tokenIds) throws Exception {
+        return Commons.resultAddressMany(ethContractUtil, contractAddress, encodeEach(OWNER_OF, tokenIds));
+    }
+
+    /**
+     * {@link #ownerOfMany(List)} without blocking the caller
+     *
+     * @param tokenIds
+     * @return
+     */
+    public CompletableFuture<List<String>> ownerOfManyAsync(List<BigInteger> tokenIds) {
+        return Commons.resultAddressManyAsync(ethContractUtil, contractAddress, encodeEach(OWNER_OF, tokenIds));
+    }
+
+    /**
+     * Returns the Uniform Resource Identifier (URI) for `tokenId` token, ERC721Metadata.
+     *
+     * @param tokenId
+     * @return
+     * @throws Exception
+     */
+    public String tokenURI(BigInteger tokenId) throws Exception {
+        return Commons.resultString(ethContractUtil, contractAddress,
+                TOKEN_URI.encode(
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #tokenURI(BigInteger)} without blocking the caller
+     *
+     * @param tokenId
+     * @return
+     */
+    public CompletableFuture<String> tokenURIAsync(BigInteger tokenId) {
+        return Commons.resultStringAsync(ethContractUtil, contractAddress,
+                TOKEN_URI.encode(
                         new Uint256(tokenId)
                 )
         );
     }
 
+    /**
+     * Returns the URI of each token, with Multicall3.
+     *
+     * The results are in the same order as tokenIds, null for the queries that failed
+     *
+     * @param tokenIds
+     * @return
+     * @throws Exception
+     */
+    public List<String> tokenURIMany(List<BigInteger> tokenIds) throws Exception {
+        return Commons.resultStringMany(ethContractUtil, contractAddress, encodeEach(TOKEN_URI, tokenIds));
+    }
+
+    /**
+     * {@link #tokenURIMany(List)} without blocking the caller
+     *
+     * @param tokenIds
+     * @return
+     */
+    public CompletableFuture<List<String>> tokenURIManyAsync(List<BigInteger> tokenIds) {
+        return Commons.resultStringManyAsync(ethContractUtil, contractAddress, encodeEach(TOKEN_URI, tokenIds));
+    }
+
+    /**
+     * Returns a token ID owned by `owner` at a given `index` of its token list, ERC721Enumerable.
+     *
+     * @param owner
+     * @param index
+     * @return
+     * @throws Exception
+     */
+    public BigInteger tokenOfOwnerByIndex(String owner, BigInteger index) throws Exception {
+        return Commons.resultBigInteger(ethContractUtil, contractAddress,
+                TOKEN_OF_OWNER_BY_INDEX.encode(
+                        new Address(owner),
+                        new Uint256(index)
+                )
+        );
+    }
+
+    /**
+     * {@link #tokenOfOwnerByIndex(String, BigInteger)} without blocking the caller
+     *
+     * @param owner
+     * @param index
+     * @return
+     */
+    public CompletableFuture<BigInteger> tokenOfOwnerByIndexAsync(String owner, BigInteger index) {
+        return Commons.resultBigIntegerAsync(ethContractUtil, contractAddress,
+                TOKEN_OF_OWNER_BY_INDEX.encode(
+                        new Address(owner),
+                        new Uint256(index)
+                )
+        );
+    }
+
+    /**
+     * Returns the token ID at each index of ``owner``'s token list, with Multicall3.
+     *
+     * The results are in the same order as indexes, null for the queries that failed
+     *
+     * @param owner
+     * @param indexes
+     * @return
+     * @throws Exception
+     */
+    public List<BigInteger> tokenOfOwnerByIndexMany(String owner, List<BigInteger> indexes) throws Exception {
+        return Commons.resultBigIntegerMany(ethContractUtil, contractAddress, encodeTokenOfOwnerByIndex(owner, indexes));
+    }
+
+    /**
+     * {@link #tokenOfOwnerByIndexMany(String, List)} without blocking the caller
+     *
+     * @param owner
+     * @param indexes
+     * @return
+     */
+    public CompletableFuture<List<BigInteger>> tokenOfOwnerByIndexManyAsync(String owner, List<BigInteger> indexes) {
+        return Commons.resultBigIntegerManyAsync(ethContractUtil, contractAddress, encodeTokenOfOwnerByIndex(owner, indexes));
+    }
+
+    /**
+     * Encode one call of a function taking a token ID for each token
+     * @param function
+     * @param tokenIds
+     * @return
+     */
+    private static List<String> encodeEach(PreparedFunction function, List<BigInteger> tokenIds) {
+        List<String> inputDataList = new ArrayList<>(tokenIds.size());
+        for (BigInteger tokenId : tokenIds) {
+            inputDataList.add(function.encode(
+                    new Uint256(tokenId)
+            ));
+        }
+        return inputDataList;
+    }
+
+    private static List<String> encodeTokenOfOwnerByIndex(String owner, List<BigInteger> indexes) {
+        Address ownerAddress = new Address(owner);
+        List<String> inputDataList = new ArrayList<>(indexes.size());
+        for (BigInteger index : indexes) {
+            inputDataList.add(TOKEN_OF_OWNER_BY_INDEX.encode(
+                    ownerAddress,
+                    new Uint256(index)
+            ));
+        }
+        return inputDataList;
+    }
+
     /**
      * Returns if the `operator` is allowed to manage all of the assets of `owner`.
      *
@@ -86,8 +303,23 @@ public class ERC721Contract {
      */
     public Boolean isApprovedForAll(String owner, String spender) throws Exception {
         return Commons.resultBool(ethContractUtil, contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "isApprovedForAll",
+                IS_APPROVED_FOR_ALL.encode(
+                        new Address(owner),
+                        new Address(spender)
+                )
+        );
+    }
+
+    /**
+     * {@link #isApprovedForAll(String, String)} without blocking the caller
+     *
+     * @param owner
+     * @param spender
+     * @return
+     */
+    public CompletableFuture<Boolean> isApprovedForAllAsync(String owner, String spender) {
+        return Commons.resultBoolAsync(ethContractUtil, contractAddress,
+                IS_APPROVED_FOR_ALL.encode(
                         new Address(owner),
                         new Address(spender)
                 )
@@ -103,8 +335,21 @@ public class ERC721Contract {
      */
     public String getApproved(BigInteger tokenId) throws Exception {
         return Commons.resultAddress(ethContractUtil, contractAddress,
-                EthAbiCodecTool.getInputData(
-                        "getApproved",
+                GET_APPROVED.encode(
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #getApproved(BigInteger)} without blocking the caller
+     *
+     * @param tokenId
+     * @return
+     */
+    public CompletableFuture<String> getApprovedAsync(BigInteger tokenId) {
+        return Commons.resultAddressAsync(ethContractUtil, contractAddress,
+                GET_APPROVED.encode(
                         new Uint256(tokenId)
                 )
         );
@@ -124,8 +369,29 @@ public class ERC721Contract {
     public SendResultModel safeTransferFrom(String from, String to, BigInteger tokenId, byte[] data, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "safeTransferFrom",
+                SAFE_TRANSFER_FROM_WITH_DATA.encode(
+                        new Address(from),
+                        new Address(to),
+                        new Uint256(tokenId),
+                        new DynamicBytes(data)
+                )
+        );
+    }
+
+    /**
+     * {@link #safeTransferFrom(String, String, BigInteger, byte[], SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param tokenId
+     * @param data
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> safeTransferFromAsync(String from, String to, BigInteger tokenId, byte[] data, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                SAFE_TRANSFER_FROM_WITH_DATA.encode(
                         new Address(from),
                         new Address(to),
                         new Uint256(tokenId),
@@ -148,8 +414,27 @@ public class ERC721Contract {
     public SendResultModel safeTransferFrom(String from, String to, BigInteger tokenId, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "safeTransferFrom",
+                SAFE_TRANSFER_FROM.encode(
+                        new Address(from),
+                        new Address(to),
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #safeTransferFrom(String, String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param tokenId
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> safeTransferFromAsync(String from, String to, BigInteger tokenId, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                SAFE_TRANSFER_FROM.encode(
                         new Address(from),
                         new Address(to),
                         new Uint256(tokenId)
@@ -170,8 +455,27 @@ public class ERC721Contract {
     public SendResultModel transferFrom(String from, String to, BigInteger tokenId, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "transferFrom",
+                TRANSFER_FROM.encode(
+                        new Address(from),
+                        new Address(to),
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #transferFrom(String, String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param from
+     * @param to
+     * @param tokenId
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> transferFromAsync(String from, String to, BigInteger tokenId, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                TRANSFER_FROM.encode(
                         new Address(from),
                         new Address(to),
                         new Uint256(tokenId)
@@ -194,8 +498,25 @@ public class ERC721Contract {
     public SendResultModel approve(String to, BigInteger tokenId, SendModel sendModel) throws Exception {
         return otherTransaction(
                sendModel,
-                EthAbiCodecTool.getInputData(
-                        "approve",
+                APPROVE.encode(
+                        new Address(to),
+                        new Uint256(tokenId)
+                )
+        );
+    }
+
+    /**
+     * {@link #approve(String, BigInteger, SendModel)} without blocking the caller
+     *
+     * @param to
+     * @param tokenId
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> approveAsync(String to, BigInteger tokenId, SendModel sendModel) {
+        return otherTransactionAsync(
+               sendModel,
+                APPROVE.encode(
                         new Address(to),
                         new Uint256(tokenId)
                 )
@@ -215,8 +536,25 @@ public class ERC721Contract {
     public SendResultModel setApprovalForAll(String to, Boolean approved, SendModel sendModel) throws Exception {
         return otherTransaction(
                 sendModel,
-                EthAbiCodecTool.getInputData(
-                        "setApprovalForAll",
+                SET_APPROVAL_FOR_ALL.encode(
+                        new Address(to),
+                        new Bool(approved)
+                )
+        );
+    }
+
+    /**
+     * {@link #setApprovalForAll(String, Boolean, SendModel)} without blocking the caller
+     *
+     * @param to
+     * @param approved
+     * @param sendModel
+     * @return
+     */
+    public CompletableFuture<SendResultModel> setApprovalForAllAsync(String to, Boolean approved, SendModel sendModel) {
+        return otherTransactionAsync(
+                sendModel,
+                SET_APPROVAL_FOR_ALL.encode(
                         new Address(to),
                         new Bool(approved)
                 )
@@ -235,6 +573,17 @@ public class ERC721Contract {
         return Commons.otherSelect(ethContractUtil, contractAddress, inputData, outputTypes);
     }
 
+    /**
+     * {@link #otherSelect(String, TypeReference...)} without blocking the caller
+     *
+     * @param inputData
+     * @param outputTypes
+     * @return
+     */
+    public CompletableFuture<List<Type>> otherSelectAsync(String inputData, TypeReference... outputTypes) {
+        return Commons.otherSelectAsync(ethContractUtil, contractAddress, inputData, outputTypes);
+    }
+
     /**
      * Calling custom functions to write contracts
      *
@@ -247,4 +596,16 @@ public class ERC721Contract {
         sendModel.setToAddress(contractAddress);
         return Commons.otherTransaction(ethContractUtil, sendModel, inputData);
     }
+
+    /**
+     * {@link #otherTransaction(SendModel, String)} without blocking the caller
+     *
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> otherTransactionAsync(SendModel sendModel, String inputData) {
+        sendModel.setToAddress(contractAddress);
+        return Commons.otherTransactionAsync(ethContractUtil, sendModel, inputData);
+    }
 }
@@ -0,0 +1,583 @@
+package com.blockchain.tools.eth.contract.template;
+
+import com.blockchain.tools.eth.contract.util.BlockHeadTracker;
+import com.blockchain.tools.eth.contract.util.EthCallException;
+import com.blockchain.tools.eth.contract.util.EthContractUtil;
+import com.blockchain.tools.eth.contract.util.ParallelWorkers;
+import com.blockchain.tools.eth.event.EventTopics;
+import com.blockchain.tools.eth.event.LogIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Owner of every token of an ERC721 collection, built once and kept current from Transfer events
+ *
+ * The owners of a token range are read in batches through Multicall3, several batches at the same time,
+ * at one block so the index is consistent. From then on update applies the Transfer logs of the new blocks,
+ * nothing is read again. Owners are interned and each token keeps an int, the tokens of the built range in an int array:
+ * <pre>
+ * ERC721OwnershipIndex index = ERC721OwnershipIndex.builder(web3j, "0x...");
+ * index.build(BigInteger.ONE, BigInteger.valueOf(10000));
+ * index.follow(); // Or call update() when needed
+ *
+ * index.getOwner(BigInteger.valueOf(42));
+ * </pre>
+ */
+public class ERC721OwnershipIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ERC721OwnershipIndex.class);
+
+    /**
+     * Runs the batches and the updates of followed indexes, the threads only wait on the node
+     */
+    private static final ExecutorService READ_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-erc721-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Default number of tokens per batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Default number of batches read at the same time
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    private String contractAddress;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * Blocks behind the head the index stays, so short reorgs are not applied
+     */
+    private int confirmations;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Interned owners, the ordinal of an owner is its position
+     */
+    private final List<String> owners = new ArrayList<>();
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    /**
+     * Number of tokens of each owner, by ordinal
+     */
+    private int[] tokenCounts = new int[16];
+
+    /**
+     * First token id of the built range
+     */
+    private BigInteger denseBase = BigInteger.ZERO;
+
+    /**
+     * Owner ordinal + 1 of each token of the built range, 0 if the token has no owner
+     */
+    private int[] dense = new int[0];
+
+    /**
+     * Owner ordinal of the tokens outside the built range, e.g. minted later
+     */
+    private final Map<BigInteger, Integer> sparse = new HashMap<>();
+
+    private int size;
+
+    /**
+     * Block the index is current at, -1 before it is built
+     */
+    private volatile long lastBlock = -1;
+
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    private BlockHeadTracker.BlockListener followListener;
+
+    private ERC721OwnershipIndex(Web3j web3j, String contractAddress){
+        this.web3j = web3j;
+        this.contractAddress = contractAddress;
+    }
+
+    public static ERC721OwnershipIndex builder(Web3j web3j, String contractAddress){
+        return new ERC721OwnershipIndex(web3j, contractAddress);
+    }
+
+    public ERC721OwnershipIndex setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public ERC721OwnershipIndex setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public ERC721OwnershipIndex setConfirmations(int confirmations) {
+        this.confirmations = confirmations;
+        return this;
+    }
+
+    /**
+     * Read the owner of every token of the range and replace the index with them
+     *
+     * The owners are read at one block, updates continue from the block after it.
+     * A token whose ownerOf reverts has no owner, if the owner of a token can not be read the build fails and the index is left as it was
+     * @param fromTokenId
+     * @param toTokenId inclusive
+     * @throws Exception
+     */
+    public void build(BigInteger fromTokenId, BigInteger toTokenId) throws Exception {
+        long block = targetBlock();
+        ERC721Contract contract = ERC721Contract.builder(
+                EthContractUtil.builder(web3j, DefaultBlockParameter.valueOf(BigInteger.valueOf(block))),
+                contractAddress
+        );
+        int count = rangeSize(fromTokenId, toTokenId);
+        List<String> tokenOwners = readBatches(count, (from, to) -> contract.ownerOfMany(tokenIds(fromTokenId, from, to)));
+        rereadFailed(contract, fromTokenId, tokenOwners);
+
+        lock.writeLock().lock();
+        try {
+            owners.clear();
+            ordinals.clear();
+            tokenCounts = new int[16];
+            sparse.clear();
+            size = 0;
+            denseBase = fromTokenId;
+            dense = new int[count];
+            for(int i = 0; i < count; i++){
+                String owner = tokenOwners.get(i);
+                if(owner != null && !owner.equals(ZERO_ADDRESS)){
+                    setOwner(fromTokenId.add(BigInteger.valueOf(i)), owner);
+                }
+            }
+            lastBlock = block;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read the tokens whose query failed in the batches again, one eth_call each
+     *
+     * A batch result does not tell a token that does not exist from a query that failed,
+     * ownerOf on its own does: it reverts for a token that does not exist and throws anything else
+     * @param contract
+     * @param fromTokenId
+     * @param tokenOwners owners in token order, the failed ones are filled in, with null if the token does not exist
+     * @throws Exception if the owner of a token can not be read
+     */
+    private void rereadFailed(ERC721Contract contract, BigInteger fromTokenId, List<String> tokenOwners) throws Exception {
+        List<Integer> failed = new ArrayList<>();
+        for(int i = 0; i < tokenOwners.size(); i++){
+            if(tokenOwners.get(i) == null){
+                failed.add(i);
+            }
+        }
+        if(failed.isEmpty()){
+            return;
+        }
+
+        List<String> owners = readBatches(failed.size(), (from, to) -> {
+            List<String> batch = new ArrayList<>(to - from);
+            for(int i = from; i < to; i++){
+                BigInteger tokenId = fromTokenId.add(BigInteger.valueOf(failed.get(i)));
+                try {
+                    batch.add(contract.ownerOf(tokenId));
+                } catch (EthCallException e){
+                    if(!e.isExecutionError()){
+                        throw e;
+                    }
+                    batch.add(null);
+                }
+            }
+            return batch;
+        });
+        for(int i = 0; i < failed.size(); i++){
+            tokenOwners.set(failed.get(i), owners.get(i));
+        }
+    }
+
+    /**
+     * Apply the Transfer logs since the last update
+     * @return number of transfers applied
+     * @throws Exception if the index is not built or the logs can not be read
+     */
+    public int update() throws Exception {
+        if(lastBlock < 0){
+            throw new Exception("the index must be built before it is updated");
+        }
+        long target = targetBlock();
+        if(target <= lastBlock){
+            return 0;
+        }
+
+        AtomicInteger transfers = new AtomicInteger();
+        LogIndexer.builder(web3j)
+                .setContractAddresses(contractAddress)
+                .addTopic(EventTopics.TRANSFER)
+                .setFromBlock(BigInteger.valueOf(lastBlock + 1))
+                .setToBlock(BigInteger.valueOf(target))
+                .run((fromBlock, toBlock, logs) -> {
+                    lock.writeLock().lock();
+                    try {
+                        for(Log log : logs){
+                            if(apply(log)){
+                                transfers.incrementAndGet();
+                            }
+                        }
+                        lastBlock = toBlock.longValue();
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                });
+        return transfers.get();
+    }
+
+    /**
+     * Update the index on every new block of the BlockHeadTracker of the Web3j
+     *
+     * The updates run on the read threads of the index, the tracker thread is shared by every listener of the Web3j
+     */
+    public void follow(){
+        if(followListener != null){
+            return;
+        }
+        followListener = blockNumber -> {
+            // A slow update must not pile up behind the next blocks
+            if(!updating.compareAndSet(false, true)){
+                return;
+            }
+            READ_EXECUTOR.execute(() -> {
+                try {
+                    update();
+                } catch (Exception e){
+                    logger.warn("failed to update the ownership index of " + contractAddress + ": " + e.getMessage());
+                } finally {
+                    updating.set(false);
+                }
+            });
+        };
+        BlockHeadTracker.of(web3j).addListener(followListener);
+    }
+
+    public void unfollow(){
+        if(followListener != null){
+            BlockHeadTracker.of(web3j).removeListener(followListener);
+            followListener = null;
+        }
+    }
+
+    /**
+     * Owner of a token
+     * @param tokenId
+     * @return lower case address, null if the token is not in the index
+     */
+    public String getOwner(BigInteger tokenId){
+        lock.readLock().lock();
+        try {
+            int ordinal = ordinalOf(tokenId);
+            return ordinal < 0 ? null : owners.get(ordinal);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of tokens of an owner
+     * @param owner
+     * @return
+     */
+    public int getTokenCount(String owner){
+        lock.readLock().lock();
+        try {
+            Integer ordinal = ordinals.get(owner.toLowerCase());
+            return ordinal == null ? 0 : tokenCounts[ordinal];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tokens of an owner, walks the whole index
+     * @param owner
+     * @return
+     */
+    public List<BigInteger> getTokensOf(String owner){
+        lock.readLock().lock();
+        try {
+            List<BigInteger> tokenIds = new ArrayList<>();
+            Integer ordinal = ordinals.get(owner.toLowerCase());
+            if(ordinal == null || tokenCounts[ordinal] == 0){
+                return tokenIds;
+            }
+            for(int i = 0; i < dense.length; i++){
+                if(dense[i] == ordinal + 1){
+                    tokenIds.add(denseBase.add(BigInteger.valueOf(i)));
+                }
+            }
+            for(Map.Entry<BigInteger, Integer> entry : sparse.entrySet()){
+                if(entry.getValue().equals(ordinal)){
+                    tokenIds.add(entry.getKey());
+                }
+            }
+            return tokenIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of tokens with an owner
+     * @return
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct owners seen
+     * @return
+     */
+    public int getOwnerCount(){
+        lock.readLock().lock();
+        try {
+            return owners.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Block the index is current at, -1 before it is built
+     * @return
+     */
+    public long getLastBlock() {
+        return lastBlock;
+    }
+
+    /**
+     * Read the owner of every token of a range, in batches at the same time, without touching the index
+     * @param fromTokenId
+     * @param toTokenId inclusive
+     * @return owners in token order, null for the tokens whose query failed
+     * @throws Exception
+     */
+    public List<String> readOwners(BigInteger fromTokenId, BigInteger toTokenId) throws Exception {
+        ERC721Contract contract = ERC721Contract.builder(web3j, contractAddress);
+        return readBatches(rangeSize(fromTokenId, toTokenId), (from, to) -> contract.ownerOfMany(tokenIds(fromTokenId, from, to)));
+    }
+
+    /**
+     * Read the URI of every token of a range, in batches at the same time
+     * @param fromTokenId
+     * @param toTokenId inclusive
+     * @return URIs in token order, null for the tokens whose query failed
+     * @throws Exception
+     */
+    public List<String> readTokenURIs(BigInteger fromTokenId, BigInteger toTokenId) throws Exception {
+        ERC721Contract contract = ERC721Contract.builder(web3j, contractAddress);
+        return readBatches(rangeSize(fromTokenId, toTokenId), (from, to) -> contract.tokenURIMany(tokenIds(fromTokenId, from, to)));
+    }
+
+    /**
+     * Read the tokens of an owner with tokenOfOwnerByIndex, ERC721Enumerable, in batches at the same time
+     * @param owner
+     * @return token ids in the order of the owner's list, null for the indexes whose query failed
+     * @throws Exception
+     */
+    public List<BigInteger> readTokensOf(String owner) throws Exception {
+        ERC721Contract contract = ERC721Contract.builder(web3j, contractAddress);
+        BigInteger balance = contract.balanceOf(owner);
+        if(balance == null || balance.signum() == 0){
+            return new ArrayList<>();
+        }
+        return readBatches(balance.intValueExact(), (from, to) -> contract.tokenOfOwnerByIndexMany(owner, tokenIds(BigInteger.ZERO, from, to)));
+    }
+
+    /**
+     * Apply one Transfer log, ERC20 transfers of the same contract have no fourth topic and are ignored
+     * @param log
+     * @return whether it was an ERC721 transfer
+     */
+    private boolean apply(Log log){
+        List<String> topics = log.getTopics();
+        if(log.isRemoved() || topics == null || topics.size() != 4){
+            return false;
+        }
+        BigInteger tokenId = Numeric.toBigInt(topics.get(3));
+        String to = "0x" + topics.get(2).substring(topics.get(2).length() - 40).toLowerCase();
+        if(to.equals(ZERO_ADDRESS)){
+            removeOwner(tokenId);
+        } else {
+            setOwner(tokenId, to);
+        }
+        return true;
+    }
+
+    /**
+     * Set the owner of a token, the write lock is held
+     */
+    private void setOwner(BigInteger tokenId, String owner){
+        owner = owner.toLowerCase();
+        Integer ordinal = ordinals.get(owner);
+        if(ordinal == null){
+            ordinal = owners.size();
+            owners.add(owner);
+            ordinals.put(owner, ordinal);
+            if(ordinal == tokenCounts.length){
+                tokenCounts = Arrays.copyOf(tokenCounts, tokenCounts.length * 2);
+            }
+        }
+
+        removeOwner(tokenId);
+        int slot = denseSlot(tokenId);
+        if(slot >= 0){
+            dense[slot] = ordinal + 1;
+        } else {
+            sparse.put(tokenId, ordinal);
+        }
+        tokenCounts[ordinal]++;
+        size++;
+    }
+
+    /**
+     * Remove the owner of a token, the write lock is held
+     * @return the previous ordinal, -1 if there was none
+     */
+    private int removeOwner(BigInteger tokenId){
+        int previous;
+        int slot = denseSlot(tokenId);
+        if(slot >= 0){
+            previous = dense[slot] - 1;
+            dense[slot] = 0;
+        } else {
+            Integer removed = sparse.remove(tokenId);
+            previous = removed == null ? -1 : removed;
+        }
+        if(previous >= 0){
+            tokenCounts[previous]--;
+            size--;
+        }
+        return previous;
+    }
+
+    private int ordinalOf(BigInteger tokenId){
+        int slot = denseSlot(tokenId);
+        if(slot >= 0){
+            return dense[slot] - 1;
+        }
+        Integer ordinal = sparse.get(tokenId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Position of a token in the dense array, -1 if it is outside the built range
+     */
+    private int denseSlot(BigInteger tokenId){
+        BigInteger offset = tokenId.subtract(denseBase);
+        if(offset.signum() < 0 || offset.compareTo(BigInteger.valueOf(dense.length)) >= 0){
+            return -1;
+        }
+        return offset.intValue();
+    }
+
+    /**
+     * Read count values in batches, several batches at the same time
+     * @param count
+     * @param reader reads the values of positions from (inclusive) to (exclusive)
+     * @param <T>
+     * @return values in position order
+     * @throws Exception the first failure, after all batches have finished
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> readBatches(int count, BatchReader<T> reader) throws Exception {
+        Object[] values = new Object[count];
+        int batches = (count + batchSize - 1) / batchSize;
+        ParallelWorkers.run(batches, parallelism, READ_EXECUTOR, batch -> {
+            int from = batch * batchSize;
+            List<T> batchValues = reader.read(from, Math.min(count, from + batchSize));
+            for(int j = 0; j < batchValues.size(); j++){
+                values[from + j] = batchValues.get(j);
+            }
+        });
+
+        List<T> result = new ArrayList<>(count);
+        for(Object value : values){
+            result.add((T) value);
+        }
+        return result;
+    }
+
+    /**
+     * Token ids of positions from (inclusive) to (exclusive) of a range starting at base
+     */
+    private static List<BigInteger> tokenIds(BigInteger base, int from, int to){
+        List<BigInteger> tokenIds = new ArrayList<>(to - from);
+        for(int i = from; i < to; i++){
+            tokenIds.add(base.add(BigInteger.valueOf(i)));
+        }
+        return tokenIds;
+    }
+
+    private static int rangeSize(BigInteger fromTokenId, BigInteger toTokenId) throws Exception {
+        BigInteger count = toTokenId.subtract(fromTokenId).add(BigInteger.ONE);
+        if(count.signum() <= 0 || count.bitLength() > 30){
+            throw new Exception("invalid token range " + fromTokenId + "-" + toTokenId);
+        }
+        return count.intValue();
+    }
+
+    /**
+     * The latest block minus the confirmations
+     */
+    private long targetBlock() throws Exception {
+        EthBlockNumber ethBlockNumber = web3j.ethBlockNumber().send();
+        if(ethBlockNumber.hasError()){
+            throw new Exception(ethBlockNumber.getError().getMessage());
+        }
+        return Math.max(0, ethBlockNumber.getBlockNumber().longValue() - confirmations);
+    }
+
+    /**
+     * Reads the values of a batch of positions
+     * @param <T>
+     */
+    private interface BatchReader<T> {
+
+        List<T> read(int from, int to) throws Exception;
+    }
+}
@@ -0,0 +1,195 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Follows the head of the chain and notifies listeners when a new block arrives
+ *
+ * One tracker is shared per Web3j instance, it only polls eth_blockNumber while at least one listener is registered
+ */
+public class BlockHeadTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockHeadTracker.class);
+
+    /**
+     * Shared trackers, one per Web3j instance
+     */
+    private static final Map<Web3j, BlockHeadTracker> TRACKERS = new ConcurrentHashMap<>();
+
+    /**
+     * Default polling interval in milliseconds
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Polling interval in milliseconds
+     */
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    /**
+     * Callbacks for new blocks
+     */
+    private final CopyOnWriteArrayList<BlockListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Latest block number seen
+     */
+    private final AtomicReference<BigInteger> currentBlock = new AtomicReference<>();
+
+    private final AtomicReference<ScheduledFuture<?>> task = new AtomicReference<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "magician-block-head-tracker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BlockHeadTracker(Web3j web3j){
+        this.web3j = web3j;
+    }
+
+    /**
+     * Get the tracker shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static BlockHeadTracker of(Web3j web3j){
+        return TRACKERS.computeIfAbsent(web3j, BlockHeadTracker::new);
+    }
+
+    /**
+     * Drop the tracker of a Web3j and shut its thread down
+     *
+     * Call it when the Web3j is no longer used, {@link EthContractUtil#release(Web3j)} also releases the tools that listen to it
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        BlockHeadTracker tracker = TRACKERS.remove(web3j);
+        if(tracker == null){
+            return;
+        }
+        tracker.listeners.clear();
+        tracker.task.set(null);
+        tracker.scheduler.shutdownNow();
+    }
+
+    /**
+     * Set the polling interval, it takes effect the next time polling starts
+     * @param pollInterval
+     * @return
+     */
+    public BlockHeadTracker setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Latest block number seen, null if the tracker has never polled
+     * @return
+     */
+    public BigInteger getCurrentBlock() {
+        return currentBlock.get();
+    }
+
+    /**
+     * Register a callback, polling starts with the first listener
+     * @param listener
+     */
+    public void addListener(BlockListener listener){
+        listeners.addIfAbsent(listener);
+        startPolling();
+    }
+
+    /**
+     * Remove a callback, polling stops when there are no listeners left
+     * @param listener
+     */
+    public void removeListener(BlockListener listener){
+        listeners.remove(listener);
+        if(listeners.isEmpty()){
+            ScheduledFuture<?> future = task.getAndSet(null);
+            if(future != null){
+                future.cancel(false);
+            }
+            // A listener may have been added while the task was being cancelled
+            if(!listeners.isEmpty()){
+                startPolling();
+            }
+        }
+    }
+
+    /**
+     * Schedule the polling task if it is not running
+     */
+    private void startPolling(){
+        if(task.get() != null){
+            return;
+        }
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+        if(!task.compareAndSet(null, future)){
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Poll the head once and notify listeners if it moved
+     */
+    private void poll(){
+        try {
+            EthBlockNumber ethBlockNumber = web3j.ethBlockNumber().send();
+            if(ethBlockNumber == null || ethBlockNumber.hasError() || ethBlockNumber.getResult() == null){
+                return;
+            }
+            BigInteger blockNumber = ethBlockNumber.getBlockNumber();
+            BigInteger previous = currentBlock.get();
+            if(previous != null && previous.compareTo(blockNumber) >= 0){
+                return;
+            }
+            currentBlock.set(blockNumber);
+
+            for(BlockListener listener : listeners){
+                try {
+                    listener.onNewBlock(blockNumber);
+                } catch (Exception e){
+                    logger.error("block listener failed on block " + blockNumber, e);
+                }
+            }
+        } catch (Exception e){
+            logger.warn("failed to poll the latest block number: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Callback for new blocks
+     */
+    public interface BlockListener {
+
+        /**
+         * Called on the tracker thread each time the head advances
+         * @param blockNumber
+         */
+        void onNewBlock(BigInteger blockNumber);
+    }
+}
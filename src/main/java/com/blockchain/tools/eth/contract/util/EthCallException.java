@@ -0,0 +1,58 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.web3j.protocol.core.Response;
+
+/**
+ * The node answered an eth_call with an error
+ *
+ * Transport failures are not wrapped, they reach the caller as the IOException web3j throws
+ */
+public class EthCallException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * JSON-RPC error code
+     */
+    private final int code;
+
+    /**
+     * Revert data or other details of the error, may be null
+     */
+    private final String data;
+
+    public EthCallException(Response.Error error){
+        super(error.getMessage());
+        this.code = error.getCode();
+        this.data = error.getData();
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Whether the call itself failed in the EVM: a revert, out of gas or an invalid opcode,
+     * as opposed to the node refusing the request, e.g. a rate limit or an unknown block
+     * @return
+     */
+    public boolean isExecutionError(){
+        if(code == 3){
+            return true;
+        }
+        String message = getMessage() == null ? "" : getMessage().toLowerCase();
+        return message.contains("revert")
+                || message.contains("out of gas")
+                || message.contains("gas required exceeds")
+                || message.contains("invalid opcode")
+                || message.contains("invalid jump")
+                || message.contains("stack underflow")
+                || message.contains("stack overflow")
+                || message.contains("vm execution error")
+                || message.contains("execution error");
+    }
+}
@@ -1,18 +1,21 @@
 package com.blockchain.tools.eth.contract.util;
 
 import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.contract.util.model.GasFees;
+import com.blockchain.tools.eth.contract.util.model.MulticallCall;
+import com.blockchain.tools.eth.contract.util.model.MulticallResult;
 import com.blockchain.tools.eth.contract.util.model.SendModel;
 import com.blockchain.tools.eth.contract.util.model.SendResultModel;
+import com.blockchain.tools.eth.signer.Signer;
+import com.blockchain.tools.eth.signer.SignerRegistry;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Type;
-import org.web3j.crypto.Credentials;
 import org.web3j.crypto.RawTransaction;
-import org.web3j.crypto.TransactionEncoder;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.EthCall;
-import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
 import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
 import org.web3j.protocol.core.methods.response.EthSendTransaction;
 import org.web3j.utils.Numeric;
@@ -21,6 +24,8 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Contracts Tools
@@ -35,16 +40,105 @@ public class EthContractUtil {
     private Web3j web3j;
 
     /**
-     * ABI codec
+     * Shared receipt watcher of this web3j
      */
-    private EthAbiCodecTool ethAbiCodecTool = new EthAbiCodecTool();
+    private ReceiptWatcher receiptWatcher;
 
-    private EthContractUtil(Web3j web3j){
+    /**
+     * Shared nonce manager of this web3j
+     */
+    private NonceManager nonceManager;
+
+    /**
+     * Shared gas oracle of this web3j
+     */
+    private GasOracle gasOracle;
+
+    /**
+     * Shared gas estimator of this web3j
+     */
+    private GasEstimator gasEstimator;
+
+    /**
+     * Shared read cache of this web3j, off unless enabled
+     */
+    private ReadCache readCache;
+
+    /**
+     * Shares identical concurrent reads of this web3j
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * Multicall3 engine
+     */
+    private Multicall3 multicall3;
+
+    /**
+     * Block the reads are made at
+     */
+    private DefaultBlockParameter blockParameter;
+
+    /**
+     * Results of a SnapshotSession, keyed by contract and inputData, null unless the reads are pinned by a session
+     */
+    private Map<String, String> snapshotResults;
+
+    private EthContractUtil(Web3j web3j, DefaultBlockParameter blockParameter){
         this.web3j = web3j;
+        this.blockParameter = blockParameter;
+        this.receiptWatcher = ReceiptWatcher.of(web3j);
+        this.nonceManager = NonceManager.of(web3j);
+        this.gasOracle = GasOracle.of(web3j);
+        this.gasEstimator = GasEstimator.of(web3j);
+        this.readCache = ReadCache.of(web3j);
+        this.singleFlight = SingleFlight.of(web3j);
+        this.multicall3 = Multicall3.builder(this);
     }
 
     public static EthContractUtil builder(Web3j web3j){
-        return new EthContractUtil(web3j);
+        return new EthContractUtil(web3j, DefaultBlockParameterName.PENDING);
+    }
+
+    /**
+     * Make the reads at the given block instead of PENDING
+     * @param web3j
+     * @param blockParameter e.g. DefaultBlockParameter.valueOf(blockNumber)
+     * @return
+     */
+    public static EthContractUtil builder(Web3j web3j, DefaultBlockParameter blockParameter){
+        return new EthContractUtil(web3j, blockParameter);
+    }
+
+    /**
+     * Pin the reads to a block and keep their results in the given map, used by SnapshotSession
+     * @param web3j
+     * @param blockNumber
+     * @param snapshotResults
+     * @return
+     */
+    static EthContractUtil builder(Web3j web3j, BigInteger blockNumber, Map<String, String> snapshotResults){
+        EthContractUtil ethContractUtil = new EthContractUtil(web3j, DefaultBlockParameter.valueOf(blockNumber));
+        ethContractUtil.snapshotResults = snapshotResults;
+        return ethContractUtil;
+    }
+
+    /**
+     * Release everything shared by the tools of a Web3j: the receipt watcher, nonces, fee and gas caches,
+     * the read cache and the thread of the block head tracker
+     *
+     * Call it when the Web3j is shut down, the shared state is otherwise kept for the life of the JVM.
+     * Tools built on the Web3j after this start from scratch
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        ReceiptWatcher.release(web3j);
+        ReadCache.release(web3j);
+        NonceManager.release(web3j);
+        GasOracle.release(web3j);
+        GasEstimator.release(web3j);
+        SingleFlight.release(web3j);
+        BlockHeadTracker.release(web3j);
     }
 
     /**
@@ -56,46 +150,510 @@ public class EthContractUtil {
      * @throws IOException
      */
     public List<Type> select(String contractAddress, String inputData, TypeReference... outputTypes) throws Exception {
+        String value = call(contractAddress, inputData);
+        if(value == null){
+            return null;
+        }
+        List<Type> result = EthAbiCodecTool.decoderInputData(value, outputTypes);
+
+        return result;
+    }
+
+    /**
+     * Query the data in the contract, with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param contractAddress
+     * @param inputData
+     * @param outputTypes
+     * @return
+     * @throws Exception
+     */
+    public List<Type> select(String contractAddress, byte[] inputData, TypeReference... outputTypes) throws Exception {
+        if(inputData == null || inputData.length == 0){
+            throw new Exception("inputData must not be empty");
+        }
+        return select(contractAddress, Numeric.toHexString(inputData), outputTypes);
+    }
+
+    /**
+     * Query the data in the contract without blocking the caller
+     * @param contractAddress
+     * @param inputData
+     * @param outputTypes
+     * @return completes with null if the node returns nothing
+     */
+    public CompletableFuture<List<Type>> selectAsync(String contractAddress, String inputData, TypeReference... outputTypes) {
+        return callAsync(contractAddress, inputData).thenApply(value -> value == null ? null : EthAbiCodecTool.decoderInputData(value, outputTypes));
+    }
+
+    /**
+     * Query the data in the contract without blocking the caller, with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param contractAddress
+     * @param inputData
+     * @param outputTypes
+     * @return
+     */
+    public CompletableFuture<List<Type>> selectAsync(String contractAddress, byte[] inputData, TypeReference... outputTypes) {
+        if(inputData == null || inputData.length == 0){
+            return Futures.failed(new Exception("inputData must not be empty"));
+        }
+        return selectAsync(contractAddress, Numeric.toHexString(inputData), outputTypes);
+    }
+
+    /**
+     * Query the data in the contract and return the raw return data
+     * @param contractAddress
+     * @param inputData
+     * @return hex encoded return data, null if the node returns nothing
+     * @throws Exception
+     */
+    public String call(String contractAddress, String inputData) throws Exception {
+        checkCall(contractAddress, inputData);
+
+        String call = callKey(contractAddress, inputData);
+        // The read cache follows the head, reads at a fixed block bypass it
+        String cacheKey = blockParameter == DefaultBlockParameterName.PENDING ? readCache.key(contractAddress, inputData) : null;
+        String stored = storedResult(call, cacheKey);
+        if(stored != null){
+            return stored;
+        }
+
+        // Identical calls in flight at the same time share one eth_call
+        String result = singleFlight.execute(blockParameter.getValue() + ":" + call, () -> ethCall(contractAddress, inputData));
+
+        storeResult(call, cacheKey, result);
+        return result;
+    }
+
+    /**
+     * Query the data in the contract and return the raw return data, without blocking the caller
+     *
+     * Goes through the same snapshot, read cache and coalescing of identical reads as {@link #call(String, String)}
+     * @param contractAddress
+     * @param inputData
+     * @return completes with the hex encoded return data, null if the node returns nothing
+     */
+    public CompletableFuture<String> callAsync(String contractAddress, String inputData) {
+        try {
+            checkCall(contractAddress, inputData);
+        } catch (Exception e){
+            return Futures.failed(e);
+        }
+
+        String call = callKey(contractAddress, inputData);
+        // The read cache follows the head, reads at a fixed block bypass it
+        String cacheKey = blockParameter == DefaultBlockParameterName.PENDING ? readCache.key(contractAddress, inputData) : null;
+        String stored = storedResult(call, cacheKey);
+        if(stored != null){
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        return singleFlight.executeAsync(blockParameter.getValue() + ":" + call, () -> ethCallAsync(contractAddress, inputData))
+                .thenApply(result -> {
+                    storeResult(call, cacheKey, result);
+                    return result;
+                });
+    }
+
+    private void checkCall(String contractAddress, String inputData) throws Exception {
         if(contractAddress == null || contractAddress.trim().equals("")){
             throw new Exception("toAddress must not be empty");
         }
         if(inputData == null || inputData.trim().equals("")){
             throw new Exception("inputData must not be empty");
         }
+    }
+
+    private String callKey(String contractAddress, String inputData){
+        return contractAddress.toLowerCase() + ":" + inputData.toLowerCase();
+    }
+
+    /**
+     * The result of the snapshot or the read cache, if they have it
+     * @param call
+     * @param cacheKey null if the read cache is not used
+     * @return
+     */
+    private String storedResult(String call, String cacheKey){
+        if(snapshotResults != null){
+            // The block is fixed, a result once read never changes
+            String snapshotResult = snapshotResults.get(call);
+            if(snapshotResult != null){
+                return snapshotResult;
+            }
+        }
+        return cacheKey != null ? readCache.get(cacheKey) : null;
+    }
+
+    private void storeResult(String call, String cacheKey, String result){
+        if(cacheKey != null){
+            readCache.put(cacheKey, result);
+        }
+        if(snapshotResults != null && result != null){
+            snapshotResults.put(call, result);
+        }
+    }
 
-        Transaction transaction = Transaction.createEthCallTransaction(null, contractAddress, inputData);
-        EthCall ethCall = web3j.ethCall(transaction, DefaultBlockParameterName.PENDING).send();
+    /**
+     * Send one eth_call
+     * @param contractAddress
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    private String ethCall(String contractAddress, String inputData) throws Exception {
+        return ethCallResult(web3j.ethCall(ethCallTransaction(contractAddress, inputData), blockParameter).send());
+    }
+
+    private CompletableFuture<String> ethCallAsync(String contractAddress, String inputData) {
+        return web3j.ethCall(ethCallTransaction(contractAddress, inputData), blockParameter).sendAsync()
+                .thenApply(Futures.unchecked(this::ethCallResult));
+    }
+
+    private Transaction ethCallTransaction(String contractAddress, String inputData){
+        return Transaction.createEthCallTransaction(null, contractAddress, inputData);
+    }
+
+    private String ethCallResult(EthCall ethCall) throws Exception {
         if(ethCall == null || ethCall.getValue() == null){
-            if(ethCall.getError() != null){
-                throw new Exception(ethCall.getError().getMessage());
+            if(ethCall != null && ethCall.getError() != null){
+                throw new EthCallException(ethCall.getError());
             }
             return null;
         }
-        List<Type> result = ethAbiCodecTool.decoderInputData(ethCall.getValue(), outputTypes);
+        return ethCall.getValue();
+    }
 
-        return result;
+    /**
+     * Query many contract functions with one eth_call through Multicall3
+     *
+     * The results are in the same order as the calls, a failed call does not affect the others
+     * @param calls
+     * @return
+     * @throws Exception
+     */
+    public List<MulticallResult> selectMany(List<MulticallCall> calls) throws Exception {
+        return getMulticall3().aggregate(calls);
+    }
+
+    /**
+     * Query many contract functions through Multicall3 without blocking the caller
+     * @param calls
+     * @return
+     */
+    public CompletableFuture<List<MulticallResult>> selectManyAsync(List<MulticallCall> calls) {
+        return getMulticall3().aggregateAsync(calls);
+    }
+
+    /**
+     * Multicall3 engine used by {@link #selectMany(List)}, it can be configured through this object
+     * @return
+     */
+    public Multicall3 getMulticall3() {
+        return multicall3;
+    }
+
+    /**
+     * Nonce manager shared by the tools built on the same web3j
+     * @return
+     */
+    public NonceManager getNonceManager() {
+        return nonceManager;
+    }
+
+    /**
+     * Gas oracle shared by the tools built on the same web3j
+     * @return
+     */
+    public GasOracle getGasOracle() {
+        return gasOracle;
+    }
+
+    /**
+     * Gas estimator shared by the tools built on the same web3j
+     * @return
+     */
+    public GasEstimator getGasEstimator() {
+        return gasEstimator;
+    }
+
+    /**
+     * Read cache shared by the tools built on the same web3j
+     * @return
+     */
+    public ReadCache getReadCache() {
+        return readCache;
+    }
+
+    /**
+     * Coalescing of identical concurrent reads, shared by the tools built on the same web3j
+     * @return
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Block the reads are made at
+     * @return
+     */
+    public DefaultBlockParameter getBlockParameter() {
+        return blockParameter;
+    }
+
+    /**
+     * native web3j
+     * @return
+     */
+    public Web3j getWeb3j() {
+        return web3j;
     }
 
     /**
      * write data to the contract
+     *
+     * Blocks until the transaction is packed or the receipt watcher times out
      * @param sendModel
      * @param inputData
      * @return
      * @throws Exception
      */
     public SendResultModel sendRawTransaction(SendModel sendModel, String inputData) throws Exception {
+        boolean estimatedGasLimit = sendModel != null && sendModel.getGasLimit() == null;
+        SendResultModel sendResultModel = submitRawTransaction(sendModel, inputData);
+
+        EthGetTransactionReceipt ethGetTransactionReceipt = watchReceipt(sendResultModel.getEthSendTransaction().getTransactionHash()).get();
+        onReceipt(sendModel, inputData, estimatedGasLimit, sendResultModel, ethGetTransactionReceipt);
+
+        return sendResultModel;
+    }
+
+    /**
+     * write data to the contract without blocking the caller
+     *
+     * Completes when the transaction is packed or the receipt watcher times out.
+     * The nonce, the fees and the gas limit are read with async requests as well,
+     * only signing runs on the thread that completes them, so a Signer that blocks, e.g. on an HSM, holds that thread
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> sendRawTransactionAsync(SendModel sendModel, String inputData) {
+        boolean estimatedGasLimit = sendModel != null && sendModel.getGasLimit() == null;
+        return submitRawTransactionAsync(sendModel, inputData).thenCompose(sendResultModel ->
+                watchReceipt(sendResultModel.getEthSendTransaction().getTransactionHash()).thenApply(ethGetTransactionReceipt -> {
+                    onReceipt(sendModel, inputData, estimatedGasLimit, sendResultModel, ethGetTransactionReceipt);
+                    return sendResultModel;
+                }));
+    }
+
+    /**
+     * write data to the contract without blocking the caller, with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> sendRawTransactionAsync(SendModel sendModel, byte[] inputData) {
+        if(inputData == null || inputData.length == 0){
+            return Futures.failed(new Exception("inputData must not be empty"));
+        }
+        return sendRawTransactionAsync(sendModel, Numeric.toHexString(inputData));
+    }
+
+    /**
+     * Keep the receipt and learn from it
+     * @param sendModel
+     * @param inputData
+     * @param estimatedGasLimit
+     * @param sendResultModel
+     * @param ethGetTransactionReceipt
+     */
+    private void onReceipt(SendModel sendModel, String inputData, boolean estimatedGasLimit,
+                           SendResultModel sendResultModel, EthGetTransactionReceipt ethGetTransactionReceipt){
+        sendResultModel.setEthGetTransactionReceipt(ethGetTransactionReceipt);
+
+        if(ethGetTransactionReceipt.getResult() == null){
+            // The transaction may have been dropped, the local nonce counter can no longer be trusted
+            nonceManager.reset(sendModel.getSenderAddress());
+        } else if(estimatedGasLimit){
+            gasEstimator.record(sendModel.getToAddress(), inputData, sendModel.getGasLimit(), ethGetTransactionReceipt.getResult());
+        }
+    }
+
+    /**
+     * write data to the contract, with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param sendModel
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    public SendResultModel sendRawTransaction(SendModel sendModel, byte[] inputData) throws Exception {
+        if(inputData == null || inputData.length == 0){
+            throw new Exception("inputData must not be empty");
+        }
+        return sendRawTransaction(sendModel, Numeric.toHexString(inputData));
+    }
+
+    /**
+     * write data to the contract without waiting for the receipt
+     *
+     * Returns right after the transaction is broadcast, only ethSendTransaction is set on the result,
+     * use {@link #watchReceipt(String)} to get the receipt later
+     * @param sendModel
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    public SendResultModel submitRawTransaction(SendModel sendModel, String inputData) throws Exception {
         validation(sendModel, inputData);
 
-        if(sendModel.getNonce() == null){
-            EthGetTransactionCount ethGetTransactionCount = web3j.ethGetTransactionCount(sendModel.getSenderAddress(), DefaultBlockParameterName.LATEST).send();
-            sendModel.setNonce(ethGetTransactionCount.getTransactionCount());
+        if(sendModel.getNonce() != null){
+            return broadcast(sendModel, inputData);
+        }
+
+        sendModel.setNonce(nonceManager.next(sendModel.getSenderAddress()));
+        try {
+            return broadcast(sendModel, inputData);
+        } catch (Exception e){
+            nonceManager.onError(sendModel.getSenderAddress(), sendModel.getNonce(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * write data to the contract without waiting for the receipt, and without blocking the caller
+     *
+     * Completes right after the transaction is broadcast, only ethSendTransaction is set on the result
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> submitRawTransactionAsync(SendModel sendModel, String inputData) {
+        return validationAsync(sendModel, inputData).thenCompose(validated -> {
+            if(sendModel.getNonce() != null){
+                return broadcastAsync(sendModel, inputData);
+            }
+
+            return nonceManager.nextAsync(sendModel.getSenderAddress()).thenCompose(nonce -> {
+                sendModel.setNonce(nonce);
+                return broadcastAsync(sendModel, inputData).whenComplete((sendResultModel, e) -> {
+                    if(e != null){
+                        nonceManager.onError(sendModel.getSenderAddress(), nonce, Futures.unwrap(e).getMessage());
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * write data to the contract without waiting for the receipt, and without blocking the caller,
+     * with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<SendResultModel> submitRawTransactionAsync(SendModel sendModel, byte[] inputData) {
+        if(inputData == null || inputData.length == 0){
+            return Futures.failed(new Exception("inputData must not be empty"));
         }
+        return submitRawTransactionAsync(sendModel, Numeric.toHexString(inputData));
+    }
 
-        if(sendModel.getGasPrice() == null){
-            sendModel.setGasPrice(web3j.ethGasPrice().send().getGasPrice());
+    /**
+     * Sign the transaction and broadcast it
+     * @param sendModel
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    private SendResultModel broadcast(SendModel sendModel, String inputData) throws Exception {
+        RawTransaction rawTransaction = createRawTransaction(sendModel, inputData);
+
+        return broadcastSigned(sign(sendModel, rawTransaction));
+    }
+
+    private CompletableFuture<SendResultModel> broadcastAsync(SendModel sendModel, String inputData) {
+        return createRawTransactionAsync(sendModel, inputData)
+                .thenApply(Futures.unchecked(rawTransaction -> sign(sendModel, rawTransaction)))
+                .thenCompose(this::broadcastSignedAsync);
+    }
+
+    /**
+     * Fill in the fees and build the transaction to sign, the nonce must be set
+     * @param sendModel
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    RawTransaction createRawTransaction(SendModel sendModel, String inputData) throws Exception {
+        if(sendModel.isEip1559()){
+            if(sendModel.getMaxFeePerGas() == null || sendModel.getMaxPriorityFeePerGas() == null){
+                applyFees(sendModel, gasOracle.getFees());
+            }
+        } else if(sendModel.getGasPrice() == null){
+            sendModel.setGasPrice(gasOracle.getGasPrice());
         }
+        return buildRawTransaction(sendModel, inputData);
+    }
 
-        RawTransaction rawTransaction =RawTransaction.createTransaction(
+    /**
+     * Fill in the fees with async requests and build the transaction to sign, the nonce must be set
+     * @param sendModel
+     * @param inputData
+     * @return
+     */
+    private CompletableFuture<RawTransaction> createRawTransactionAsync(SendModel sendModel, String inputData) {
+        if(sendModel.isEip1559()){
+            if(sendModel.getMaxFeePerGas() == null || sendModel.getMaxPriorityFeePerGas() == null){
+                return gasOracle.getFeesAsync().thenApply(Futures.unchecked(gasFees -> {
+                    applyFees(sendModel, gasFees);
+                    return buildRawTransaction(sendModel, inputData);
+                }));
+            }
+        } else if(sendModel.getGasPrice() == null){
+            return gasOracle.getGasPriceAsync().thenApply(gasPrice -> {
+                sendModel.setGasPrice(gasPrice);
+                return buildRawTransaction(sendModel, inputData);
+            });
+        }
+        return CompletableFuture.completedFuture(buildRawTransaction(sendModel, inputData));
+    }
+
+    /**
+     * Fill in the EIP-1559 fees the model does not set
+     * @param sendModel
+     * @param gasFees
+     * @throws Exception
+     */
+    private void applyFees(SendModel sendModel, GasFees gasFees) throws Exception {
+        if(gasFees == null){
+            throw new Exception("the node does not support eth_feeHistory, set maxFeePerGas and maxPriorityFeePerGas or send a legacy transaction");
+        }
+        if(sendModel.getMaxPriorityFeePerGas() == null){
+            sendModel.setMaxPriorityFeePerGas(gasFees.getMaxPriorityFeePerGas());
+        }
+        if(sendModel.getMaxFeePerGas() == null){
+            // The suggested headroom over the base fee, plus the tip actually paid
+            sendModel.setMaxFeePerGas(gasFees.getMaxFeePerGas()
+                    .subtract(gasFees.getMaxPriorityFeePerGas())
+                    .add(sendModel.getMaxPriorityFeePerGas()));
+        }
+    }
+
+    private RawTransaction buildRawTransaction(SendModel sendModel, String inputData){
+        if(sendModel.isEip1559()){
+            return RawTransaction.createTransaction(
+                    sendModel.getChainId(),
+                    sendModel.getNonce(),
+                    sendModel.getGasLimit(),
+                    sendModel.getToAddress(),
+                    sendModel.getValue(),
+                    inputData,
+                    sendModel.getMaxPriorityFeePerGas(),
+                    sendModel.getMaxFeePerGas()
+            );
+        }
+
+        return RawTransaction.createTransaction(
                 sendModel.getNonce(),
                 sendModel.getGasPrice(),
                 sendModel.getGasLimit(),
@@ -103,20 +661,40 @@ public class EthContractUtil {
                 sendModel.getValue(),
                 inputData
         );
+    }
 
-        byte[] signedMessage = null;
-
-        if(sendModel.getChainId() <= -1L){
-            signedMessage = TransactionEncoder.signMessage(rawTransaction, Credentials.create(sendModel.getPrivateKey()));
-        } else {
-            signedMessage = TransactionEncoder.signMessage(rawTransaction, sendModel.getChainId(), Credentials.create(sendModel.getPrivateKey()));
-
-        }
+    /**
+     * Sign the transaction with the signer of the model
+     * @param sendModel
+     * @param rawTransaction
+     * @return
+     * @throws Exception
+     */
+    byte[] sign(SendModel sendModel, RawTransaction rawTransaction) throws Exception {
+        return getSigner(sendModel).signTransaction(rawTransaction, sendModel.getChainId());
+    }
 
-        String hexValue = Numeric.toHexString(signedMessage);
+    /**
+     * Broadcast a signed transaction
+     * @param signedMessage
+     * @return
+     * @throws Exception
+     */
+    SendResultModel broadcastSigned(byte[] signedMessage) throws Exception {
+        return toSendResult(web3j.ethSendRawTransaction(Numeric.toHexString(signedMessage)).send());
+    }
 
-        EthSendTransaction ethSendTransaction = web3j.ethSendRawTransaction(hexValue).send();
+    /**
+     * Broadcast a signed transaction without blocking the caller
+     * @param signedMessage
+     * @return
+     */
+    CompletableFuture<SendResultModel> broadcastSignedAsync(byte[] signedMessage) {
+        return web3j.ethSendRawTransaction(Numeric.toHexString(signedMessage)).sendAsync()
+                .thenApply(Futures.unchecked(this::toSendResult));
+    }
 
+    private SendResultModel toSendResult(EthSendTransaction ethSendTransaction) throws Exception {
         if (ethSendTransaction.hasError()) {
             throw new Exception(ethSendTransaction.getError().getMessage());
         }
@@ -124,18 +702,52 @@ public class EthContractUtil {
         SendResultModel sendResultModel = new SendResultModel();
         sendResultModel.setEthSendTransaction(ethSendTransaction);
 
-        for (int i = 0; i < 60; i++) {
-            EthGetTransactionReceipt ethGetTransactionReceipt = web3j.ethGetTransactionReceipt(ethSendTransaction.getTransactionHash()).send();
-            sendResultModel.setEthGetTransactionReceipt(ethGetTransactionReceipt);
+        return sendResultModel;
+    }
 
-            if (ethGetTransactionReceipt != null && ethGetTransactionReceipt.getResult() != null) {
-                break;
-            }
+    /**
+     * write data to the contract without waiting for the receipt, with inputData built by {@link com.blockchain.tools.eth.codec.StaticAbiEncoder}
+     * @param sendModel
+     * @param inputData
+     * @return
+     * @throws Exception
+     */
+    public SendResultModel submitRawTransaction(SendModel sendModel, byte[] inputData) throws Exception {
+        if(inputData == null || inputData.length == 0){
+            throw new Exception("inputData must not be empty");
+        }
+        return submitRawTransaction(sendModel, Numeric.toHexString(inputData));
+    }
 
-            Thread.sleep(1000);
+    /**
+     * The signer of a transaction: the one on the model, the one of its private key, or the one registered for the sender
+     * @param sendModel
+     * @return
+     * @throws Exception
+     */
+    private Signer getSigner(SendModel sendModel) throws Exception {
+        if(sendModel.getSigner() != null){
+            return sendModel.getSigner();
+        }
+        if(sendModel.getPrivateKey() != null && !sendModel.getPrivateKey().trim().equals("")){
+            return SignerRegistry.get(sendModel.getPrivateKey());
+        }
+        Signer signer = SignerRegistry.getByAddress(sendModel.getSenderAddress());
+        if(signer == null){
+            throw new Exception("privateKey must not be empty");
         }
+        return signer;
+    }
 
-        return sendResultModel;
+    /**
+     * Wait for the receipt of a transaction without holding a thread
+     *
+     * The lookup is shared with every other pending transaction on the same Web3j, see {@link ReceiptWatcher}
+     * @param transactionHash
+     * @return
+     */
+    public CompletableFuture<EthGetTransactionReceipt> watchReceipt(String transactionHash) {
+        return receiptWatcher.watch(transactionHash);
     }
 
     /**
@@ -144,27 +756,67 @@ public class EthContractUtil {
      * @param inputData
      * @throws Exception
      */
-    private void validation(SendModel sendModel, String inputData) throws Exception {
+    void validation(SendModel sendModel, String inputData) throws Exception {
+        check(sendModel, inputData);
+        if(sendModel.getGasLimit() == null){
+            sendModel.setGasLimit(gasEstimator.estimate(sendModel.getSenderAddress(), sendModel.getToAddress(), sendModel.getValue(), inputData));
+        }
+    }
+
+    /**
+     * Validation Parameters, without blocking while the gas limit is estimated
+     * @param sendModel
+     * @param inputData
+     * @return completed with the model once it has its gas limit, failed if it is invalid
+     */
+    CompletableFuture<SendModel> validationAsync(SendModel sendModel, String inputData) {
+        try {
+            check(sendModel, inputData);
+        } catch (Exception e){
+            return Futures.failed(e);
+        }
+        if(sendModel.getGasLimit() != null){
+            return CompletableFuture.completedFuture(sendModel);
+        }
+        return gasEstimator.estimateAsync(sendModel.getSenderAddress(), sendModel.getToAddress(), sendModel.getValue(), inputData)
+                .thenApply(gasLimit -> {
+                    sendModel.setGasLimit(gasLimit);
+                    return sendModel;
+                });
+    }
+
+    /**
+     * Validation Parameters that need no request to the node
+     * @param sendModel
+     * @param inputData
+     * @throws Exception
+     */
+    private void check(SendModel sendModel, String inputData) throws Exception {
         if(sendModel == null){
             throw new Exception("sendModel must not be null");
         }
+        if((sendModel.getSenderAddress() == null || sendModel.getSenderAddress().trim().equals("")) && sendModel.getSigner() != null){
+            sendModel.setSenderAddress(sendModel.getSigner().getAddress());
+        }
         if(sendModel.getSenderAddress() == null || sendModel.getSenderAddress().trim().equals("")){
             throw new Exception("senderAddress must not be empty");
         }
         if(sendModel.getToAddress() == null|| sendModel.getToAddress().trim().equals("")){
             throw new Exception("toAddress must not be empty");
         }
-        if(sendModel.getPrivateKey() == null|| sendModel.getPrivateKey().trim().equals("")){
+        if(sendModel.getSigner() == null
+                && (sendModel.getPrivateKey() == null || sendModel.getPrivateKey().trim().equals(""))
+                && SignerRegistry.getByAddress(sendModel.getSenderAddress()) == null){
             throw new Exception("privateKey must not be empty");
         }
         if(inputData == null || inputData.trim().equals("")){
             throw new Exception("inputData must not be empty");
         }
+        if(sendModel.isEip1559() && sendModel.getChainId() <= -1L){
+            throw new Exception("chainId must be set for EIP-1559 transactions");
+        }
         if(sendModel.getValue() == null){
             sendModel.setValue(BigInteger.ZERO);
         }
-        if(sendModel.getGasLimit() == null){
-            sendModel.setGasLimit(new BigInteger("8000000"));
-        }
     }
 }
@@ -0,0 +1,68 @@
+package com.blockchain.tools.eth.contract.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Helpers for the async methods, they only use what Java 8 has
+ */
+public final class Futures {
+
+    private Futures(){
+    }
+
+    /**
+     * A future already completed with the exception, CompletableFuture.failedFuture needs Java 9
+     * @param e
+     * @param <T>
+     * @return
+     */
+    public static <T> CompletableFuture<T> failed(Throwable e){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * The exception thrown by the work of a future, without the CompletionException or ExecutionException around it
+     * @param e
+     * @return
+     */
+    public static Throwable unwrap(Throwable e){
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null){
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Turn a function that throws checked exceptions into one that can be passed to thenApply or thenCompose
+     * @param function
+     * @param <T>
+     * @param <R>
+     * @return
+     */
+    public static <T, R> Function<T, R> unchecked(CheckedFunction<T, R> function){
+        return value -> {
+            try {
+                return function.apply(value);
+            } catch (RuntimeException e){
+                throw e;
+            } catch (Exception e){
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * A function that may throw a checked exception
+     * @param <T>
+     * @param <R>
+     */
+    public interface CheckedFunction<T, R> {
+
+        R apply(T value) throws Exception;
+    }
+}
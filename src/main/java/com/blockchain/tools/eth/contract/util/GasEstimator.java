@@ -0,0 +1,276 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthEstimateGas;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the gas limit of transactions and caches the estimates
+ *
+ * Estimates come from eth_estimateGas plus a safety margin. They are cached per contract, selector and calldata length,
+ * so repeated calls of the same function, e.g. ERC20 transfers to many recipients, are estimated once per TTL.
+ * The calls of one function do not all cost the same, e.g. an ERC20 transfer to a new holder pays for a zero to nonzero SSTORE
+ * that a transfer to an existing holder does not, so a cached estimate keeps the largest gas seen for the function:
+ * a larger estimate or the gasUsed of a receipt raises it, it never shrinks.
+ * A call that still runs out of gas raises the estimate of its function by at least the default margin again.
+ * Concurrent estimates of one function share one eth_estimateGas through the {@link SingleFlight} of the Web3j
+ */
+public class GasEstimator {
+
+    private static final Logger logger = LoggerFactory.getLogger(GasEstimator.class);
+
+    /**
+     * Shared estimators, one per Web3j instance
+     */
+    private static final Map<Web3j, GasEstimator> ESTIMATORS = new ConcurrentHashMap<>();
+
+    /**
+     * Gas limit used when the node can not estimate, the value used before estimation existed
+     */
+    public static final BigInteger DEFAULT_FALLBACK_GAS_LIMIT = new BigInteger("8000000");
+
+    /**
+     * Default safety margin added on top of an estimate, 0.2 is 20%
+     */
+    public static final double DEFAULT_MARGIN = 0.2;
+
+    /**
+     * Default time an estimate is cached, in milliseconds
+     */
+    public static final long DEFAULT_TTL = 10 * 60 * 1000;
+
+    /**
+     * Maximum number of cached estimates
+     */
+    private static final int MAX_SIZE = 4096;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    private SingleFlight singleFlight;
+
+    /**
+     * Safety margin added on top of an estimate
+     */
+    private double margin = DEFAULT_MARGIN;
+
+    /**
+     * Time an estimate is cached, in milliseconds
+     */
+    private long ttl = DEFAULT_TTL;
+
+    /**
+     * Gas limit used when the node can not estimate
+     */
+    private BigInteger fallbackGasLimit = DEFAULT_FALLBACK_GAS_LIMIT;
+
+    /**
+     * Cached estimates, margin included, keyed by contract, selector and calldata length
+     */
+    private final Map<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+    private GasEstimator(Web3j web3j){
+        this.web3j = web3j;
+        this.singleFlight = SingleFlight.of(web3j);
+    }
+
+    /**
+     * Get the estimator shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static GasEstimator of(Web3j web3j){
+        return ESTIMATORS.computeIfAbsent(web3j, GasEstimator::new);
+    }
+
+    /**
+     * Drop the gas estimator of a Web3j and its cached estimates
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        ESTIMATORS.remove(web3j);
+    }
+
+    public GasEstimator setMargin(double margin) {
+        this.margin = margin;
+        return this;
+    }
+
+    public GasEstimator setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public GasEstimator setFallbackGasLimit(BigInteger fallbackGasLimit) {
+        this.fallbackGasLimit = fallbackGasLimit;
+        return this;
+    }
+
+    /**
+     * Gas limit for a transaction, from the cache or from eth_estimateGas
+     *
+     * If the node can not estimate, e.g. because the call would revert, the fallback gas limit is returned
+     * @param senderAddress
+     * @param toAddress
+     * @param value
+     * @param inputData
+     * @return
+     */
+    public BigInteger estimate(String senderAddress, String toAddress, BigInteger value, String inputData){
+        String key = key(toAddress, inputData);
+        Estimate cached = estimates.get(key);
+        if(isFresh(cached)){
+            return cached.gasLimit;
+        }
+
+        try {
+            return singleFlight.execute("estimateGas:" + key,
+                    () -> fromResponse(key, cached, web3j.ethEstimateGas(estimateTransaction(senderAddress, toAddress, value, inputData)).send()));
+        } catch (Exception e){
+            return fallback(key, e.getMessage());
+        }
+    }
+
+    /**
+     * Gas limit for a transaction, without waiting for the node when it is cached
+     *
+     * Never completes exceptionally, the fallback gas limit is used when the node can not estimate
+     * @param senderAddress
+     * @param toAddress
+     * @param value
+     * @param inputData
+     * @return
+     */
+    public CompletableFuture<BigInteger> estimateAsync(String senderAddress, String toAddress, BigInteger value, String inputData){
+        String key = key(toAddress, inputData);
+        Estimate cached = estimates.get(key);
+        if(isFresh(cached)){
+            return CompletableFuture.completedFuture(cached.gasLimit);
+        }
+
+        return singleFlight.executeAsync("estimateGas:" + key,
+                () -> web3j.ethEstimateGas(estimateTransaction(senderAddress, toAddress, value, inputData)).sendAsync()
+                        .handle((ethEstimateGas, e) -> e != null
+                                ? fallback(key, Futures.unwrap(e).getMessage())
+                                : fromResponse(key, cached, ethEstimateGas)));
+    }
+
+    /**
+     * Learn from the receipt of a transaction sent with an estimated gas limit
+     *
+     * The cached estimate is raised if the gasUsed came too close to it.
+     * If the transaction ran out of gas, i.e. failed with all of its gas used, it is raised by at least the default margin on top of that gas limit
+     * @param toAddress
+     * @param inputData
+     * @param gasLimit the gas limit the transaction was sent with
+     * @param transactionReceipt
+     */
+    public void record(String toAddress, String inputData, BigInteger gasLimit, TransactionReceipt transactionReceipt){
+        BigInteger gasUsed = transactionReceipt.getGasUsed();
+        if(gasUsed == null){
+            return;
+        }
+        String key = key(toAddress, inputData);
+        if(!transactionReceipt.isStatusOK() && gasLimit != null && gasUsed.compareTo(gasLimit) >= 0){
+            BigInteger raised = new BigDecimal(gasLimit).multiply(BigDecimal.valueOf(1 + Math.max(margin, DEFAULT_MARGIN))).toBigInteger();
+            logger.warn("transaction " + transactionReceipt.getTransactionHash() + " ran out of gas, the estimate of " + key + " is raised to " + raised);
+            raise(key, raised);
+            return;
+        }
+        raise(key, withMargin(gasUsed));
+    }
+
+    /**
+     * Drop all cached estimates
+     */
+    public void clear(){
+        estimates.clear();
+    }
+
+    private boolean isFresh(Estimate cached){
+        return cached != null && System.currentTimeMillis() - cached.createTime <= ttl;
+    }
+
+    private Transaction estimateTransaction(String senderAddress, String toAddress, BigInteger value, String inputData){
+        return Transaction.createFunctionCallTransaction(senderAddress, null, null, null, toAddress, value, inputData);
+    }
+
+    /**
+     * Cache and return the estimate of the node
+     * @param key
+     * @param cached the expired estimate, if any
+     * @param ethEstimateGas
+     * @return
+     */
+    private BigInteger fromResponse(String key, Estimate cached, EthEstimateGas ethEstimateGas){
+        if(ethEstimateGas.hasError()){
+            return fallback(key, ethEstimateGas.getError().getMessage());
+        }
+        BigInteger gasLimit = withMargin(ethEstimateGas.getAmountUsed());
+        if(cached != null){
+            // An expired estimate still tells how much the function may need
+            gasLimit = gasLimit.max(cached.gasLimit);
+        }
+        return raise(key, gasLimit);
+    }
+
+    private BigInteger fallback(String key, String message){
+        logger.warn("eth_estimateGas failed for " + key + ", falling back to " + fallbackGasLimit + ": " + message);
+        return fallbackGasLimit;
+    }
+
+    /**
+     * Cache an estimate unless a larger one is cached, an equal one is refreshed
+     * @param key
+     * @param gasLimit
+     * @return the cached estimate
+     */
+    private BigInteger raise(String key, BigInteger gasLimit){
+        if(estimates.size() >= MAX_SIZE){
+            estimates.clear();
+        }
+        return estimates.merge(key, new Estimate(gasLimit),
+                (cached, estimate) -> cached.gasLimit.compareTo(estimate.gasLimit) > 0 ? cached : estimate).gasLimit;
+    }
+
+    private BigInteger withMargin(BigInteger gas){
+        return new BigDecimal(gas).multiply(BigDecimal.valueOf(1 + margin)).toBigInteger();
+    }
+
+    /**
+     * Contract, selector and calldata length, the calls of one function with arguments of the same shape share a key
+     * @param toAddress
+     * @param inputData
+     * @return
+     */
+    private String key(String toAddress, String inputData){
+        String data = inputData.startsWith("0x") ? inputData.substring(2) : inputData;
+        String selector = data.length() >= 8 ? data.substring(0, 8) : data;
+        return toAddress.toLowerCase() + ":" + selector.toLowerCase() + ":" + data.length();
+    }
+
+    /**
+     * A cached gas limit
+     */
+    private static class Estimate {
+
+        private final BigInteger gasLimit;
+
+        private final long createTime = System.currentTimeMillis();
+
+        private Estimate(BigInteger gasLimit){
+            this.gasLimit = gasLimit;
+        }
+    }
+}
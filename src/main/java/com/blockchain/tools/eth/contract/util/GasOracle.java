@@ -0,0 +1,407 @@
+package com.blockchain.tools.eth.contract.util;
+
+import com.blockchain.tools.eth.contract.util.model.GasFees;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthFeeHistory;
+import org.web3j.protocol.core.methods.response.EthGasPrice;
+import org.web3j.protocol.core.methods.response.EthMaxPriorityFeePerGas;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Suggests gas prices and caches them per block
+ *
+ * Legacy transactions get eth_gasPrice, EIP-1559 transactions get fees computed from eth_feeHistory:
+ * the tip is the median of a reward percentile over the recent blocks, so a single expensive block does not raise it,
+ * and maxFeePerGas is the next base fee times a multiplier plus the tip.
+ * A cached value is reused until the BlockHeadTracker of the Web3j reports a new block, or the TTL expires.
+ * The oracle listens to the tracker while it is being read, and stops once it has not been read for a TTL
+ */
+public class GasOracle implements BlockHeadTracker.BlockListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(GasOracle.class);
+
+    /**
+     * Shared oracles, one per Web3j instance
+     */
+    private static final Map<Web3j, GasOracle> ORACLES = new ConcurrentHashMap<>();
+
+    /**
+     * Default time a value is cached, in milliseconds
+     */
+    public static final long DEFAULT_TTL = 3000;
+
+    /**
+     * Default number of blocks read from eth_feeHistory
+     */
+    public static final int DEFAULT_BLOCK_COUNT = 10;
+
+    /**
+     * Default reward percentile of each block
+     */
+    public static final double DEFAULT_REWARD_PERCENTILE = 50;
+
+    /**
+     * Default multiplier of the base fee in maxFeePerGas, 2 covers six full blocks in a row
+     */
+    public static final int DEFAULT_BASE_FEE_MULTIPLIER = 2;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Head of the chain, a new block invalidates the cached values
+     */
+    private BlockHeadTracker blockHeadTracker;
+
+    /**
+     * Time a value is cached, in milliseconds
+     */
+    private long ttl = DEFAULT_TTL;
+
+    /**
+     * Number of blocks read from eth_feeHistory
+     */
+    private int blockCount = DEFAULT_BLOCK_COUNT;
+
+    /**
+     * Reward percentile of each block
+     */
+    private double rewardPercentile = DEFAULT_REWARD_PERCENTILE;
+
+    /**
+     * Multiplier of the base fee in maxFeePerGas
+     */
+    private int baseFeeMultiplier = DEFAULT_BASE_FEE_MULTIPLIER;
+
+    private final AtomicReference<Cached<BigInteger>> gasPrice = new AtomicReference<>();
+
+    private final AtomicReference<Cached<GasFees>> fees = new AtomicReference<>();
+
+    /**
+     * Whether this oracle is registered on the block head tracker
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    /**
+     * Time of the last read, in milliseconds
+     */
+    private volatile long lastUse;
+
+    private GasOracle(Web3j web3j){
+        this.web3j = web3j;
+        this.blockHeadTracker = BlockHeadTracker.of(web3j);
+    }
+
+    /**
+     * Get the oracle shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static GasOracle of(Web3j web3j){
+        return ORACLES.computeIfAbsent(web3j, GasOracle::new);
+    }
+
+    /**
+     * Drop the gas oracle of a Web3j and its cached fees
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        GasOracle oracle = ORACLES.remove(web3j);
+        if(oracle != null && oracle.subscribed.compareAndSet(true, false)){
+            oracle.blockHeadTracker.removeListener(oracle);
+        }
+    }
+
+    public GasOracle setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public GasOracle setBlockCount(int blockCount) {
+        this.blockCount = blockCount;
+        return this;
+    }
+
+    public GasOracle setRewardPercentile(double rewardPercentile) {
+        this.rewardPercentile = rewardPercentile;
+        return this;
+    }
+
+    public GasOracle setBaseFeeMultiplier(int baseFeeMultiplier) {
+        this.baseFeeMultiplier = baseFeeMultiplier;
+        return this;
+    }
+
+    /**
+     * Gas price for legacy transactions
+     * @return
+     * @throws Exception
+     */
+    public BigInteger getGasPrice() throws Exception {
+        use();
+        Cached<BigInteger> cached = gasPrice.get();
+        if(isValid(cached)){
+            return cached.value;
+        }
+
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        EthGasPrice ethGasPrice = web3j.ethGasPrice().send();
+        if(ethGasPrice.hasError()){
+            throw new Exception(ethGasPrice.getError().getMessage());
+        }
+        gasPrice.set(new Cached<>(ethGasPrice.getGasPrice(), currentBlock));
+        return ethGasPrice.getGasPrice();
+    }
+
+    /**
+     * Fees for EIP-1559 transactions
+     * @return null if the node does not support eth_feeHistory
+     * @throws Exception
+     */
+    public GasFees getFees() throws Exception {
+        use();
+        Cached<GasFees> cached = fees.get();
+        if(isValid(cached)){
+            return cached.value;
+        }
+
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        GasFees gasFees = loadFees();
+        fees.set(new Cached<>(gasFees, currentBlock));
+        return gasFees;
+    }
+
+    /**
+     * Gas price for legacy transactions, without waiting for the node when it is cached
+     * @return
+     */
+    public CompletableFuture<BigInteger> getGasPriceAsync() {
+        use();
+        Cached<BigInteger> cached = gasPrice.get();
+        if(isValid(cached)){
+            return CompletableFuture.completedFuture(cached.value);
+        }
+
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        return web3j.ethGasPrice().sendAsync().thenApply(Futures.unchecked(ethGasPrice -> {
+            if(ethGasPrice.hasError()){
+                throw new Exception(ethGasPrice.getError().getMessage());
+            }
+            gasPrice.set(new Cached<>(ethGasPrice.getGasPrice(), currentBlock));
+            return ethGasPrice.getGasPrice();
+        }));
+    }
+
+    /**
+     * Fees for EIP-1559 transactions, without waiting for the node when they are cached
+     * @return completes with null if the node does not support eth_feeHistory
+     */
+    public CompletableFuture<GasFees> getFeesAsync() {
+        use();
+        Cached<GasFees> cached = fees.get();
+        if(isValid(cached)){
+            return CompletableFuture.completedFuture(cached.value);
+        }
+
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        return feeHistoryRequest().sendAsync().thenCompose(ethFeeHistory -> {
+            BigInteger baseFee = nextBaseFee(ethFeeHistory);
+            if(baseFee == null){
+                return CompletableFuture.completedFuture((GasFees) null);
+            }
+            BigInteger priorityFee = medianReward(ethFeeHistory.getFeeHistory().getReward());
+            CompletableFuture<BigInteger> tip = priorityFee.signum() == 0
+                    ? maxPriorityFeePerGasAsync()
+                    : CompletableFuture.completedFuture(priorityFee);
+            return tip.thenApply(fee -> toFees(baseFee, fee));
+        }).thenApply(gasFees -> {
+            fees.set(new Cached<>(gasFees, currentBlock));
+            return gasFees;
+        });
+    }
+
+    /**
+     * Drop the cached values
+     */
+    public void invalidate(){
+        gasPrice.set(null);
+        fees.set(null);
+    }
+
+    @Override
+    public void onNewBlock(BigInteger blockNumber) {
+        // isValid drops the values of older blocks, the listener only keeps the current block of the tracker up to date
+        if(System.currentTimeMillis() - lastUse > ttl){
+            unsubscribe();
+        }
+    }
+
+    /**
+     * Record a read and follow the head while the oracle is read
+     */
+    private void use(){
+        lastUse = System.currentTimeMillis();
+        if(subscribed.compareAndSet(false, true)){
+            blockHeadTracker.addListener(this);
+        }
+    }
+
+    private void unsubscribe(){
+        if(subscribed.compareAndSet(true, false)){
+            blockHeadTracker.removeListener(this);
+        }
+        // The oracle may have been read while unsubscribing
+        if(System.currentTimeMillis() - lastUse <= ttl && subscribed.compareAndSet(false, true)){
+            blockHeadTracker.addListener(this);
+        }
+    }
+
+    /**
+     * Compute the fees from eth_feeHistory
+     * @return
+     * @throws Exception
+     */
+    private GasFees loadFees() throws Exception {
+        EthFeeHistory ethFeeHistory = feeHistoryRequest().send();
+        BigInteger baseFee = nextBaseFee(ethFeeHistory);
+        if(baseFee == null){
+            return null;
+        }
+
+        BigInteger priorityFee = medianReward(ethFeeHistory.getFeeHistory().getReward());
+        if(priorityFee.signum() == 0){
+            priorityFee = maxPriorityFeePerGas();
+        }
+        return toFees(baseFee, priorityFee);
+    }
+
+    private Request<?, EthFeeHistory> feeHistoryRequest(){
+        return web3j.ethFeeHistory(
+                blockCount,
+                DefaultBlockParameterName.LATEST,
+                Collections.singletonList(rewardPercentile)
+        );
+    }
+
+    /**
+     * The base fee of the next block
+     * @param ethFeeHistory
+     * @return null if the node does not support eth_feeHistory
+     */
+    private BigInteger nextBaseFee(EthFeeHistory ethFeeHistory){
+        if(ethFeeHistory.hasError() || ethFeeHistory.getFeeHistory() == null){
+            logger.warn("eth_feeHistory is not available, EIP-1559 fees can not be suggested: "
+                    + (ethFeeHistory.hasError() ? ethFeeHistory.getError().getMessage() : "empty result"));
+            return null;
+        }
+
+        List<BigInteger> baseFees = ethFeeHistory.getFeeHistory().getBaseFeePerGas();
+        if(baseFees == null || baseFees.isEmpty()){
+            return null;
+        }
+        // The last base fee is the one of the next block
+        return baseFees.get(baseFees.size() - 1);
+    }
+
+    private GasFees toFees(BigInteger baseFee, BigInteger priorityFee){
+        GasFees gasFees = new GasFees();
+        gasFees.setBaseFeePerGas(baseFee);
+        gasFees.setMaxPriorityFeePerGas(priorityFee);
+        gasFees.setMaxFeePerGas(baseFee.multiply(BigInteger.valueOf(baseFeeMultiplier)).add(priorityFee));
+        return gasFees;
+    }
+
+    /**
+     * Median of the rewards of the blocks that had transactions
+     * @param rewards
+     * @return
+     */
+    private BigInteger medianReward(List<List<BigInteger>> rewards){
+        List<BigInteger> values = new ArrayList<>();
+        if(rewards != null){
+            for(List<BigInteger> blockRewards : rewards){
+                if(blockRewards != null && !blockRewards.isEmpty() && blockRewards.get(0).signum() > 0){
+                    values.add(blockRewards.get(0));
+                }
+            }
+        }
+        if(values.isEmpty()){
+            return BigInteger.ZERO;
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    /**
+     * Tip suggested by the node, used when the recent blocks were empty
+     * @return
+     */
+    private BigInteger maxPriorityFeePerGas(){
+        try {
+            EthMaxPriorityFeePerGas response = web3j.ethMaxPriorityFeePerGas().send();
+            if(!response.hasError() && response.getResult() != null){
+                return response.getMaxPriorityFeePerGas();
+            }
+        } catch (Exception e){
+            logger.warn("eth_maxPriorityFeePerGas failed: " + e.getMessage());
+        }
+        return BigInteger.ZERO;
+    }
+
+    private CompletableFuture<BigInteger> maxPriorityFeePerGasAsync(){
+        return web3j.ethMaxPriorityFeePerGas().sendAsync().handle((response, e) -> {
+            if(e != null){
+                logger.warn("eth_maxPriorityFeePerGas failed: " + Futures.unwrap(e).getMessage());
+            } else if(!response.hasError() && response.getResult() != null){
+                return response.getMaxPriorityFeePerGas();
+            }
+            return BigInteger.ZERO;
+        });
+    }
+
+    /**
+     * Whether a cached value is still for the current block and within the TTL
+     * @param cached
+     * @return
+     */
+    private boolean isValid(Cached<?> cached){
+        if(cached == null || System.currentTimeMillis() - cached.createTime > ttl){
+            return false;
+        }
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        return currentBlock == null || currentBlock.equals(cached.blockNumber);
+    }
+
+    /**
+     * A value and the block it was read at
+     * @param <T>
+     */
+    private static class Cached<T> {
+
+        private final T value;
+
+        private final BigInteger blockNumber;
+
+        private final long createTime = System.currentTimeMillis();
+
+        private Cached(T value, BigInteger blockNumber){
+            this.value = value;
+            this.blockNumber = blockNumber;
+        }
+    }
+}
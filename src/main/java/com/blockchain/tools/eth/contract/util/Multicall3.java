@@ -0,0 +1,444 @@
+package com.blockchain.tools.eth.contract.util;
+
+import com.blockchain.tools.eth.codec.EthAbiCodecTool;
+import com.blockchain.tools.eth.contract.util.model.MulticallCall;
+import com.blockchain.tools.eth.contract.util.model.MulticallResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Aggregates many contract reads into one eth_call through the Multicall3 contract
+ *
+ * Calls are split into chunks by calldata size and a gas budget,
+ * a chunk that fails as a whole is split in half until the failing call is isolated
+ */
+public class Multicall3 {
+
+    private static final Logger logger = LoggerFactory.getLogger(Multicall3.class);
+
+    /**
+     * Address of Multicall3, it is the same on most EVM chains
+     */
+    public static final String DEFAULT_ADDRESS = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    /**
+     * Selector of aggregate3((address,bool,bytes)[])
+     */
+    private static final String AGGREGATE3 = "0x82ad56cb";
+
+    /**
+     * Selector of Error(string)
+     */
+    private static final String ERROR_SELECTOR = "0x08c379a0";
+
+    private static final int WORD = 64;
+
+    /**
+     * Contracts Tools used to send the aggregate
+     */
+    private EthContractUtil ethContractUtil;
+
+    /**
+     * Address of the Multicall3 contract
+     */
+    private String address = DEFAULT_ADDRESS;
+
+    /**
+     * Maximum calldata size of one aggregate, in bytes
+     */
+    private int maxCalldataSize = 64 * 1024;
+
+    /**
+     * Maximum number of calls in one aggregate
+     */
+    private int maxCallsPerChunk = 500;
+
+    /**
+     * Gas budget of one aggregate
+     */
+    private long gasLimit = 50_000_000L;
+
+    /**
+     * Expected gas used by one call, used with gasLimit to size the chunks
+     */
+    private long gasPerCall = 60_000L;
+
+    private Multicall3(EthContractUtil ethContractUtil){
+        this.ethContractUtil = ethContractUtil;
+    }
+
+    public static Multicall3 builder(EthContractUtil ethContractUtil){
+        return new Multicall3(ethContractUtil);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Multicall3 setAddress(String address) {
+        this.address = address;
+        return this;
+    }
+
+    public int getMaxCalldataSize() {
+        return maxCalldataSize;
+    }
+
+    public Multicall3 setMaxCalldataSize(int maxCalldataSize) {
+        this.maxCalldataSize = maxCalldataSize;
+        return this;
+    }
+
+    public int getMaxCallsPerChunk() {
+        return maxCallsPerChunk;
+    }
+
+    public Multicall3 setMaxCallsPerChunk(int maxCallsPerChunk) {
+        this.maxCallsPerChunk = maxCallsPerChunk;
+        return this;
+    }
+
+    public long getGasLimit() {
+        return gasLimit;
+    }
+
+    public Multicall3 setGasLimit(long gasLimit) {
+        this.gasLimit = gasLimit;
+        return this;
+    }
+
+    public long getGasPerCall() {
+        return gasPerCall;
+    }
+
+    public Multicall3 setGasPerCall(long gasPerCall) {
+        this.gasPerCall = gasPerCall;
+        return this;
+    }
+
+    /**
+     * Execute the calls, the results are in the same order as the calls
+     * @param calls
+     * @return
+     * @throws Exception
+     */
+    public List<MulticallResult> aggregate(List<MulticallCall> calls) throws Exception {
+        check(calls);
+
+        MulticallResult[] results = new MulticallResult[calls.size()];
+        for(int[] chunk : chunks(calls)){
+            execute(calls, chunk[0], chunk[1], results);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Execute the calls without blocking the caller, the results are in the same order as the calls
+     *
+     * The chunks are sent one after the other, like {@link #aggregate(List)}
+     * @param calls
+     * @return
+     */
+    public CompletableFuture<List<MulticallResult>> aggregateAsync(List<MulticallCall> calls) {
+        try {
+            check(calls);
+        } catch (Exception e){
+            return Futures.failed(e);
+        }
+
+        MulticallResult[] results = new MulticallResult[calls.size()];
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+        for(int[] chunk : chunks(calls)){
+            done = done.thenCompose(v -> executeAsync(calls, chunk[0], chunk[1], results));
+        }
+
+        return done.thenApply(v -> Arrays.asList(results));
+    }
+
+    private void check(List<MulticallCall> calls) throws Exception {
+        if(calls == null){
+            throw new Exception("calls must not be null");
+        }
+        for(MulticallCall call : calls){
+            if(call == null || call.getContractAddress() == null || Numeric.cleanHexPrefix(call.getContractAddress().trim()).length() != 40){
+                throw new Exception("every call must have a valid contractAddress");
+            }
+            if(call.getInputData() == null || call.getInputData().trim().equals("")){
+                throw new Exception("every call must have inputData");
+            }
+        }
+    }
+
+    /**
+     * Split the calls into chunks by calldata size and gas budget
+     * @param calls
+     * @return start and end of each chunk
+     */
+    private List<int[]> chunks(List<MulticallCall> calls){
+        List<int[]> chunks = new ArrayList<>();
+
+        long maxCallsByGas = Math.max(1, gasLimit / Math.max(1, gasPerCall));
+        int start = 0;
+        while (start < calls.size()){
+            int end = start;
+            int size = 0;
+            while (end < calls.size() && end - start < maxCallsPerChunk && end - start < maxCallsByGas){
+                int callSize = encodedSize(calls.get(end));
+                if(end > start && size + callSize > maxCalldataSize){
+                    break;
+                }
+                size += callSize;
+                end++;
+            }
+
+            chunks.add(new int[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Send one chunk, split it if it fails as a whole in the EVM, e.g. out of gas or a call that may not fail reverted
+     *
+     * Any other failure, e.g. the node can not be reached, is thrown as it is
+     * @param calls
+     * @param start
+     * @param end
+     * @param results
+     * @throws Exception
+     */
+    private void execute(List<MulticallCall> calls, int start, int end, MulticallResult[] results) throws Exception {
+        List<MulticallCall> chunk = calls.subList(start, end);
+
+        String returnData;
+        try {
+            returnData = ethContractUtil.call(address, encode(chunk));
+        } catch (Exception e){
+            if(!isExecutionError(e)){
+                throw e;
+            }
+            if(chunk.size() == 1){
+                results[start] = failure(e.getMessage());
+                return;
+            }
+            logger.debug("multicall of " + chunk.size() + " calls failed, splitting: " + e.getMessage());
+            int middle = start + chunk.size() / 2;
+            execute(calls, start, middle, results);
+            execute(calls, middle, end, results);
+            return;
+        }
+
+        checkReturnData(returnData);
+        decode(chunk, returnData, results, start);
+    }
+
+    /**
+     * Send one chunk without blocking the caller, split it if it fails as a whole in the EVM
+     * @param calls
+     * @param start
+     * @param end
+     * @param results
+     * @return
+     */
+    private CompletableFuture<Void> executeAsync(List<MulticallCall> calls, int start, int end, MulticallResult[] results) {
+        List<MulticallCall> chunk = calls.subList(start, end);
+
+        return ethContractUtil.callAsync(address, encode(chunk)).handle((returnData, e) -> {
+            if(e != null){
+                Throwable cause = Futures.unwrap(e);
+                if(!isExecutionError(cause)){
+                    return Futures.<Void>failed(cause);
+                }
+                String message = cause.getMessage();
+                if(chunk.size() == 1){
+                    results[start] = failure(message);
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                logger.debug("multicall of " + chunk.size() + " calls failed, splitting: " + message);
+                int middle = start + chunk.size() / 2;
+                return executeAsync(calls, start, middle, results)
+                        .thenCompose(v -> executeAsync(calls, middle, end, results));
+            }
+
+            try {
+                checkReturnData(returnData);
+                decode(chunk, returnData, results, start);
+                return CompletableFuture.<Void>completedFuture(null);
+            } catch (Exception decodeError){
+                return Futures.<Void>failed(decodeError);
+            }
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * Whether the node ran the chunk and it failed, splitting it helps then, retrying the same node after a transport failure does not
+     * @param e
+     * @return
+     */
+    private boolean isExecutionError(Throwable e){
+        return e instanceof EthCallException && ((EthCallException) e).isExecutionError();
+    }
+
+    private MulticallResult failure(String error){
+        MulticallResult result = new MulticallResult();
+        result.setSuccess(false);
+        result.setError(error);
+        return result;
+    }
+
+    private void checkReturnData(String returnData) throws Exception {
+        if(returnData == null || Numeric.cleanHexPrefix(returnData).isEmpty()){
+            throw new Exception("Multicall3 returned nothing, make sure it is deployed at " + address);
+        }
+    }
+
+    /**
+     * Encode aggregate3((address,bool,bytes)[])
+     * @param chunk
+     * @return
+     */
+    private String encode(List<MulticallCall> chunk){
+        int size = 0;
+        for(MulticallCall call : chunk){
+            size += encodedSize(call);
+        }
+        StringBuilder builder = new StringBuilder(AGGREGATE3.length() + (size + WORD) * 2);
+        builder.append(AGGREGATE3);
+
+        appendWord(builder, 32);
+        appendWord(builder, chunk.size());
+
+        long offset = 32L * chunk.size();
+        for(MulticallCall call : chunk){
+            appendWord(builder, offset);
+            offset += encodedSize(call) - 32;
+        }
+
+        for(MulticallCall call : chunk){
+            String target = Numeric.cleanHexPrefix(call.getContractAddress().trim()).toLowerCase();
+            String data = Numeric.cleanHexPrefix(call.getInputData().trim());
+
+            appendPadding(builder, WORD - target.length());
+            builder.append(target);
+            appendWord(builder, call.isAllowFailure() ? 1 : 0);
+            appendWord(builder, 96);
+            appendWord(builder, data.length() / 2);
+            builder.append(data);
+            appendPadding(builder, paddedLength(data.length()) - data.length());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decode (bool,bytes)[] into the results
+     * @param chunk
+     * @param returnData
+     * @param results
+     * @param start
+     * @throws Exception
+     */
+    private void decode(List<MulticallCall> chunk, String returnData, MulticallResult[] results, int start) throws Exception {
+        String hex = Numeric.cleanHexPrefix(returnData);
+
+        int arrayPosition = readInt(hex, 0) * 2;
+        int length = readInt(hex, arrayPosition);
+        if(length != chunk.size()){
+            throw new Exception("Multicall3 returned " + length + " results for " + chunk.size() + " calls");
+        }
+
+        int base = arrayPosition + WORD;
+        for(int i = 0; i < length; i++){
+            int element = base + readInt(hex, base + i * WORD) * 2;
+            boolean success = readInt(hex, element) != 0;
+            int dataPosition = element + readInt(hex, element + WORD) * 2;
+            int dataLength = readInt(hex, dataPosition) * 2;
+            String data = "0x" + hex.substring(dataPosition + WORD, dataPosition + WORD + dataLength);
+
+            MulticallCall call = chunk.get(i);
+            MulticallResult result = new MulticallResult();
+            result.setSuccess(success);
+            result.setReturnData(data);
+
+            if(!success){
+                result.setError(revertReason(data));
+            } else if(call.getOutputTypes() != null && call.getOutputTypes().length > 0 && dataLength > 0){
+                try {
+                    result.setValues(decodeValues(data, call.getOutputTypes()));
+                } catch (Exception e){
+                    result.setSuccess(false);
+                    result.setError("failed to decode the return data: " + e.getMessage());
+                }
+            } else {
+                result.setValues(new ArrayList<>());
+            }
+
+            results[start + i] = result;
+        }
+    }
+
+    private List<Type> decodeValues(String data, TypeReference[] outputTypes){
+        return EthAbiCodecTool.decoderInputData(data, outputTypes);
+    }
+
+    /**
+     * Read the revert reason out of Error(string) revert data
+     * @param data
+     * @return
+     */
+    private String revertReason(String data){
+        if(data.startsWith(ERROR_SELECTOR)){
+            try {
+                List<Type> reason = EthAbiCodecTool.decoderInputData(
+                        "0x" + data.substring(ERROR_SELECTOR.length()),
+                        new TypeReference<Utf8String>() {}
+                );
+                if(reason.size() > 0){
+                    return "execution reverted: " + reason.get(0).getValue();
+                }
+            } catch (Exception e){
+                // fall through to the generic message
+            }
+        }
+        return "execution reverted";
+    }
+
+    /**
+     * Size of one (address,bool,bytes) element in the calldata, including its offset word
+     * @param call
+     * @return
+     */
+    private static int encodedSize(MulticallCall call){
+        int dataLength = Numeric.cleanHexPrefix(call.getInputData().trim()).length();
+        return 32 * 5 + paddedLength(dataLength) / 2;
+    }
+
+    private static int paddedLength(int hexLength){
+        return (hexLength + WORD - 1) / WORD * WORD;
+    }
+
+    private static void appendWord(StringBuilder builder, long value){
+        String hex = Long.toHexString(value);
+        appendPadding(builder, WORD - hex.length());
+        builder.append(hex);
+    }
+
+    private static void appendPadding(StringBuilder builder, int count){
+        for(int i = 0; i < count; i++){
+            builder.append('0');
+        }
+    }
+
+    private static int readInt(String hex, int position){
+        return (int) Long.parseLong(hex.substring(position + WORD - 12, position + WORD), 16);
+    }
+}
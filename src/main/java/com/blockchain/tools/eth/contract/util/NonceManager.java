@@ -0,0 +1,170 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out nonces from a local counter per sender address
+ *
+ * The counter is synced with the PENDING transaction count on first use and after errors,
+ * after that nonces are allocated with a CAS, so concurrent sends from one address never get the same nonce
+ */
+public class NonceManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(NonceManager.class);
+
+    /**
+     * Shared managers, one per Web3j instance
+     */
+    private static final Map<Web3j, NonceManager> MANAGERS = new ConcurrentHashMap<>();
+
+    /**
+     * Marks a counter that must be synced with the node before use
+     */
+    private static final long UNSYNCED = -1L;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Next nonce of each sender, keyed by lower case address
+     */
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private NonceManager(Web3j web3j){
+        this.web3j = web3j;
+    }
+
+    /**
+     * Get the nonce manager shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static NonceManager of(Web3j web3j){
+        return MANAGERS.computeIfAbsent(web3j, NonceManager::new);
+    }
+
+    /**
+     * Drop the nonce manager of a Web3j, the counters of a new one are synced from the node again
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        MANAGERS.remove(web3j);
+    }
+
+    /**
+     * Allocate the next nonce of the sender
+     * @param senderAddress
+     * @return
+     * @throws IOException
+     */
+    public BigInteger next(String senderAddress) throws IOException {
+        AtomicLong counter = counters.computeIfAbsent(key(senderAddress), k -> new AtomicLong(UNSYNCED));
+        while (true){
+            long current = counter.get();
+            if(current == UNSYNCED){
+                counter.compareAndSet(UNSYNCED, pendingCount(senderAddress));
+                continue;
+            }
+            if(counter.compareAndSet(current, current + 1)){
+                return BigInteger.valueOf(current);
+            }
+        }
+    }
+
+    /**
+     * Allocate the next nonce of the sender without waiting for the node
+     *
+     * Completes at once when the counter is synced, otherwise after the PENDING transaction count is read
+     * @param senderAddress
+     * @return
+     */
+    public CompletableFuture<BigInteger> nextAsync(String senderAddress) {
+        AtomicLong counter = counters.computeIfAbsent(key(senderAddress), k -> new AtomicLong(UNSYNCED));
+        while (true){
+            long current = counter.get();
+            if(current == UNSYNCED){
+                return pendingCountAsync(senderAddress).thenCompose(count -> {
+                    counter.compareAndSet(UNSYNCED, count);
+                    return nextAsync(senderAddress);
+                });
+            }
+            if(counter.compareAndSet(current, current + 1)){
+                return CompletableFuture.completedFuture(BigInteger.valueOf(current));
+            }
+        }
+    }
+
+    /**
+     * Called when a transaction with a managed nonce could not be broadcast
+     *
+     * If the node already has the transaction the nonce is used and nothing changes,
+     * otherwise the counter is synced again so the nonce is handed out again and no gap is left behind
+     * @param senderAddress
+     * @param nonce
+     * @param message error message of the node
+     */
+    public void onError(String senderAddress, BigInteger nonce, String message){
+        if(message != null){
+            String lower = message.toLowerCase();
+            if(lower.contains("already known") || lower.contains("known transaction")){
+                return;
+            }
+        }
+        logger.debug("resync nonce of " + senderAddress + " after nonce " + nonce + " failed: " + message);
+        reset(senderAddress);
+    }
+
+    /**
+     * Sync the counter with the node before the next allocation
+     *
+     * Use it when a transaction was dropped or the address also sends from somewhere else
+     * @param senderAddress
+     */
+    public void reset(String senderAddress){
+        AtomicLong counter = counters.get(key(senderAddress));
+        if(counter != null){
+            counter.set(UNSYNCED);
+        }
+    }
+
+    /**
+     * Query the PENDING transaction count of the sender
+     * @param senderAddress
+     * @return
+     * @throws IOException
+     */
+    private long pendingCount(String senderAddress) throws IOException {
+        EthGetTransactionCount ethGetTransactionCount = web3j.ethGetTransactionCount(senderAddress, DefaultBlockParameterName.PENDING).send();
+        if(ethGetTransactionCount.hasError()){
+            throw new IOException(ethGetTransactionCount.getError().getMessage());
+        }
+        return ethGetTransactionCount.getTransactionCount().longValue();
+    }
+
+    private CompletableFuture<Long> pendingCountAsync(String senderAddress) {
+        return web3j.ethGetTransactionCount(senderAddress, DefaultBlockParameterName.PENDING).sendAsync()
+                .thenApply(Futures.unchecked(ethGetTransactionCount -> {
+                    if(ethGetTransactionCount.hasError()){
+                        throw new IOException(ethGetTransactionCount.getError().getMessage());
+                    }
+                    return ethGetTransactionCount.getTransactionCount().longValue();
+                }));
+    }
+
+    private String key(String senderAddress){
+        return senderAddress.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,63 @@
+package com.blockchain.tools.eth.contract.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs numbered tasks on a bounded number of workers, for the bulk reads
+ */
+public final class ParallelWorkers {
+
+    private ParallelWorkers(){
+    }
+
+    /**
+     * Run tasks 0 to count - 1, each worker takes the next task until none is left or a task fails
+     * @param count number of tasks
+     * @param parallelism most tasks running at the same time
+     * @param executor runs the workers
+     * @param task
+     * @throws Exception the first failure, after all workers have stopped
+     */
+    public static void run(int count, int parallelism, Executor executor, Task task) throws Exception {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicInteger next = new AtomicInteger();
+
+        int workers = Math.max(1, Math.min(parallelism, count));
+        CompletableFuture<?>[] futures = new CompletableFuture[workers];
+        for(int i = 0; i < workers; i++){
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < count){
+                    try {
+                        task.run(index);
+                    } catch (Exception e){
+                        failure.compareAndSet(null, e);
+                        // Let the other workers stop too
+                        next.set(count);
+                    }
+                }
+            }, executor);
+        }
+
+        try {
+            CompletableFuture.allOf(futures).get();
+        } catch (ExecutionException e){
+            throw new Exception(e.getCause());
+        }
+        if(failure.get() != null){
+            throw failure.get();
+        }
+    }
+
+    /**
+     * One numbered task
+     */
+    public interface Task {
+
+        void run(int index) throws Exception;
+    }
+}
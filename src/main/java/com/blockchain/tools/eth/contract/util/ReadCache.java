@@ -0,0 +1,288 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.web3j.protocol.Web3j;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches the return data of eth_call for the current block
+ *
+ * Entries are keyed by block, contract and inputData, and dropped when the BlockHeadTracker of the Web3j reports a new block,
+ * so repeated reads of the same key within a block go to the node once.
+ * Functions whose result never changes, e.g. decimals(), are cached across blocks.
+ * The cache is off by default, once enabled every EthContractUtil and contract template on the Web3j uses it:
+ * <pre>
+ * ReadCache.of(web3j).setEnabled(true);
+ * </pre>
+ */
+public class ReadCache implements BlockHeadTracker.BlockListener {
+
+    /**
+     * Shared caches, one per Web3j instance
+     */
+    private static final Map<Web3j, ReadCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * Default maximum number of entries of the current block
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Maximum number of entries of immutable functions
+     */
+    private static final int IMMUTABLE_MAX_SIZE = 4096;
+
+    /**
+     * Prefix of the keys of immutable functions, the keys of the current block start with the block number instead
+     */
+    private static final String IMMUTABLE_PREFIX = "immutable:";
+
+    /**
+     * Source of new block notifications
+     */
+    private BlockHeadTracker blockHeadTracker;
+
+    private volatile boolean enabled;
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Entries of the current block, least recently used first
+     */
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if(size() > maxSize){
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Entries of immutable functions, keyed by contract and inputData
+     */
+    private final Map<String, String> immutableEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Selectors of functions whose result never changes, with 0x
+     */
+    private final Set<String> immutableSelectors = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private ReadCache(Web3j web3j){
+        this.blockHeadTracker = BlockHeadTracker.of(web3j);
+        // name(), symbol(), decimals()
+        immutableSelectors.add("0x06fdde03");
+        immutableSelectors.add("0x95d89b41");
+        immutableSelectors.add("0x313ce567");
+    }
+
+    /**
+     * Get the cache shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static ReadCache of(Web3j web3j){
+        return CACHES.computeIfAbsent(web3j, ReadCache::new);
+    }
+
+    /**
+     * Drop the cache of a Web3j and its entries
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        ReadCache cache = CACHES.remove(web3j);
+        if(cache == null){
+            return;
+        }
+        cache.enabled = false;
+        cache.blockHeadTracker.removeListener(cache);
+        cache.clear();
+    }
+
+    /**
+     * Turn the cache on or off, while it is on the BlockHeadTracker keeps polling for new blocks
+     * @param enabled
+     * @return
+     */
+    public ReadCache setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if(enabled){
+            blockHeadTracker.addListener(this);
+        } else {
+            blockHeadTracker.removeListener(this);
+            clear();
+        }
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set the maximum number of entries of the current block, the least recently used are evicted
+     * @param maxSize
+     * @return
+     */
+    public ReadCache setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Mark a function whose result never changes, its results are kept across blocks
+     * @param selector e.g. 0x313ce567
+     * @return
+     */
+    public ReadCache addImmutableSelector(String selector){
+        immutableSelectors.add(selector.toLowerCase());
+        return this;
+    }
+
+    /**
+     * Cache key of a call at the current block
+     * @param contractAddress
+     * @param inputData
+     * @return null if the call can not be cached, because the cache is off or no block has been seen yet
+     */
+    public String key(String contractAddress, String inputData){
+        if(!enabled){
+            return null;
+        }
+        String call = contractAddress.toLowerCase() + ":" + inputData.toLowerCase();
+        if(isImmutable(inputData)){
+            return IMMUTABLE_PREFIX + call;
+        }
+        BigInteger currentBlock = blockHeadTracker.getCurrentBlock();
+        if(currentBlock == null){
+            return null;
+        }
+        return currentBlock + ":" + call;
+    }
+
+    /**
+     * Get cached return data
+     * @param key
+     * @return null on a miss
+     */
+    public String get(String key){
+        String value;
+        if(key.startsWith(IMMUTABLE_PREFIX)){
+            value = immutableEntries.get(key);
+        } else {
+            lock.lock();
+            try {
+                value = entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if(value == null){
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Cache return data
+     * @param key from {@link #key(String, String)}, taken before the call was made
+     * @param value
+     */
+    public void put(String key, String value){
+        if(value == null){
+            return;
+        }
+        if(key.startsWith(IMMUTABLE_PREFIX)){
+            if(immutableEntries.size() >= IMMUTABLE_MAX_SIZE){
+                immutableEntries.clear();
+            }
+            immutableEntries.put(key, value);
+            return;
+        }
+        lock.lock();
+        try {
+            entries.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop all entries
+     */
+    public void clear(){
+        immutableEntries.clear();
+        clearBlock();
+    }
+
+    @Override
+    public void onNewBlock(BigInteger blockNumber) {
+        clearBlock();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Hits over lookups, 0 before the first lookup
+     * @return
+     */
+    public double getHitRate(){
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Number of entries of the current block
+     * @return
+     */
+    public int size(){
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clearBlock(){
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isImmutable(String inputData){
+        return inputData.length() >= 10 && immutableSelectors.contains(inputData.substring(0, 10).toLowerCase());
+    }
+}
@@ -0,0 +1,249 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Waits for transaction receipts
+ *
+ * All pending transaction hashes of a Web3j instance are tracked together,
+ * their receipts are looked up in JSON-RPC batches once per new block instead of one polling loop per transaction
+ */
+public class ReceiptWatcher implements BlockHeadTracker.BlockListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptWatcher.class);
+
+    /**
+     * Shared watchers, one per Web3j instance
+     */
+    private static final Map<Web3j, ReceiptWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    /**
+     * Fires the timeouts of all watchers
+     */
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "magician-receipt-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Default time to wait for a receipt, in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * Default number of receipt lookups per JSON-RPC batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Source of new block notifications
+     */
+    private BlockHeadTracker blockHeadTracker;
+
+    /**
+     * Time to wait for a receipt, in milliseconds
+     */
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Number of receipt lookups per JSON-RPC batch
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Pending transactions, keyed by transaction hash
+     */
+    private final Map<String, CompletableFuture<EthGetTransactionReceipt>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Whether this watcher is registered on the block head tracker
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    private ReceiptWatcher(Web3j web3j){
+        this.web3j = web3j;
+        this.blockHeadTracker = BlockHeadTracker.of(web3j);
+    }
+
+    /**
+     * Get the watcher shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static ReceiptWatcher of(Web3j web3j){
+        return WATCHERS.computeIfAbsent(web3j, ReceiptWatcher::new);
+    }
+
+    /**
+     * Drop the watcher of a Web3j, the transactions it still waits for fail
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        ReceiptWatcher watcher = WATCHERS.remove(web3j);
+        if(watcher == null){
+            return;
+        }
+        watcher.subscribed.set(false);
+        watcher.blockHeadTracker.removeListener(watcher);
+        for(String hash : new ArrayList<>(watcher.pending.keySet())){
+            CompletableFuture<EthGetTransactionReceipt> future = watcher.pending.remove(hash);
+            if(future != null){
+                future.completeExceptionally(new Exception("the receipt watcher was released before the receipt of " + hash + " arrived"));
+            }
+        }
+    }
+
+    /**
+     * Set the time to wait for a receipt, in milliseconds
+     * @param timeout
+     * @return
+     */
+    public ReceiptWatcher setTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the number of receipt lookups per JSON-RPC batch
+     * @param batchSize
+     * @return
+     */
+    public ReceiptWatcher setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of transactions still waiting for a receipt
+     * @return
+     */
+    public int getPendingCount(){
+        return pending.size();
+    }
+
+    /**
+     * Wait for the receipt of a transaction
+     *
+     * The future completes with the receipt once the transaction is packed,
+     * if it is not packed within the timeout, it completes with a response whose result is null
+     *
+     * @param transactionHash
+     * @return
+     */
+    public CompletableFuture<EthGetTransactionReceipt> watch(String transactionHash){
+        CompletableFuture<EthGetTransactionReceipt> future = new CompletableFuture<>();
+        CompletableFuture<EthGetTransactionReceipt> existing = pending.putIfAbsent(transactionHash, future);
+        if(existing != null){
+            return existing;
+        }
+
+        ScheduledFuture<?> timeoutTask = TIMEOUT_SCHEDULER.schedule(() -> {
+            if(pending.remove(transactionHash, future)){
+                future.complete(new EthGetTransactionReceipt());
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((receipt, e) -> timeoutTask.cancel(false));
+
+        subscribe();
+        return future;
+    }
+
+    @Override
+    public void onNewBlock(BigInteger blockNumber) {
+        List<String> hashes = new ArrayList<>(pending.keySet());
+        for(int i = 0; i < hashes.size(); i += batchSize){
+            lookup(hashes.subList(i, Math.min(i + batchSize, hashes.size())));
+        }
+
+        if(pending.isEmpty()){
+            unsubscribe();
+        }
+    }
+
+    /**
+     * Look up one batch of receipts and complete the packed ones
+     * @param hashes
+     */
+    private void lookup(List<String> hashes){
+        List<EthGetTransactionReceipt> receipts = null;
+        try {
+            BatchRequest batchRequest = web3j.newBatch();
+            for(String hash : hashes){
+                batchRequest.add(web3j.ethGetTransactionReceipt(hash));
+            }
+            BatchResponse batchResponse = batchRequest.send();
+            if(batchResponse != null && batchResponse.getResponses() != null && batchResponse.getResponses().size() == hashes.size()){
+                receipts = new ArrayList<>(hashes.size());
+                for(Response<?> response : batchResponse.getResponses()){
+                    receipts.add((EthGetTransactionReceipt) response);
+                }
+            }
+        } catch (Exception e){
+            logger.debug("batch receipt lookup failed, falling back to single requests: " + e.getMessage());
+        }
+
+        for(int i = 0; i < hashes.size(); i++){
+            String hash = hashes.get(i);
+            try {
+                EthGetTransactionReceipt receipt = receipts != null ? receipts.get(i) : web3j.ethGetTransactionReceipt(hash).send();
+                if(receipt == null || receipt.getResult() == null){
+                    continue;
+                }
+                CompletableFuture<EthGetTransactionReceipt> future = pending.remove(hash);
+                if(future != null){
+                    future.complete(receipt);
+                }
+            } catch (Exception e){
+                logger.warn("failed to query the receipt of " + hash + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void subscribe(){
+        if(subscribed.compareAndSet(false, true)){
+            blockHeadTracker.addListener(this);
+        }
+    }
+
+    private void unsubscribe(){
+        if(subscribed.compareAndSet(true, false)){
+            blockHeadTracker.removeListener(this);
+        }
+        // A transaction may have been watched while unsubscribing
+        if(!pending.isEmpty()){
+            subscribe();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.blockchain.tools.eth.contract.util;
+
+import org.web3j.protocol.Web3j;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical reads share one request
+ *
+ * The first caller of a key makes the request, callers that arrive with the same key while it is in flight
+ * wait for it and get the same result or exception. Nothing is kept after the request completes,
+ * so there is no staleness, only duplicate in-flight requests are removed
+ */
+public class SingleFlight {
+
+    /**
+     * Shared instances, one per Web3j instance
+     */
+    private static final Map<Web3j, SingleFlight> FLIGHTS = new ConcurrentHashMap<>();
+
+    /**
+     * Requests in flight, keyed by what they read
+     */
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of callers that joined a request instead of making their own
+     */
+    private final LongAdder coalesced = new LongAdder();
+
+    private SingleFlight(){
+    }
+
+    /**
+     * Get the instance shared by all tools built on this Web3j
+     * @param web3j
+     * @return
+     */
+    public static SingleFlight of(Web3j web3j){
+        return FLIGHTS.computeIfAbsent(web3j, key -> new SingleFlight());
+    }
+
+    /**
+     * Drop the single flight of a Web3j, requests already in flight still complete
+     * @param web3j
+     */
+    public static void release(Web3j web3j){
+        FLIGHTS.remove(web3j);
+    }
+
+    /**
+     * Run the request, or join the one in flight for the same key
+     * @param key
+     * @param request
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> request) throws Exception {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if(existing != null){
+            coalesced.increment();
+            return (T) await(existing);
+        }
+
+        try {
+            T result = request.call();
+            future.complete(result);
+            return result;
+        } catch (Exception e){
+            future.completeExceptionally(e);
+            throw e;
+        } catch (Error e){
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Start the request, or join the one in flight for the same key, without waiting for it
+     *
+     * Shares the requests in flight with {@link #execute(String, Callable)}, a blocking and an async caller
+     * of the same key make one request
+     * @param key
+     * @param request starts the request, it must not block
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if(existing != null){
+            coalesced.increment();
+            // A copy, so a caller completing its future does not complete the one of the others
+            return existing.thenApply(value -> (T) value);
+        }
+
+        CompletableFuture<T> started;
+        try {
+            started = request.get();
+        } catch (RuntimeException | Error e){
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((value, e) -> {
+            inFlight.remove(key, future);
+            if(e != null){
+                future.completeExceptionally(Futures.unwrap(e));
+            } else {
+                future.complete(value);
+            }
+        });
+        return future.thenApply(value -> (T) value);
+    }
+
+    /**
+     * Number of callers that joined a request instead of making their own
+     * @return
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Number of requests in flight
+     * @return
+     */
+    public int size(){
+        return inFlight.size();
+    }
+
+    private Object await(CompletableFuture<Object> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception){
+                throw (Exception) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.blockchain.tools.eth.contract.util;
+
+import com.blockchain.tools.eth.helper.EthHelper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads pinned to one block
+ *
+ * Every read made through the EthContractUtil of the session, and through the templates and EthHelper built on it,
+ * is made at the same block number, so a bulk query sees one consistent state.
+ * Since the results can not change, they are all kept for the life of the session,
+ * and can be saved to a checkpoint file to resume an interrupted query without reading them again:
+ * <pre>
+ * SnapshotSession session = SnapshotSession.builder(web3j);
+ * ERC20Contract erc20 = ERC20Contract.builder(session.getEthContractUtil(), contractAddress);
+ * List&lt;BigInteger&gt; balances = session.readAll(accounts, erc20::balanceOf);
+ * </pre>
+ */
+public class SnapshotSession {
+
+    /**
+     * Default number of reads running at the same time in readAll
+     */
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    /**
+     * Runs the reads of readAll, the threads only wait on the node
+     */
+    private static final ExecutorService READ_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-snapshot-read");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Block all reads are made at
+     */
+    private BigInteger blockNumber;
+
+    /**
+     * Results of the reads, keyed by contract and inputData
+     */
+    private final Map<String, String> results;
+
+    private EthContractUtil ethContractUtil;
+
+    private EthHelper ethHelper;
+
+    /**
+     * Number of reads running at the same time in readAll
+     */
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private SnapshotSession(Web3j web3j, BigInteger blockNumber, Map<String, String> results){
+        this.web3j = web3j;
+        this.blockNumber = blockNumber;
+        this.results = results;
+        this.ethContractUtil = EthContractUtil.builder(web3j, blockNumber, results);
+        this.ethHelper = EthHelper.builder(web3j, DefaultBlockParameter.valueOf(blockNumber));
+    }
+
+    /**
+     * Pin the session to the latest block
+     * @param web3j
+     * @return
+     * @throws Exception
+     */
+    public static SnapshotSession builder(Web3j web3j) throws Exception {
+        EthBlockNumber ethBlockNumber = web3j.ethBlockNumber().send();
+        if(ethBlockNumber.hasError()){
+            throw new Exception(ethBlockNumber.getError().getMessage());
+        }
+        return builder(web3j, ethBlockNumber.getBlockNumber());
+    }
+
+    /**
+     * Pin the session to the given block
+     * @param web3j
+     * @param blockNumber
+     * @return
+     */
+    public static SnapshotSession builder(Web3j web3j, BigInteger blockNumber){
+        return new SnapshotSession(web3j, blockNumber, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Resume a session from a checkpoint written by {@link #saveCheckpoint(File)}, it is pinned to the same block
+     * @param web3j
+     * @param checkpoint
+     * @return
+     * @throws Exception
+     */
+    public static SnapshotSession restore(Web3j web3j, File checkpoint) throws Exception {
+        JsonNode root = ObjectMapperFactory.getObjectMapper().readTree(checkpoint);
+        if(root == null || !root.hasNonNull("blockNumber")){
+            throw new Exception("invalid snapshot checkpoint " + checkpoint);
+        }
+
+        Map<String, String> results = new ConcurrentHashMap<>();
+        JsonNode resultsNode = root.path("results");
+        Iterator<Map.Entry<String, JsonNode>> fields = resultsNode.fields();
+        while (fields.hasNext()){
+            Map.Entry<String, JsonNode> field = fields.next();
+            results.put(field.getKey(), field.getValue().asText());
+        }
+        return new SnapshotSession(web3j, new BigInteger(root.get("blockNumber").asText()), results);
+    }
+
+    /**
+     * Write the block number and all results read so far to a file
+     * @param checkpoint
+     * @throws Exception
+     */
+    public void saveCheckpoint(File checkpoint) throws Exception {
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("blockNumber", blockNumber.toString());
+        ObjectNode resultsNode = root.putObject("results");
+        for(Map.Entry<String, String> entry : results.entrySet()){
+            resultsNode.put(entry.getKey(), entry.getValue());
+        }
+
+        // Write next to the target and move it in place, an interrupted write leaves the previous checkpoint intact
+        File temp = new File(checkpoint.getPath() + ".tmp");
+        objectMapper.writeValue(temp, root);
+        if(!temp.renameTo(checkpoint) && !(checkpoint.delete() && temp.renameTo(checkpoint))){
+            throw new Exception("failed to write snapshot checkpoint " + checkpoint);
+        }
+    }
+
+    /**
+     * Number of reads running at the same time in readAll
+     * @param parallelism
+     * @return
+     */
+    public SnapshotSession setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Read a value for every key in parallel, the results are in the same order as the keys
+     *
+     * Keys whose reads were made before, in this session or in the checkpoint it was restored from, are answered locally
+     * @param keys e.g. account addresses
+     * @param reader e.g. erc20::balanceOf
+     * @param <K>
+     * @param <V>
+     * @return
+     * @throws Exception the first failure, after all reads have finished
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> List<V> readAll(List<K> keys, Reader<K, V> reader) throws Exception {
+        Object[] values = new Object[keys.size()];
+        ParallelWorkers.run(keys.size(), parallelism, READ_EXECUTOR, index -> values[index] = reader.read(keys.get(index)));
+
+        List<V> result = new ArrayList<>(values.length);
+        for(Object value : values){
+            result.add((V) value);
+        }
+        return result;
+    }
+
+    /**
+     * Block all reads are made at
+     * @return
+     */
+    public BigInteger getBlockNumber() {
+        return blockNumber;
+    }
+
+    public DefaultBlockParameter getBlockParameter(){
+        return DefaultBlockParameter.valueOf(blockNumber);
+    }
+
+    /**
+     * Contract tool pinned to the block of the session, pass it to the builders of the templates
+     * @return
+     */
+    public EthContractUtil getEthContractUtil() {
+        return ethContractUtil;
+    }
+
+    /**
+     * EthHelper pinned to the block of the session
+     * @return
+     */
+    public EthHelper getEthHelper() {
+        return ethHelper;
+    }
+
+    public Web3j getWeb3j() {
+        return web3j;
+    }
+
+    /**
+     * Number of results kept
+     * @return
+     */
+    public int size(){
+        return results.size();
+    }
+
+    /**
+     * Reads one value
+     * @param <K>
+     * @param <V>
+     */
+    public interface Reader<K, V> {
+
+        V read(K key) throws Exception;
+    }
+}
@@ -0,0 +1,185 @@
+package com.blockchain.tools.eth.contract.util;
+
+import com.blockchain.tools.eth.contract.util.model.SendModel;
+import com.blockchain.tools.eth.contract.util.model.SendResultModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.crypto.RawTransaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Submits transactions in bulk, signing them in parallel
+ *
+ * Nonces are allocated on the caller thread in list order, the signatures are computed on a fork-join pool
+ * sized to the cores of the machine, and every signed transaction is handed to a broadcast stage.
+ * Transactions of the same sender are broadcast one after another in nonce order,
+ * different senders are broadcast independently.
+ * <pre>
+ * List&lt;CompletableFuture&lt;SendResultModel&gt;&gt; results = TransactionPipeline.builder(ethContractUtil).submit(sendModels, inputDataList);
+ * </pre>
+ */
+public class TransactionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionPipeline.class);
+
+    /**
+     * Default signing pool, one worker per core
+     */
+    private static final ForkJoinPool SIGNING_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Default broadcast threads, they only wait on the node
+     */
+    private static final ExecutorService BROADCAST_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-transaction-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private EthContractUtil ethContractUtil;
+
+    /**
+     * Pool the signatures are computed on
+     */
+    private ForkJoinPool signingPool = SIGNING_POOL;
+
+    /**
+     * Executor the signed transactions are broadcast on
+     */
+    private Executor broadcastExecutor = BROADCAST_EXECUTOR;
+
+    private TransactionPipeline(EthContractUtil ethContractUtil){
+        this.ethContractUtil = ethContractUtil;
+    }
+
+    public static TransactionPipeline builder(EthContractUtil ethContractUtil){
+        return new TransactionPipeline(ethContractUtil);
+    }
+
+    /**
+     * Pool to sign on, by default a fork-join pool with one worker per core
+     * @param signingPool
+     * @return
+     */
+    public TransactionPipeline setSigningPool(ForkJoinPool signingPool) {
+        this.signingPool = signingPool;
+        return this;
+    }
+
+    /**
+     * Executor to broadcast on
+     * @param broadcastExecutor
+     * @return
+     */
+    public TransactionPipeline setBroadcastExecutor(Executor broadcastExecutor) {
+        this.broadcastExecutor = broadcastExecutor;
+        return this;
+    }
+
+    /**
+     * Sign and broadcast a batch of transactions
+     *
+     * The models are validated and get their nonces before this method returns,
+     * an invalid model fails the whole batch before anything is signed.
+     * Models without a gas limit are estimated by the GasEstimator all at the same time, and the method waits for the estimates
+     * before it allocates the nonces, calls of one function share an estimate so a payout of one token makes a single eth_estimateGas.
+     * A transaction that can not be created, signed or broadcast fails its future, and the later transactions of the same sender
+     * fail with it, since their nonces would leave a gap. Managed nonces of failed transactions are then synced with the node again
+     * @param sendModels
+     * @param inputDataList inputData of each model, in the same order
+     * @return one future per model, in the same order, completed when the transaction is broadcast
+     * @throws Exception
+     */
+    public List<CompletableFuture<SendResultModel>> submit(List<SendModel> sendModels, List<String> inputDataList) throws Exception {
+        if(sendModels.size() != inputDataList.size()){
+            throw new Exception("The length of sendModels and inputDataList must be the same");
+        }
+
+        List<CompletableFuture<SendModel>> validations = new ArrayList<>(sendModels.size());
+        for(int i = 0; i < sendModels.size(); i++){
+            validations.add(ethContractUtil.validationAsync(sendModels.get(i), inputDataList.get(i)));
+        }
+        for(CompletableFuture<SendModel> validation : validations){
+            try {
+                validation.get();
+            } catch (ExecutionException e){
+                Throwable cause = Futures.unwrap(e);
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+
+        NonceManager nonceManager = ethContractUtil.getNonceManager();
+        Map<String, CompletableFuture<SendResultModel>> lastBroadcasts = new HashMap<>();
+        List<CompletableFuture<SendResultModel>> results = new ArrayList<>(sendModels.size());
+
+        for(int i = 0; i < sendModels.size(); i++){
+            SendModel sendModel = sendModels.get(i);
+            boolean managedNonce = sendModel.getNonce() == null;
+            if(managedNonce){
+                sendModel.setNonce(nonceManager.next(sendModel.getSenderAddress()));
+            }
+
+            CompletableFuture<byte[]> signed;
+            try {
+                RawTransaction rawTransaction = ethContractUtil.createRawTransaction(sendModel, inputDataList.get(i));
+                signed = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ethContractUtil.sign(sendModel, rawTransaction);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, signingPool);
+            } catch (Exception e){
+                signed = Futures.failed(e);
+            }
+
+            String sender = sendModel.getSenderAddress().toLowerCase();
+            CompletableFuture<SendResultModel> previous = lastBroadcasts.get(sender);
+            // A failure is only handled once the previous transaction of the sender is settled,
+            // so the nonce is not synced again while an earlier one is still being broadcast
+            CompletableFuture<Void> turn = previous == null ? CompletableFuture.completedFuture(null) : previous.handle((result, e) -> null);
+
+            CompletableFuture<byte[]> signedMessage = signed;
+            CompletableFuture<SendResultModel> broadcast = signed.handle((message, e) -> e)
+                    .thenCombine(turn, (signError, ignored) -> signError)
+                    .thenApplyAsync(signError -> {
+                        if(signError != null){
+                            throw new CompletionException(Futures.unwrap(signError));
+                        }
+                        if(previous != null && previous.isCompletedExceptionally()){
+                            throw new CompletionException(new Exception("an earlier transaction of " + sendModel.getSenderAddress() + " failed"));
+                        }
+                        try {
+                            return ethContractUtil.broadcastSigned(signedMessage.join());
+                        } catch (Exception e) {
+                            throw new CompletionException(e);
+                        }
+                    }, broadcastExecutor)
+                    .whenComplete((result, e) -> {
+                        if(e == null){
+                            return;
+                        }
+                        Throwable cause = Futures.unwrap(e);
+                        if(managedNonce){
+                            nonceManager.onError(sendModel.getSenderAddress(), sendModel.getNonce(), cause.getMessage());
+                        }
+                        logger.error("transaction with nonce " + sendModel.getNonce() + " from " + sendModel.getSenderAddress() + " failed", cause);
+                    });
+
+            lastBroadcasts.put(sender, broadcast);
+            results.add(broadcast);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,170 @@
+package com.blockchain.tools.eth.contract.util.model;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Balances of a chunked balanceOfBatch, by the index of the (address, tokenId) pair
+ *
+ * Balances that fit in a long are kept in a long array, the rare larger ones in a map,
+ * so millions of pairs cost about 9 bytes each. A chunk that failed marks its pairs as failed
+ * and keeps its error, the other chunks are not affected
+ */
+public class BatchBalances {
+
+    private static final byte OK = 0;
+
+    private static final byte LARGE = 1;
+
+    private static final byte FAILED = 2;
+
+    private final long[] values;
+
+    /**
+     * State of each pair, one of OK, LARGE, FAILED
+     */
+    private final byte[] states;
+
+    /**
+     * Balances that do not fit in a long, by index
+     */
+    private final Map<Integer, BigInteger> largeValues = new ConcurrentHashMap<>();
+
+    /**
+     * Error of each failed chunk, by the index of its first pair
+     */
+    private final Map<Integer, String> errors = new ConcurrentHashMap<>();
+
+    public BatchBalances(int size){
+        this.values = new long[size];
+        this.states = new byte[size];
+    }
+
+    /**
+     * Set the balance of a pair
+     * @param index
+     * @param balance
+     */
+    public void set(int index, BigInteger balance){
+        if(balance.bitLength() < 64){
+            values[index] = balance.longValue();
+            states[index] = OK;
+        } else {
+            largeValues.put(index, balance);
+            states[index] = LARGE;
+        }
+    }
+
+    /**
+     * Mark the pairs of a chunk as failed
+     * @param from index of the first pair of the chunk
+     * @param to index after the last pair of the chunk
+     * @param error
+     */
+    public void setFailed(int from, int to, String error){
+        for(int i = from; i < to; i++){
+            states[i] = FAILED;
+        }
+        errors.put(from, error);
+    }
+
+    /**
+     * Number of pairs
+     * @return
+     */
+    public int size(){
+        return values.length;
+    }
+
+    /**
+     * @param index
+     * @return null if the chunk of the pair failed
+     */
+    public BigInteger get(int index){
+        switch (states[index]){
+            case LARGE:
+                return largeValues.get(index);
+            case FAILED:
+                return null;
+            default:
+                return BigInteger.valueOf(values[index]);
+        }
+    }
+
+    /**
+     * Balance of a pair without creating a BigInteger
+     * @param index
+     * @return
+     * @throws IllegalStateException if the chunk of the pair failed
+     * @throws ArithmeticException if the balance does not fit in a long
+     */
+    public long getLong(int index){
+        if(states[index] == FAILED){
+            throw new IllegalStateException("the chunk of pair " + index + " failed: " + errorOf(index));
+        }
+        if(states[index] == LARGE){
+            throw new ArithmeticException("the balance of pair " + index + " does not fit in a long");
+        }
+        return values[index];
+    }
+
+    /**
+     * Whether the balance of a pair can be read with getLong
+     * @param index
+     * @return
+     */
+    public boolean fitsLong(int index){
+        return states[index] == OK;
+    }
+
+    public boolean isFailed(int index){
+        return states[index] == FAILED;
+    }
+
+    public boolean hasFailures(){
+        return !errors.isEmpty();
+    }
+
+    /**
+     * Number of pairs whose chunk failed
+     * @return
+     */
+    public int getFailedCount(){
+        int count = 0;
+        for(byte state : states){
+            if(state == FAILED){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Error of each failed chunk, by the index of its first pair, in index order
+     * @return
+     */
+    public Map<Integer, String> getErrors(){
+        return new TreeMap<>(errors);
+    }
+
+    /**
+     * All balances in order, null for the pairs whose chunk failed
+     * @return
+     */
+    public List<BigInteger> toList(){
+        List<BigInteger> list = new ArrayList<>(values.length);
+        for(int i = 0; i < values.length; i++){
+            list.add(get(i));
+        }
+        return list;
+    }
+
+    private String errorOf(int index){
+        Map.Entry<Integer, String> entry = new TreeMap<>(errors).floorEntry(index);
+        return entry == null ? null : entry.getValue();
+    }
+}
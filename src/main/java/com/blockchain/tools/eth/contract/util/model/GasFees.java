@@ -0,0 +1,48 @@
+package com.blockchain.tools.eth.contract.util.model;
+
+import java.math.BigInteger;
+
+/**
+ * EIP-1559 fees suggested by the GasOracle
+ */
+public class GasFees {
+
+    /**
+     * Base fee of the next block
+     */
+    private BigInteger baseFeePerGas;
+
+    /**
+     * Tip paid to the block producer
+     */
+    private BigInteger maxPriorityFeePerGas;
+
+    /**
+     * Highest total fee per gas the transaction pays, base fee plus tip
+     */
+    private BigInteger maxFeePerGas;
+
+    public BigInteger getBaseFeePerGas() {
+        return baseFeePerGas;
+    }
+
+    public void setBaseFeePerGas(BigInteger baseFeePerGas) {
+        this.baseFeePerGas = baseFeePerGas;
+    }
+
+    public BigInteger getMaxPriorityFeePerGas() {
+        return maxPriorityFeePerGas;
+    }
+
+    public void setMaxPriorityFeePerGas(BigInteger maxPriorityFeePerGas) {
+        this.maxPriorityFeePerGas = maxPriorityFeePerGas;
+    }
+
+    public BigInteger getMaxFeePerGas() {
+        return maxFeePerGas;
+    }
+
+    public void setMaxFeePerGas(BigInteger maxFeePerGas) {
+        this.maxFeePerGas = maxFeePerGas;
+    }
+}
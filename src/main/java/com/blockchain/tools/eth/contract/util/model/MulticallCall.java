@@ -0,0 +1,74 @@
+package com.blockchain.tools.eth.contract.util.model;
+
+import org.web3j.abi.TypeReference;
+
+/**
+ * One contract read inside a Multicall3 aggregate
+ */
+public class MulticallCall {
+
+    /**
+     * Contract Address
+     */
+    private String contractAddress;
+
+    /**
+     * The inputData of the method to be called
+     */
+    private String inputData;
+
+    /**
+     * The return types of the method, if empty, only the raw return data is available
+     */
+    private TypeReference[] outputTypes;
+
+    /**
+     * Whether the aggregate may go on when this call reverts
+     */
+    private boolean allowFailure;
+
+    private MulticallCall(){
+        outputTypes = new TypeReference[0];
+        allowFailure = true;
+    }
+
+    public static MulticallCall builder(){
+        return new MulticallCall();
+    }
+
+    public String getContractAddress() {
+        return contractAddress;
+    }
+
+    public MulticallCall setContractAddress(String contractAddress) {
+        this.contractAddress = contractAddress;
+        return this;
+    }
+
+    public String getInputData() {
+        return inputData;
+    }
+
+    public MulticallCall setInputData(String inputData) {
+        this.inputData = inputData;
+        return this;
+    }
+
+    public TypeReference[] getOutputTypes() {
+        return outputTypes;
+    }
+
+    public MulticallCall setOutputTypes(TypeReference... outputTypes) {
+        this.outputTypes = outputTypes;
+        return this;
+    }
+
+    public boolean isAllowFailure() {
+        return allowFailure;
+    }
+
+    public MulticallCall setAllowFailure(boolean allowFailure) {
+        this.allowFailure = allowFailure;
+        return this;
+    }
+}
@@ -0,0 +1,63 @@
+package com.blockchain.tools.eth.contract.util.model;
+
+import org.web3j.abi.datatypes.Type;
+
+import java.util.List;
+
+/**
+ * Result of one call inside a Multicall3 aggregate
+ */
+public class MulticallResult {
+
+    /**
+     * Whether the call succeeded
+     */
+    private boolean success;
+
+    /**
+     * Raw return data of the call, on failure it holds the revert data if there is any
+     */
+    private String returnData;
+
+    /**
+     * Return data decoded with the outputTypes of the call
+     */
+    private List<Type> values;
+
+    /**
+     * Reason of the failure
+     */
+    private String error;
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getReturnData() {
+        return returnData;
+    }
+
+    public void setReturnData(String returnData) {
+        this.returnData = returnData;
+    }
+
+    public List<Type> getValues() {
+        return values;
+    }
+
+    public void setValues(List<Type> values) {
+        this.values = values;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -1,5 +1,7 @@
 package com.blockchain.tools.eth.contract.util.model;
 
+import com.blockchain.tools.eth.signer.Signer;
+
 import java.math.BigInteger;
 
 /**
@@ -22,6 +24,13 @@ public class SendModel {
      */
     private String privateKey;
 
+    /**
+     * Signs the transaction instead of privateKey, e.g. a keystore or HSM signer
+     *
+     * If neither is set, the signer registered for senderAddress in SignerRegistry is used
+     */
+    private Signer signer;
+
     /**
      * Coin amount
      */
@@ -30,19 +39,46 @@ public class SendModel {
     /**
      * gasPrice
      *
-     * If you want to use the default value, you can pass null directly or leave this parameter out.
+     * If you want to use the default value, you can pass null directly or leave this parameter out,
+     * it is then suggested by the GasOracle shared by the Web3j.
      */
     private BigInteger gasPrice;
 
     /**
-     * gasLimit
+     * Send an EIP-1559 (type 2) transaction instead of a legacy one, chainId must be set
+     *
+     * It is turned on by setting maxFeePerGas or maxPriorityFeePerGas,
+     * the fees left out are suggested by the GasOracle shared by the Web3j.
+     */
+    private boolean eip1559;
+
+    /**
+     * maxFeePerGas of an EIP-1559 transaction
      *
      * If you want to use the default value, you can pass null directly or leave this parameter out.
      */
+    private BigInteger maxFeePerGas;
+
+    /**
+     * maxPriorityFeePerGas of an EIP-1559 transaction
+     *
+     * If you want to use the default value, you can pass null directly or leave this parameter out.
+     */
+    private BigInteger maxPriorityFeePerGas;
+
+    /**
+     * gasLimit
+     *
+     * If you want to use the default value, you can pass null directly or leave this parameter out,
+     * it is then estimated by the GasEstimator shared by the Web3j.
+     */
     private BigInteger gasLimit;
 
     /**
      * nonce
+     *
+     * If you leave it out, it is allocated by the NonceManager shared by the Web3j,
+     * so concurrent sends from the same address get consecutive nonces.
      */
     private BigInteger nonce;
 
@@ -86,6 +122,15 @@ public class SendModel {
         return this;
     }
 
+    public Signer getSigner() {
+        return signer;
+    }
+
+    public SendModel setSigner(Signer signer) {
+        this.signer = signer;
+        return this;
+    }
+
     public BigInteger getValue() {
         return value;
     }
@@ -104,6 +149,39 @@ public class SendModel {
         return this;
     }
 
+    public boolean isEip1559() {
+        return eip1559;
+    }
+
+    public SendModel setEip1559(boolean eip1559) {
+        this.eip1559 = eip1559;
+        return this;
+    }
+
+    public BigInteger getMaxFeePerGas() {
+        return maxFeePerGas;
+    }
+
+    public SendModel setMaxFeePerGas(BigInteger maxFeePerGas) {
+        this.maxFeePerGas = maxFeePerGas;
+        if(maxFeePerGas != null){
+            this.eip1559 = true;
+        }
+        return this;
+    }
+
+    public BigInteger getMaxPriorityFeePerGas() {
+        return maxPriorityFeePerGas;
+    }
+
+    public SendModel setMaxPriorityFeePerGas(BigInteger maxPriorityFeePerGas) {
+        this.maxPriorityFeePerGas = maxPriorityFeePerGas;
+        if(maxPriorityFeePerGas != null){
+            this.eip1559 = true;
+        }
+        return this;
+    }
+
     public BigInteger getGasLimit() {
         return gasLimit;
     }
@@ -0,0 +1,437 @@
+package com.blockchain.tools.eth.event;
+
+import com.blockchain.tools.eth.codec.CalldataDecoder;
+import com.blockchain.tools.eth.codec.SelectorRegistry;
+import com.blockchain.tools.eth.event.model.DecodedCall;
+import com.blockchain.tools.eth.event.model.ScannedBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.abi.TypeReference;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Walks blocks one by one and decodes the calls made to watched contracts
+ *
+ * Several blocks are fetched at the same time and handed to the listener in block order on the calling thread.
+ * When contracts or topics are watched, the header is fetched first and its logsBloom is tested,
+ * the transactions of a block are only fetched if the bloom says it may hold a log of a watched contract with the watched topics.
+ * The calldata of transactions to the watched contracts is decoded with the functions registered on the scanner, or a {@link SelectorRegistry}:
+ * <pre>
+ * BlockScanner.builder(web3j)
+ *         .setContractAddresses("0x428862f821b1A5eFff5B258583572451229eEeA6")
+ *         .addTopic(EventTopics.TRANSFER)
+ *         .addFunction("transfer", new TypeReference&lt;Address&gt;(){}, new TypeReference&lt;Uint256&gt;(){})
+ *         .setFromBlock(BigInteger.valueOf(30000000))
+ *         .run(block -&gt; { ... });
+ * </pre>
+ * The bloom only covers logs, so with contracts or topics set, a block where the watched contracts were called
+ * without emitting a matching log is skipped. Leave both empty to fetch every block in full.
+ */
+public class BlockScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockScanner.class);
+
+    /**
+     * Runs the eth_getBlockByNumber requests, the threads only wait on the node
+     */
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-block-scanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Default number of blocks fetched at the same time
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    /**
+     * Default milliseconds between two polls of the head, once the scanner has caught up
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    /**
+     * Default number of retries of a block before giving up
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Number of bytes of a logsBloom
+     */
+    private static final int BLOOM_BYTES = 256;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Contracts whose calls are decoded, lower case, all contracts if empty
+     */
+    private Set<String> contractAddresses = new HashSet<>();
+
+    /**
+     * Bloom bits of each watched contract
+     */
+    private List<int[]> contractBits = new ArrayList<>();
+
+    /**
+     * Bloom bits of the options of each watched topic position, null matches anything
+     */
+    private List<List<int[]>> topicBits = new ArrayList<>();
+
+    /**
+     * Decoders of the functions whose calldata is decoded
+     */
+    private SelectorRegistry selectorRegistry = SelectorRegistry.builder(false);
+
+    private BigInteger fromBlock = BigInteger.ZERO;
+
+    /**
+     * Last block to scan, if null the scanner follows the head until stop is called
+     */
+    private BigInteger toBlock;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private volatile boolean running;
+
+    private BlockScanner(Web3j web3j){
+        this.web3j = web3j;
+    }
+
+    public static BlockScanner builder(Web3j web3j){
+        return new BlockScanner(web3j);
+    }
+
+    public BlockScanner setContractAddresses(String... contractAddresses) {
+        this.contractAddresses = new HashSet<>();
+        this.contractBits = new ArrayList<>();
+        for(String contractAddress : contractAddresses){
+            this.contractAddresses.add(contractAddress.toLowerCase());
+            this.contractBits.add(bloomBits(Numeric.hexStringToByteArray(contractAddress)));
+        }
+        return this;
+    }
+
+    /**
+     * Add the filter of the next topic position, the first call filters topic0
+     * @param options the topic matches any of them, none to match anything
+     * @return
+     */
+    public BlockScanner addTopic(String... options){
+        if(options == null || options.length == 0){
+            topicBits.add(null);
+            return this;
+        }
+        List<int[]> bits = new ArrayList<>(options.length);
+        for(String option : options){
+            bits.add(bloomBits(Numeric.hexStringToByteArray(option)));
+        }
+        topicBits.add(bits);
+        return this;
+    }
+
+    /**
+     * Register a function whose calldata is decoded
+     * @param functionName
+     * @param parameterTypes
+     * @return
+     */
+    public BlockScanner addFunction(String functionName, TypeReference<?>... parameterTypes){
+        selectorRegistry.register(functionName, parameterTypes);
+        return this;
+    }
+
+    /**
+     * Decode the calldata with the functions of a registry, e.g. SelectorRegistry.builder() for the token standards.
+     * Replaces the functions added so far
+     * @param selectorRegistry
+     * @return
+     */
+    public BlockScanner setSelectorRegistry(SelectorRegistry selectorRegistry) {
+        this.selectorRegistry = selectorRegistry;
+        return this;
+    }
+
+    public BlockScanner setFromBlock(BigInteger fromBlock) {
+        this.fromBlock = fromBlock;
+        return this;
+    }
+
+    public BlockScanner setToBlock(BigInteger toBlock) {
+        this.toBlock = toBlock;
+        return this;
+    }
+
+    public BlockScanner setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public BlockScanner setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    public BlockScanner setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Stop a run after the block being handed out, from any thread
+     */
+    public void stop(){
+        running = false;
+    }
+
+    /**
+     * Scan the blocks
+     *
+     * The listener is called on the calling thread once per block, in block order, also for skipped blocks,
+     * so the number of the last block can be saved to resume from.
+     * Without a toBlock the run follows the head until stop is called
+     * @param listener
+     * @throws Exception if a block can not be read after the retries, or the listener fails
+     */
+    public void run(ScanListener listener) throws Exception {
+        running = true;
+        long last = toBlock != null ? toBlock.longValue() : latestBlock();
+        long cursor = fromBlock.longValue();
+
+        Deque<CompletableFuture<ScannedBlock>> inFlight = new ArrayDeque<>();
+        try {
+            while (running){
+                while (inFlight.size() < parallelism && cursor <= last){
+                    long blockNumber = cursor;
+                    inFlight.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return fetch(blockNumber, 0);
+                        } catch (Exception e){
+                            throw new CompletionException(e);
+                        }
+                    }, FETCH_EXECUTOR));
+                    cursor++;
+                }
+
+                if(inFlight.isEmpty()){
+                    if(toBlock != null){
+                        break;
+                    }
+                    // Caught up with the head, wait for the next block
+                    last = latestBlock();
+                    if(cursor > last){
+                        Thread.sleep(pollInterval);
+                    }
+                    continue;
+                }
+
+                listener.onBlock(await(inFlight.poll()));
+            }
+        } finally {
+            running = false;
+            for(CompletableFuture<ScannedBlock> pending : inFlight){
+                pending.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Read one block, only its header if the bloom rules it out
+     * @param blockNumber
+     * @param attempt
+     * @return
+     * @throws Exception
+     */
+    private ScannedBlock fetch(long blockNumber, int attempt) throws Exception {
+        ScannedBlock scannedBlock = new ScannedBlock();
+        scannedBlock.setBlockNumber(BigInteger.valueOf(blockNumber));
+        try {
+            if(!contractBits.isEmpty() || !topicBits.isEmpty()){
+                EthBlock.Block header = getBlock(blockNumber, false);
+                if(!mayContain(header.getLogsBloom())){
+                    scannedBlock.setBlock(header);
+                    scannedBlock.setSkipped(true);
+                    scannedBlock.setCalls(Collections.emptyList());
+                    return scannedBlock;
+                }
+            }
+            EthBlock.Block block = getBlock(blockNumber, true);
+            scannedBlock.setBlock(block);
+            scannedBlock.setCalls(decode(block));
+            return scannedBlock;
+        } catch (Exception e){
+            if(attempt >= maxRetries){
+                throw new Exception("eth_getBlockByNumber failed for block " + blockNumber + ": " + e.getMessage(), e);
+            }
+            logger.debug("eth_getBlockByNumber failed for block " + blockNumber + ", retrying: " + e.getMessage());
+            Thread.sleep(200L * (attempt + 1));
+            return fetch(blockNumber, attempt + 1);
+        }
+    }
+
+    private EthBlock.Block getBlock(long blockNumber, boolean fullTransactions) throws Exception {
+        EthBlock ethBlock = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), fullTransactions).send();
+        if(ethBlock.hasError()){
+            throw new Exception(ethBlock.getError().getMessage());
+        }
+        if(ethBlock.getBlock() == null){
+            // The node behind the load balancer has not seen the block yet
+            throw new Exception("block " + blockNumber + " is not available");
+        }
+        return ethBlock.getBlock();
+    }
+
+    /**
+     * Decode the calldata of the transactions to the watched contracts
+     * @param block
+     * @return
+     */
+    private List<DecodedCall> decode(EthBlock.Block block){
+        List<EthBlock.TransactionResult> transactions = block.getTransactions();
+        if(selectorRegistry.size() == 0 || transactions == null){
+            return Collections.emptyList();
+        }
+        List<DecodedCall> calls = new ArrayList<>();
+        for(EthBlock.TransactionResult result : transactions){
+            Transaction transaction = (Transaction) result.get();
+            String to = transaction.getTo();
+            String input = transaction.getInput();
+            if(to == null){
+                continue;
+            }
+            if(!contractAddresses.isEmpty() && !contractAddresses.contains(to.toLowerCase())){
+                continue;
+            }
+            CalldataDecoder decoder = selectorRegistry.get(input);
+            if(decoder == null){
+                continue;
+            }
+            try {
+                DecodedCall call = new DecodedCall();
+                call.setTransaction(transaction);
+                call.setFunctionName(decoder.getFunctionName());
+                call.setSelector(decoder.getSelector());
+                call.setValues(decoder.decode(input));
+                calls.add(call);
+            } catch (Exception e){
+                // Calldata that does not fit the registered types, e.g. a selector clash
+                logger.debug("failed to decode the input of " + transaction.getHash() + ": " + e.getMessage());
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Whether the bloom may hold a log of a watched contract with the watched topics
+     * @param logsBloom
+     * @return
+     */
+    private boolean mayContain(String logsBloom){
+        if(logsBloom == null){
+            return true;
+        }
+        byte[] bloom = Numeric.hexStringToByteArray(logsBloom);
+        if(bloom.length != BLOOM_BYTES){
+            return true;
+        }
+        if(!contractBits.isEmpty() && !anyIn(bloom, contractBits)){
+            return false;
+        }
+        for(List<int[]> options : topicBits){
+            if(options != null && !anyIn(bloom, options)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean anyIn(byte[] bloom, List<int[]> items){
+        for(int[] bits : items){
+            if(isSet(bloom, bits[0]) && isSet(bloom, bits[1]) && isSet(bloom, bits[2])){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param bloom
+     * @param bit bit index counted from the low order end of the bloom
+     * @return
+     */
+    private static boolean isSet(byte[] bloom, int bit){
+        return (bloom[BLOOM_BYTES - 1 - bit / 8] & (1 << (bit % 8))) != 0;
+    }
+
+    /**
+     * The 3 bloom bits of an item, from the first 3 pairs of bytes of its Keccak hash
+     * @param item
+     * @return
+     */
+    private static int[] bloomBits(byte[] item){
+        byte[] hash = Hash.sha3(item);
+        int[] bits = new int[3];
+        for(int i = 0; i < 3; i++){
+            bits[i] = ((hash[2 * i] & 0x07) << 8) | (hash[2 * i + 1] & 0xff);
+        }
+        return bits;
+    }
+
+    private long latestBlock() throws Exception {
+        EthBlockNumber ethBlockNumber = web3j.ethBlockNumber().send();
+        if(ethBlockNumber.hasError()){
+            throw new Exception(ethBlockNumber.getError().getMessage());
+        }
+        return ethBlockNumber.getBlockNumber().longValue();
+    }
+
+    private ScannedBlock await(CompletableFuture<ScannedBlock> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception){
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Receives the scanned blocks
+     */
+    public interface ScanListener {
+
+        /**
+         * @param block the next block, in block order
+         * @throws Exception stops the run
+         */
+        void onBlock(ScannedBlock block) throws Exception;
+    }
+}
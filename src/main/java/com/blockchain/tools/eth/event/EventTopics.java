@@ -0,0 +1,59 @@
+package com.blockchain.tools.eth.event;
+
+import org.web3j.crypto.Hash;
+
+/**
+ * topic0 of the token standard events, the Keccak hash of the event signature
+ */
+public class EventTopics {
+
+    /**
+     * Transfer(address,address,uint256), ERC20 and ERC721
+     *
+     * ERC20 keeps the amount in the data, ERC721 indexes the token id as the fourth topic
+     */
+    public static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    /**
+     * Approval(address,address,uint256), ERC20 and ERC721
+     */
+    public static final String APPROVAL = "0x8c5be1e5ebec7d5bd14f71427d1e84f3dd0314c0f7b2291e5b200ac8c7c3b925";
+
+    /**
+     * ApprovalForAll(address,address,bool), ERC721 and ERC1155
+     */
+    public static final String APPROVAL_FOR_ALL = "0x17307eab39ab6107e8899845ad3d59bd9653f200f220920489ca2b5937696c31";
+
+    /**
+     * TransferSingle(address,address,address,uint256,uint256), ERC1155
+     */
+    public static final String TRANSFER_SINGLE = "0xc3d58168c5ae7397731d063d5bbf3d657854427343f4c083240f7aacaa2d0f62";
+
+    /**
+     * TransferBatch(address,address,address,uint256[],uint256[]), ERC1155
+     */
+    public static final String TRANSFER_BATCH = "0x4a39dc06d4c0dbc64b70af90fd698a233a518aa5d07e595d983b8c0526c8f7fb";
+
+    /**
+     * topic0 of any event
+     * @param signature canonical signature, e.g. Transfer(address,address,uint256)
+     * @return
+     */
+    public static String of(String signature){
+        return Hash.sha3String(signature);
+    }
+
+    /**
+     * Topic of an indexed address, left padded to 32 bytes
+     * @param address
+     * @return
+     */
+    public static String address(String address){
+        String hex = address.startsWith("0x") || address.startsWith("0X") ? address.substring(2) : address;
+        StringBuilder topic = new StringBuilder(66).append("0x");
+        for(int i = hex.length(); i < 64; i++){
+            topic.append('0');
+        }
+        return topic.append(hex.toLowerCase()).toString();
+    }
+}
@@ -0,0 +1,365 @@
+package com.blockchain.tools.eth.event;
+
+import com.blockchain.tools.eth.rpc.RpcErrors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the logs of a block range with eth_getLogs, in windows
+ *
+ * Nodes limit the range or the number of results of one eth_getLogs, so the range is walked in windows.
+ * A window the node refuses as too large is split in half and the window shrinks, every success lets it grow again.
+ * Any other failure, e.g. the node can not be reached, is retried with a backoff and then fails the run.
+ * Several windows are fetched at the same time, and the logs are delivered in block order on the calling thread:
+ * <pre>
+ * LogIndexer.builder(web3j)
+ *         .setContractAddresses("0x428862f821b1A5eFff5B258583572451229eEeA6")
+ *         .addTopic(EventTopics.TRANSFER)
+ *         .setFromBlock(BigInteger.valueOf(30000000))
+ *         .run((fromBlock, toBlock, logs) -&gt; { ... });
+ * </pre>
+ */
+public class LogIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogIndexer.class);
+
+    /**
+     * Runs the eth_getLogs requests, the threads only wait on the node
+     */
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-log-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Default number of blocks of the first window
+     */
+    public static final long DEFAULT_WINDOW = 2000;
+
+    /**
+     * Default largest window
+     */
+    public static final long DEFAULT_MAX_WINDOW = 10000;
+
+    /**
+     * Default number of windows fetched at the same time
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Default number of retries of a window that fails for another reason than its size
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * native web3j
+     */
+    private Web3j web3j;
+
+    /**
+     * Contracts whose logs are read, all contracts if empty
+     */
+    private List<String> contractAddresses = new ArrayList<>();
+
+    /**
+     * Topic filters by position, each one matches any of its options, null matches anything
+     */
+    private List<String[]> topics = new ArrayList<>();
+
+    private BigInteger fromBlock = BigInteger.ZERO;
+
+    /**
+     * Last block to read, the latest block when the run starts if null
+     */
+    private BigInteger toBlock;
+
+    /**
+     * Number of blocks of the next window
+     */
+    private final AtomicLong window = new AtomicLong(DEFAULT_WINDOW);
+
+    private long maxWindow = DEFAULT_MAX_WINDOW;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private LogIndexer(Web3j web3j){
+        this.web3j = web3j;
+    }
+
+    public static LogIndexer builder(Web3j web3j){
+        return new LogIndexer(web3j);
+    }
+
+    public LogIndexer setContractAddresses(String... contractAddresses) {
+        this.contractAddresses = Arrays.asList(contractAddresses);
+        return this;
+    }
+
+    /**
+     * Add the filter of the next topic position, the first call filters topic0
+     * @param options the topic matches any of them, none to match anything
+     * @return
+     */
+    public LogIndexer addTopic(String... options){
+        topics.add(options == null || options.length == 0 ? null : options);
+        return this;
+    }
+
+    public LogIndexer setFromBlock(BigInteger fromBlock) {
+        this.fromBlock = fromBlock;
+        return this;
+    }
+
+    public LogIndexer setToBlock(BigInteger toBlock) {
+        this.toBlock = toBlock;
+        return this;
+    }
+
+    /**
+     * Number of blocks of the first window
+     * @param window
+     * @return
+     */
+    public LogIndexer setWindow(long window) {
+        this.window.set(window);
+        return this;
+    }
+
+    public LogIndexer setMaxWindow(long maxWindow) {
+        this.maxWindow = maxWindow;
+        return this;
+    }
+
+    public LogIndexer setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public LogIndexer setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Number of blocks of the next window, after the adjustments made so far
+     * @return
+     */
+    public long getWindow() {
+        return window.get();
+    }
+
+    /**
+     * Read the logs of the whole range
+     *
+     * The listener is called on the calling thread once per window, in block order, also for windows without logs,
+     * so the toBlock of the last call can be saved to resume from
+     * @param listener
+     * @throws Exception if a window can not be read after the retries, or the listener fails
+     */
+    public void run(LogListener listener) throws Exception {
+        long last = toBlock != null ? toBlock.longValue() : latestBlock();
+        long cursor = fromBlock.longValue();
+
+        Deque<Window> inFlight = new ArrayDeque<>();
+        try {
+            while (cursor <= last || !inFlight.isEmpty()){
+                while (inFlight.size() < parallelism && cursor <= last){
+                    long from = cursor;
+                    long to = Math.min(last, from + Math.max(1, window.get()) - 1);
+                    inFlight.add(new Window(from, to, CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return fetch(from, to, 0);
+                        } catch (Exception e){
+                            throw new CompletionException(e);
+                        }
+                    }, FETCH_EXECUTOR)));
+                    cursor = to + 1;
+                }
+
+                Window next = inFlight.poll();
+                listener.onLogs(BigInteger.valueOf(next.from), BigInteger.valueOf(next.to), await(next.logs));
+            }
+        } finally {
+            for(Window pending : inFlight){
+                pending.logs.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Read the logs of a window, splitting it while the node refuses it as too large
+     * @param from
+     * @param to
+     * @param attempt
+     * @return
+     * @throws Exception
+     */
+    private List<Log> fetch(long from, long to, int attempt) throws Exception {
+        EthLog ethLog;
+        try {
+            ethLog = web3j.ethGetLogs(filter(from, to)).send();
+        } catch (IOException e){
+            // The node could not be reached, a smaller window would not help
+            return retry(from, to, attempt, e.getMessage());
+        }
+        if(!ethLog.hasError()){
+            grow(to - from + 1);
+            return toLogs(ethLog);
+        }
+
+        String error = ethLog.getError().getMessage();
+        if(!RpcErrors.isTooLarge(ethLog.getError())){
+            return retry(from, to, attempt, error);
+        }
+        if(to == from){
+            throw new Exception("eth_getLogs refuses block " + from + " on its own: " + error);
+        }
+
+        // Too many blocks or results, try the halves with a smaller window from now on
+        shrink(to - from + 1);
+        long middle = from + (to - from) / 2;
+        logger.debug("eth_getLogs refused blocks " + from + "-" + to + ", splitting: " + error);
+        List<Log> logs = fetch(from, middle, 0);
+        logs.addAll(fetch(middle + 1, to, 0));
+        return logs;
+    }
+
+    /**
+     * Send the same window again after a backoff
+     * @param from
+     * @param to
+     * @param attempt
+     * @param error
+     * @return
+     * @throws Exception once the retries are used up
+     */
+    private List<Log> retry(long from, long to, int attempt, String error) throws Exception {
+        if(attempt >= maxRetries){
+            throw new Exception("eth_getLogs failed for blocks " + from + "-" + to + ": " + error);
+        }
+        logger.debug("eth_getLogs failed for blocks " + from + "-" + to + ", retrying: " + error);
+        Thread.sleep(250L << attempt);
+        return fetch(from, to, attempt + 1);
+    }
+
+    private EthFilter filter(long from, long to){
+        EthFilter filter = new EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
+                contractAddresses
+        );
+        for(String[] options : topics){
+            if(options == null){
+                filter.addNullTopic();
+            } else if(options.length == 1){
+                filter.addSingleTopic(options[0]);
+            } else {
+                filter.addOptionalTopics(options);
+            }
+        }
+        return filter;
+    }
+
+    private List<Log> toLogs(EthLog ethLog){
+        List<EthLog.LogResult> results = ethLog.getLogs();
+        List<Log> logs = new ArrayList<>(results == null ? 0 : results.size());
+        if(results != null){
+            for(EthLog.LogResult result : results){
+                logs.add((Log) result.get());
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * A window of this size failed, the next ones are half of it
+     * @param failedSize
+     */
+    private void shrink(long failedSize){
+        window.accumulateAndGet(Math.max(1, failedSize / 2), Math::min);
+    }
+
+    /**
+     * A window of this size succeeded, if it was a full window the next ones may be a quarter larger
+     * @param size
+     */
+    private void grow(long size){
+        long grown = Math.min(maxWindow, size + size / 4 + 1);
+        window.accumulateAndGet(grown, (current, candidate) -> size >= current ? Math.max(current, candidate) : current);
+    }
+
+    private long latestBlock() throws Exception {
+        EthBlockNumber ethBlockNumber = web3j.ethBlockNumber().send();
+        if(ethBlockNumber.hasError()){
+            throw new Exception(ethBlockNumber.getError().getMessage());
+        }
+        return ethBlockNumber.getBlockNumber().longValue();
+    }
+
+    private List<Log> await(CompletableFuture<List<Log>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception){
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A window being fetched
+     */
+    private static class Window {
+
+        private final long from;
+
+        private final long to;
+
+        private final CompletableFuture<List<Log>> logs;
+
+        private Window(long from, long to, CompletableFuture<List<Log>> logs){
+            this.from = from;
+            this.to = to;
+            this.logs = logs;
+        }
+    }
+
+    /**
+     * Receives the logs of each window
+     */
+    public interface LogListener {
+
+        /**
+         * @param fromBlock first block of the window
+         * @param toBlock last block of the window
+         * @param logs logs of the window in block order, may be empty
+         * @throws Exception stops the run
+         */
+        void onLogs(BigInteger fromBlock, BigInteger toBlock, List<Log> logs) throws Exception;
+    }
+}
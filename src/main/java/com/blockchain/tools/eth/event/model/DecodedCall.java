@@ -0,0 +1,61 @@
+package com.blockchain.tools.eth.event.model;
+
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.List;
+
+/**
+ * A transaction whose calldata matched a registered function
+ */
+public class DecodedCall {
+
+    private Transaction transaction;
+
+    /**
+     * Name of the matched function
+     */
+    private String functionName;
+
+    /**
+     * First 4 bytes of the calldata, e.g. 0xa9059cbb
+     */
+    private String selector;
+
+    /**
+     * Arguments decoded with the types the function was registered with
+     */
+    private List<Type> values;
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public void setTransaction(Transaction transaction) {
+        this.transaction = transaction;
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    public void setFunctionName(String functionName) {
+        this.functionName = functionName;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    public void setSelector(String selector) {
+        this.selector = selector;
+    }
+
+    public List<Type> getValues() {
+        return values;
+    }
+
+    public void setValues(List<Type> values) {
+        this.values = values;
+    }
+}
@@ -0,0 +1,61 @@
+package com.blockchain.tools.eth.event.model;
+
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * A block handed out by the BlockScanner
+ */
+public class ScannedBlock {
+
+    private BigInteger blockNumber;
+
+    /**
+     * The block, only the header with transaction hashes if it was skipped
+     */
+    private EthBlock.Block block;
+
+    /**
+     * Whether the logsBloom of the header ruled the block out, so its transactions were not fetched
+     */
+    private boolean skipped;
+
+    /**
+     * Transactions to the watched contracts whose calldata matched a registered function, in block order
+     */
+    private List<DecodedCall> calls;
+
+    public BigInteger getBlockNumber() {
+        return blockNumber;
+    }
+
+    public void setBlockNumber(BigInteger blockNumber) {
+        this.blockNumber = blockNumber;
+    }
+
+    public EthBlock.Block getBlock() {
+        return block;
+    }
+
+    public void setBlock(EthBlock.Block block) {
+        this.block = block;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    public List<DecodedCall> getCalls() {
+        return calls;
+    }
+
+    public void setCalls(List<DecodedCall> calls) {
+        this.calls = calls;
+    }
+}
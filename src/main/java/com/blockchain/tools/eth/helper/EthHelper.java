@@ -1,8 +1,15 @@
 package com.blockchain.tools.eth.helper;
 
-import org.web3j.crypto.Credentials;
+import com.blockchain.tools.eth.address.AddressSet;
+import com.blockchain.tools.eth.contract.util.EthContractUtil;
+import com.blockchain.tools.eth.contract.util.Futures;
+import com.blockchain.tools.eth.contract.util.model.SendModel;
+import com.blockchain.tools.eth.signer.SignerRegistry;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.response.EthGetBalance;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.tx.Transfer;
@@ -11,23 +18,53 @@ import org.web3j.utils.Convert;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ETH coin balance inquiry and other management methods
  */
 public class EthHelper {
 
+    /**
+     * Number of balances queried per JSON-RPC batch in a sweep
+     */
+    private static final int SWEEP_BATCH_SIZE = 100;
+
     /**
      * native web3j
      */
     private Web3j web3j;
 
-    private EthHelper(Web3j web3j){
+    /**
+     * Block the balances are read at
+     */
+    private DefaultBlockParameter blockParameter;
+
+    /**
+     * Sends the async transfers, with the nonce manager and receipt watcher shared on this web3j
+     */
+    private EthContractUtil ethContractUtil;
+
+    private EthHelper(Web3j web3j, DefaultBlockParameter blockParameter){
         this.web3j = web3j;
+        this.blockParameter = blockParameter;
+        this.ethContractUtil = EthContractUtil.builder(web3j);
     }
 
     public static EthHelper builder(Web3j web3j){
-        return new EthHelper(web3j);
+        return new EthHelper(web3j, DefaultBlockParameterName.LATEST);
+    }
+
+    /**
+     * Read the balances at the given block instead of LATEST
+     * @param web3j
+     * @param blockParameter
+     * @return
+     */
+    public static EthHelper builder(Web3j web3j, DefaultBlockParameter blockParameter){
+        return new EthHelper(web3j, blockParameter);
     }
 
     /**
@@ -42,13 +79,49 @@ public class EthHelper {
     public TransactionReceipt transfer(String toAddress, String privateKey, BigDecimal value, Convert.Unit unit) throws Exception {
         return Transfer.sendFunds(
                 web3j,
-                Credentials.create(privateKey),
+                SignerRegistry.get(privateKey).getCredentials(),
                 toAddress,
                 value,
                 unit
         ).send();
     }
 
+    /**
+     * Transfer ETH coins to the specified address without blocking the caller
+     *
+     * Like {@link #transfer(String, String, BigDecimal, Convert.Unit)} it sends a legacy transaction with a gas limit of 21000,
+     * the nonce comes from the NonceManager of the web3j and the receipt from its ReceiptWatcher
+     * @param toAddress
+     * @param privateKey
+     * @param value
+     * @param unit
+     * @return completes exceptionally if the transaction fails or no receipt is found before the watcher times out
+     */
+    public CompletableFuture<TransactionReceipt> transferAsync(String toAddress, String privateKey, BigDecimal value, Convert.Unit unit) {
+        SendModel sendModel;
+        try {
+            sendModel = SendModel.builder()
+                    .setSigner(SignerRegistry.get(privateKey))
+                    .setToAddress(toAddress)
+                    .setValue(Convert.toWei(value, unit).toBigIntegerExact())
+                    .setGasLimit(Transfer.GAS_LIMIT);
+        } catch (Exception e){
+            return Futures.failed(e);
+        }
+
+        return ethContractUtil.sendRawTransactionAsync(sendModel, "0x").thenApply(Futures.unchecked(sendResultModel -> {
+            String transactionHash = sendResultModel.getEthSendTransaction().getTransactionHash();
+            TransactionReceipt receipt = sendResultModel.getEthGetTransactionReceipt().getResult();
+            if(receipt == null){
+                throw new Exception("no receipt for transaction " + transactionHash + " before the timeout");
+            }
+            if(!receipt.isStatusOK()){
+                throw new Exception("transaction " + transactionHash + " failed with status " + receipt.getStatus());
+            }
+            return receipt;
+        }));
+    }
+
     /**
      * Query the ETH coin balance under the specified address
      * @param fromAddress
@@ -56,7 +129,59 @@ public class EthHelper {
      * @throws IOException
      */
     public BigInteger balanceOf(String fromAddress) throws IOException {
-        EthGetBalance ethGetBalance = web3j.ethGetBalance(fromAddress, DefaultBlockParameterName.LATEST).send();
+        EthGetBalance ethGetBalance = web3j.ethGetBalance(fromAddress, blockParameter).send();
         return ethGetBalance.getBalance();
     }
+
+    /**
+     * Query the ETH coin balance under the specified address without blocking the caller
+     * @param fromAddress
+     * @return
+     */
+    public CompletableFuture<BigInteger> balanceOfAsync(String fromAddress) {
+        return web3j.ethGetBalance(fromAddress, blockParameter).sendAsync().thenApply(EthGetBalance::getBalance);
+    }
+
+    /**
+     * Query the ETH coin balance of every address of the set, in JSON-RPC batches of 100
+     * @param addresses
+     * @param consumer receives each address with its balance
+     * @throws Exception
+     */
+    public void balanceOf(AddressSet addresses, BalanceConsumer consumer) throws Exception {
+        List<String> chunk = new ArrayList<>(SWEEP_BATCH_SIZE);
+        addresses.forEach(address -> {
+            chunk.add(address);
+            if(chunk.size() == SWEEP_BATCH_SIZE){
+                balanceOf(chunk, consumer);
+                chunk.clear();
+            }
+        });
+        if(!chunk.isEmpty()){
+            balanceOf(chunk, consumer);
+        }
+    }
+
+    private void balanceOf(List<String> addresses, BalanceConsumer consumer) throws Exception {
+        BatchRequest batchRequest = web3j.newBatch();
+        for(String address : addresses){
+            batchRequest.add(web3j.ethGetBalance(address, blockParameter));
+        }
+        List<? extends Response<?>> responses = batchRequest.send().getResponses();
+        for(int i = 0; i < addresses.size(); i++){
+            EthGetBalance ethGetBalance = (EthGetBalance) responses.get(i);
+            if(ethGetBalance.hasError()){
+                throw new Exception(ethGetBalance.getError().getMessage());
+            }
+            consumer.accept(addresses.get(i), ethGetBalance.getBalance());
+        }
+    }
+
+    /**
+     * Receives the balances of a sweep
+     */
+    public interface BalanceConsumer {
+
+        void accept(String address, BigInteger balance) throws Exception;
+    }
 }
@@ -0,0 +1,267 @@
+package com.blockchain.tools.eth.rpc;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges the JSON-RPC requests of concurrent callers into JSON-RPC batches
+ *
+ * A batch is sent when it reaches maxBatchSize or flushInterval after its first request, whichever comes first.
+ * Wrap the service of a Web3j with it and every read, balance query and receipt lookup of the tools built on that Web3j is batched:
+ * <pre>
+ * Web3j web3j = Web3j.build(BatchingWeb3jService.builder(new HttpService(url)));
+ * </pre>
+ */
+public class BatchingWeb3jService implements Web3jService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingWeb3jService.class);
+
+    /**
+     * Default maximum number of requests in one batch
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    /**
+     * Default time a request may wait for its batch to fill, in milliseconds
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 5;
+
+    /**
+     * The service that sends the batches
+     */
+    private Web3jService delegate;
+
+    /**
+     * Maximum number of requests in one batch
+     */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * Time a request may wait for its batch to fill, in milliseconds
+     */
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    /**
+     * Requests waiting for the next batch
+     */
+    private final ConcurrentLinkedQueue<PendingRequest> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    /**
+     * Whether a timed flush is scheduled
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "magician-rpc-batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "magician-rpc-batch-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BatchingWeb3jService(Web3jService delegate){
+        this.delegate = delegate;
+    }
+
+    public static BatchingWeb3jService builder(Web3jService delegate){
+        return new BatchingWeb3jService(delegate);
+    }
+
+    public BatchingWeb3jService setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public BatchingWeb3jService setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Queue a request for the next batch
+     * @param request
+     * @param responseType
+     * @param <T>
+     * @return a future completed with the response of this request
+     */
+    public <T extends Response> CompletableFuture<T> submit(Request request, Class<T> responseType){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        queue.add(new PendingRequest(request, future));
+
+        if(queueSize.incrementAndGet() >= maxBatchSize){
+            senders.execute(this::flush);
+        } else if(flushScheduled.compareAndSet(false, true)){
+            timer.schedule(() -> {
+                flushScheduled.set(false);
+                senders.execute(this::flush);
+            }, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return submit(request, responseType).get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the batch", e);
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return submit(request, responseType);
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return delegate.sendBatch(batchRequest);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return delegate.sendBatchAsync(batchRequest);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        timer.shutdown();
+        senders.shutdown();
+        delegate.close();
+    }
+
+    /**
+     * Send everything in the queue, in batches of at most maxBatchSize
+     */
+    private void flush(){
+        while (true){
+            List<PendingRequest> batch = new ArrayList<>(Math.min(maxBatchSize, Math.max(queueSize.get(), 1)));
+            PendingRequest pendingRequest;
+            while (batch.size() < maxBatchSize && (pendingRequest = queue.poll()) != null){
+                queueSize.decrementAndGet();
+                batch.add(pendingRequest);
+            }
+            if(batch.isEmpty()){
+                return;
+            }
+            sendBatch(batch);
+        }
+    }
+
+    /**
+     * Send one batch and complete the futures of its requests
+     * @param batch
+     */
+    @SuppressWarnings("unchecked")
+    private void sendBatch(List<PendingRequest> batch){
+        if(batch.size() == 1){
+            PendingRequest single = batch.get(0);
+            try {
+                single.future.complete(delegate.send(single.request, single.request.getResponseType()));
+            } catch (Exception e){
+                single.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        BatchRequest batchRequest = new BatchRequest(delegate);
+        for(PendingRequest pendingRequest : batch){
+            batchRequest.add(pendingRequest.request);
+        }
+
+        List<? extends Response<?>> responses;
+        try {
+            responses = delegate.sendBatch(batchRequest).getResponses();
+        } catch (Exception e){
+            logger.debug("batch of " + batch.size() + " requests failed: " + e.getMessage());
+            for(PendingRequest pendingRequest : batch){
+                pendingRequest.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        Map<Long, Response<?>> responsesById = new HashMap<>();
+        for(Response<?> response : responses){
+            if(response != null){
+                responsesById.put(response.getId(), response);
+            }
+        }
+
+        for(int i = 0; i < batch.size(); i++){
+            PendingRequest pendingRequest = batch.get(i);
+            Response<?> response = responsesById.get(pendingRequest.request.getId());
+            if(response == null && responses.size() == batch.size()){
+                response = responses.get(i);
+            }
+            if(response == null){
+                pendingRequest.future.completeExceptionally(new IOException("no response for request " + pendingRequest.request.getId() + " in the batch"));
+            } else {
+                pendingRequest.future.complete(response);
+            }
+        }
+    }
+
+    /**
+     * A request waiting for its batch
+     */
+    @SuppressWarnings("rawtypes")
+    private static class PendingRequest {
+
+        private final Request request;
+
+        private final CompletableFuture future;
+
+        private PendingRequest(Request request, CompletableFuture future){
+            this.request = request;
+            this.future = future;
+        }
+    }
+}
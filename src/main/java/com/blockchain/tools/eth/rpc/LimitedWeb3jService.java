@@ -0,0 +1,507 @@
+package com.blockchain.tools.eth.rpc;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the traffic to one node below what it accepts
+ *
+ * The number of requests in flight is bounded by a limit that adapts like TCP congestion control (AIMD):
+ * it grows by about one per round of requests while they succeed, and is cut by backoffRatio when the node throttles,
+ * i.e. answers with a rate limit error, an HTTP 429 or a timeout. A throttled request waits and is sent again.
+ * On top of that, a token bucket can cap the requests per second, for providers with a fixed quota:
+ * <pre>
+ * Web3j web3j = Web3j.build(LimitedWeb3jService.builder(new HttpService(url))
+ *         .setRateLimit(25));
+ * </pre>
+ * Wrap each endpoint of a PooledWeb3jService to limit every node on its own.
+ * sendAsync and sendBatchAsync do not hold a thread while they wait, they queue for a place and are sent when one is released
+ */
+public class LimitedWeb3jService implements Web3jService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LimitedWeb3jService.class);
+
+    /**
+     * Default number of requests in flight when nothing is known about the node
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 10;
+
+    public static final int DEFAULT_MIN_LIMIT = 1;
+
+    public static final int DEFAULT_MAX_LIMIT = 200;
+
+    /**
+     * Default factor applied to the limit when the node throttles
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+    /**
+     * Default number of times a throttled request is sent again
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Default wait before the first retry of a throttled request, doubled on each retry, in milliseconds
+     */
+    public static final long DEFAULT_RETRY_DELAY = 200;
+
+    /**
+     * Resumes the async requests once their tokens are refilled, their backoff is over or a place is released to them
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "magician-rpc-limited-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The service that sends the requests
+     */
+    private Web3jService delegate;
+
+    private int minLimit = DEFAULT_MIN_LIMIT;
+
+    private int maxLimit = DEFAULT_MAX_LIMIT;
+
+    private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /**
+     * Current number of requests allowed in flight
+     */
+    private double limit = DEFAULT_INITIAL_LIMIT;
+
+    private int inFlight;
+
+    /**
+     * Async requests waiting for a place, in arrival order
+     */
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private final ReentrantLock bucketLock = new ReentrantLock();
+
+    /**
+     * Requests per second of the token bucket, 0 if it is off
+     */
+    private double rateLimit;
+
+    /**
+     * Most tokens the bucket holds
+     */
+    private double burst;
+
+    /**
+     * Tokens in the bucket, negative when requests have reserved tokens not yet refilled
+     */
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    private LimitedWeb3jService(Web3jService delegate){
+        this.delegate = delegate;
+    }
+
+    public static LimitedWeb3jService builder(Web3jService delegate){
+        return new LimitedWeb3jService(delegate);
+    }
+
+    public LimitedWeb3jService setInitialLimit(int initialLimit) {
+        this.limit = initialLimit;
+        return this;
+    }
+
+    public LimitedWeb3jService setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    public LimitedWeb3jService setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    public LimitedWeb3jService setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    public LimitedWeb3jService setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public LimitedWeb3jService setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    /**
+     * Cap the requests per second, a batch takes one token per request
+     * @param rateLimit requests per second, 0 for no cap
+     * @return
+     */
+    public LimitedWeb3jService setRateLimit(double rateLimit) {
+        return setRateLimit(rateLimit, rateLimit);
+    }
+
+    /**
+     * @param rateLimit requests per second, 0 for no cap
+     * @param burst requests that may be sent at once after a quiet period
+     * @return
+     */
+    public LimitedWeb3jService setRateLimit(double rateLimit, double burst) {
+        bucketLock.lock();
+        try {
+            this.rateLimit = rateLimit;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+            this.lastRefill = System.nanoTime();
+        } finally {
+            bucketLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Current number of requests allowed in flight
+     * @return
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of times the node throttled a request
+     * @return
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        for(int attempt = 0; ; attempt++){
+            takeTokens(1);
+            acquire();
+            T response;
+            try {
+                response = delegate.send(request, responseType);
+            } catch (IOException e){
+                boolean throttled = Throttling.isThrottled(e);
+                release(throttled);
+                if(!throttled || attempt >= maxRetries){
+                    throw e;
+                }
+                backoff(request.getMethod(), attempt, e.getMessage());
+                continue;
+            } catch (RuntimeException e){
+                release(false);
+                throw e;
+            }
+
+            boolean throttled = Throttling.isThrottled(response);
+            release(throttled);
+            if(!throttled || attempt >= maxRetries){
+                return response;
+            }
+            backoff(request.getMethod(), attempt, response.getError().getMessage());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return sendAsync(request.getMethod(), 1, () -> delegate.sendAsync(request, responseType),
+                response -> Throttling.isThrottled(response) ? response.getError().getMessage() : null, 0);
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        for(int attempt = 0; ; attempt++){
+            takeTokens(Math.max(1, batchRequest.getRequests().size()));
+            acquire();
+            try {
+                BatchResponse response = delegate.sendBatch(batchRequest);
+                release(false);
+                return response;
+            } catch (IOException e){
+                boolean throttled = Throttling.isThrottled(e);
+                release(throttled);
+                if(!throttled || attempt >= maxRetries){
+                    throw e;
+                }
+                backoff("batch", attempt, e.getMessage());
+            } catch (RuntimeException e){
+                release(false);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return sendAsync("batch", Math.max(1, batchRequest.getRequests().size()), () -> delegate.sendBatchAsync(batchRequest),
+                response -> null, 0);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Send a request through the async methods of the delegate, like send but without waiting on a thread
+     * @param method name for the logs
+     * @param tokenCount tokens the request takes from the bucket
+     * @param sender sends the request once it has its place
+     * @param throttling the error message if the response is a throttle, null otherwise
+     * @param attempt
+     * @param <R>
+     * @return
+     */
+    private <R> CompletableFuture<R> sendAsync(String method, int tokenCount, Supplier<CompletableFuture<R>> sender,
+                                               Function<R, String> throttling, int attempt){
+        CompletableFuture<R> result = new CompletableFuture<>();
+        takeTokensAsync(tokenCount).thenCompose(ignored -> acquireAsync()).thenRun(() -> {
+            CompletableFuture<R> sent;
+            try {
+                sent = sender.get();
+            } catch (RuntimeException e){
+                release(false);
+                result.completeExceptionally(e);
+                return;
+            }
+            sent.whenComplete((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                boolean throttled;
+                String reason;
+                if(cause == null){
+                    reason = throttling.apply(response);
+                    throttled = reason != null;
+                } else {
+                    throttled = cause instanceof IOException && Throttling.isThrottled((IOException) cause);
+                    reason = cause.getMessage();
+                }
+                release(throttled);
+                if(!throttled || attempt >= maxRetries){
+                    if(cause == null){
+                        result.complete(response);
+                    } else {
+                        result.completeExceptionally(cause);
+                    }
+                    return;
+                }
+                CompletableFuture<Void> backoff = new CompletableFuture<>();
+                TIMER.schedule(() -> backoff.complete(null), backoffDelay(method, attempt, reason), TimeUnit.MILLISECONDS);
+                backoff.thenCompose(ignored -> sendAsync(method, tokenCount, sender, throttling, attempt + 1))
+                        .whenComplete((retried, retryError) -> {
+                            if(retryError == null){
+                                result.complete(retried);
+                            } else {
+                                result.completeExceptionally(retryError instanceof CompletionException && retryError.getCause() != null ? retryError.getCause() : retryError);
+                            }
+                        });
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Wait for a place under the limit
+     * @throws IOException if interrupted
+     */
+    private void acquire() throws IOException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit){
+                released.await();
+            }
+            inFlight++;
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the concurrency limit", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a place under the limit, or queue for one
+     * @return completed when the caller has the place
+     */
+    private CompletableFuture<Void> acquireAsync(){
+        lock.lock();
+        try {
+            if(waiters.isEmpty() && inFlight < (int) limit){
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free a place and adapt the limit to the outcome
+     * @param throttled
+     */
+    private void release(boolean throttled){
+        List<CompletableFuture<Void>> admitted = new ArrayList<>();
+        lock.lock();
+        try {
+            if(throttled){
+                throttledCount.incrementAndGet();
+                double reduced = Math.max(minLimit, limit * backoffRatio);
+                if((int) reduced < (int) limit){
+                    logger.debug("node throttled, concurrency limit " + (int) limit + " -> " + (int) reduced);
+                }
+                limit = reduced;
+            } else if(inFlight * 2 >= limit){
+                // Only grow while the limit is actually used, about one per round of requests
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            // Queued async requests get the free places first, a blocked send takes what is left
+            while (!waiters.isEmpty() && inFlight < (int) limit){
+                inFlight++;
+                admitted.add(waiters.poll());
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if(!admitted.isEmpty()){
+            // Not on this thread, it may be an I/O thread of the delegate
+            TIMER.execute(() -> admitted.forEach(waiter -> waiter.complete(null)));
+        }
+    }
+
+    /**
+     * Take tokens from the bucket, waiting for them if it is empty
+     * @param count
+     * @throws IOException if interrupted
+     */
+    private void takeTokens(int count) throws IOException {
+        long waitNanos = reserveTokens(count);
+        if(waitNanos > 0){
+            sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Take tokens from the bucket without waiting on a thread
+     * @param count
+     * @return completed when the tokens are refilled
+     */
+    private CompletableFuture<Void> takeTokensAsync(int count){
+        long waitNanos = reserveTokens(count);
+        if(waitNanos <= 0){
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> refilled = new CompletableFuture<>();
+        TIMER.schedule(() -> refilled.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        return refilled;
+    }
+
+    /**
+     * Reserve tokens now, so callers are served in order, and tell how long until they are refilled
+     * @param count
+     * @return nanoseconds to wait, 0 if the tokens are there
+     */
+    private long reserveTokens(int count){
+        bucketLock.lock();
+        try {
+            if(rateLimit <= 0){
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * rateLimit);
+            lastRefill = now;
+            tokens -= count;
+            return tokens >= 0 ? 0 : (long) (-tokens / rateLimit * 1e9);
+        } finally {
+            bucketLock.unlock();
+        }
+    }
+
+    /**
+     * Wait before sending a throttled request again
+     */
+    private void backoff(String method, int attempt, String reason) throws IOException {
+        sleep(TimeUnit.MILLISECONDS.toNanos(backoffDelay(method, attempt, reason)));
+    }
+
+    /**
+     * Wait before the next attempt of a throttled request, exponential with jitter
+     * @return milliseconds
+     */
+    private long backoffDelay(String method, int attempt, String reason){
+        long delay = retryDelay << attempt;
+        delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        logger.debug(method + " throttled (" + reason + "), retrying in " + delay + "ms");
+        return delay;
+    }
+
+    private static void sleep(long nanos) throws IOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while backing off", e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.blockchain.tools.eth.rpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.reactivex.Flowable;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for a JSON-RPC node
+ *
+ * Each JSON-RPC method is answered by a registered handler, so the tools can be exercised without a network:
+ * <pre>
+ * MockWeb3jService mock = MockWeb3jService.builder()
+ *         .on("eth_getBalance", params -&gt; "0xde0b6b3a7640000")
+ *         .setLatency(20);
+ * EthHelper ethHelper = EthHelper.builder(Web3j.build(BatchingWeb3jService.builder(mock)));
+ * </pre>
+ * It counts the HTTP round trips a real node would have served, see {@link #getRoundTrips()}
+ */
+public class MockWeb3jService implements Web3jService {
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+    /**
+     * Handlers keyed by JSON-RPC method
+     */
+    private final Map<String, RpcHandler> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * Simulated network latency of one round trip, in milliseconds
+     */
+    private long latency;
+
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private MockWeb3jService(){
+    }
+
+    public static MockWeb3jService builder(){
+        return new MockWeb3jService();
+    }
+
+    /**
+     * Answer a JSON-RPC method with the handler, the value it returns becomes the "result" of the response
+     * @param method
+     * @param handler
+     * @return
+     */
+    public MockWeb3jService on(String method, RpcHandler handler){
+        handlers.put(method, handler);
+        return this;
+    }
+
+    public MockWeb3jService setLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of round trips served, a batch counts as one
+     * @return
+     */
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    /**
+     * Number of JSON-RPC requests served, including the ones inside batches
+     * @return
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        roundTrips.incrementAndGet();
+        simulateLatency();
+        return answer(request, responseType);
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                future.complete(send(request, responseType));
+            } catch (Exception e){
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        roundTrips.incrementAndGet();
+        simulateLatency();
+
+        List<Response<?>> responses = new ArrayList<>(batchRequest.getRequests().size());
+        for(Request<?, ? extends Response<?>> request : batchRequest.getRequests()){
+            responses.add(answer(request, request.getResponseType()));
+        }
+        return new BatchResponse(batchRequest.getRequests(), responses);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        CompletableFuture<BatchResponse> future = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> {
+            try {
+                future.complete(sendBatch(batchRequest));
+            } catch (Exception e){
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        throw new UnsupportedOperationException("subscriptions are not supported by MockWeb3jService");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Build the response of one request with its handler
+     * @param request
+     * @param responseType
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    private <T extends Response> T answer(Request<?, ?> request, Class<T> responseType) throws IOException {
+        requests.incrementAndGet();
+
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("jsonrpc", "2.0");
+        node.put("id", request.getId());
+
+        RpcHandler handler = handlers.get(request.getMethod());
+        if(handler == null){
+            ObjectNode error = node.putObject("error");
+            error.put("code", -32601);
+            error.put("message", "the method " + request.getMethod() + " does not exist/is not available");
+        } else {
+            try {
+                node.set("result", objectMapper.valueToTree(handler.handle(new ArrayList<>(request.getParams()))));
+            } catch (Exception e){
+                ObjectNode error = node.putObject("error");
+                error.put("code", -32000);
+                error.put("message", e.getMessage());
+            }
+        }
+        return objectMapper.treeToValue(node, responseType);
+    }
+
+    private void simulateLatency() throws IOException {
+        if(latency <= 0){
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Answers one JSON-RPC method
+     */
+    public interface RpcHandler {
+
+        /**
+         * @param params the params of the request
+         * @return the result of the response, it is serialized with Jackson
+         * @throws Exception the message becomes the error message of the response
+         */
+        Object handle(List<Object> params) throws Exception;
+    }
+}
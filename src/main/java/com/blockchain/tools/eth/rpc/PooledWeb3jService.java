@@ -0,0 +1,589 @@
+package com.blockchain.tools.eth.rpc;
+
+import io.reactivex.Flowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Spreads JSON-RPC requests over several nodes
+ *
+ * Each node keeps an EWMA of its latency and error rate, a request goes to the healthy node with the best score.
+ * If it has not answered within hedgeDelay, the same request is sent to the next best node and the first answer wins.
+ * A node that fails failureThreshold times in a row is left out for openInterval, then one request tries it again.
+ * eth_sendRawTransaction is sent to every healthy node at once, so the transaction spreads even if one node drops it:
+ * <pre>
+ * Web3j web3j = Web3j.build(PooledWeb3jService.builder()
+ *         .addEndpoint("alchemy", new HttpService(url1))
+ *         .addEndpoint("infura", new HttpService(url2)));
+ * </pre>
+ * Filter methods keep state on the node, they always go to the first endpoint.
+ * The nodes are called through their sendAsync and sendBatchAsync, no thread waits for an answer
+ */
+public class PooledWeb3jService implements Web3jService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledWeb3jService.class);
+
+    /**
+     * Default time a request waits for its node before it is sent to another one, in milliseconds
+     */
+    public static final long DEFAULT_HEDGE_DELAY = 300;
+
+    /**
+     * Default number of failures in a row that take a node out
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time a failing node is left out, in milliseconds
+     */
+    public static final long DEFAULT_OPEN_INTERVAL = 10000;
+
+    /**
+     * Default number of nodes a request is sent to at most, hedges and retries included
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Weight of the newest sample in the EWMAs
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Methods that keep state on the node
+     */
+    private static final Set<String> STICKY_METHODS = new HashSet<>(Arrays.asList(
+            "eth_newFilter",
+            "eth_newBlockFilter",
+            "eth_newPendingTransactionFilter",
+            "eth_getFilterChanges",
+            "eth_getFilterLogs",
+            "eth_uninstallFilter"
+    ));
+
+    private static final String SEND_RAW_TRANSACTION = "eth_sendRawTransaction";
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "magician-rpc-pool-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Endpoint> endpoints = new CopyOnWriteArrayList<>();
+
+    private long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    private long openInterval = DEFAULT_OPEN_INTERVAL;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private PooledWeb3jService(){
+    }
+
+    public static PooledWeb3jService builder(){
+        return new PooledWeb3jService();
+    }
+
+    /**
+     * Add a node
+     * @param name shown in the logs and the stats
+     * @param service
+     * @return
+     */
+    public PooledWeb3jService addEndpoint(String name, Web3jService service){
+        endpoints.add(new Endpoint(name, service));
+        return this;
+    }
+
+    /**
+     * @param hedgeDelay milliseconds, 0 to never hedge
+     * @return
+     */
+    public PooledWeb3jService setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    public PooledWeb3jService setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    public PooledWeb3jService setOpenInterval(long openInterval) {
+        this.openInterval = openInterval;
+        return this;
+    }
+
+    public PooledWeb3jService setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * The nodes with their stats, in the order they were added
+     * @return
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return sendAsync(request, responseType).get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + request.getMethod(), e);
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        if(endpoints.isEmpty()){
+            return failed(new IOException("the pool has no endpoints"));
+        }
+        if(SEND_RAW_TRANSACTION.equals(request.getMethod())){
+            return broadcast(request, responseType);
+        }
+        if(STICKY_METHODS.contains(request.getMethod())){
+            return attempt(endpoints.get(0), request, responseType);
+        }
+        return new Call<>(request, responseType).start();
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        try {
+            return sendBatchAsync(batchRequest).get();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a batch", e);
+        } catch (ExecutionException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return sendBatchAsync(batchRequest, new HashSet<>(), null);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return endpoints.get(0).service.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(Endpoint endpoint : endpoints){
+            endpoint.service.close();
+        }
+    }
+
+    /**
+     * Send a signed transaction to every available node, the first accepted answer wins.
+     * If every node refuses it, the first refusal is returned, e.g. nonce too low
+     */
+    private <T extends Response> CompletableFuture<T> broadcast(Request request, Class<T> responseType){
+        List<Endpoint> targets = new ArrayList<>();
+        long now = System.nanoTime();
+        for(Endpoint endpoint : endpoints){
+            if(endpoint.tryAcquire(now)){
+                targets.add(endpoint);
+            }
+        }
+        if(targets.isEmpty()){
+            targets.addAll(endpoints);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Object[] firstRefusal = new Object[1];
+        Throwable[] lastError = new Throwable[1];
+        AtomicLong pending = new AtomicLong(targets.size());
+        ReentrantLock lock = new ReentrantLock();
+        for(Endpoint endpoint : targets){
+            attempt(endpoint, request, responseType).whenComplete((response, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                Object refusal = cause instanceof NodeException ? ((NodeException) cause).response : response;
+                lock.lock();
+                try {
+                    if(error == null && !response.hasError()){
+                        result.complete(response);
+                    } else if(refusal != null && firstRefusal[0] == null){
+                        firstRefusal[0] = refusal;
+                    } else if(cause != null){
+                        lastError[0] = cause;
+                    }
+                    if(pending.decrementAndGet() == 0 && !result.isDone()){
+                        if(firstRefusal[0] != null){
+                            result.complete(responseType.cast(firstRefusal[0]));
+                        } else {
+                            result.completeExceptionally(lastError[0]);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Send a batch to the best node not tried yet, and to the next one if it fails
+     * @param batchRequest
+     * @param tried the nodes the batch was sent to
+     * @param lastError the failure of the last node, null on the first attempt
+     * @return
+     */
+    private CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest, Set<Endpoint> tried, Throwable lastError){
+        Endpoint endpoint = tried.size() < Math.min(maxAttempts, endpoints.size()) ? choose(tried) : null;
+        if(endpoint == null){
+            return failed(lastError != null ? lastError : new IOException("no endpoint is available"));
+        }
+        tried.add(endpoint);
+        endpoint.requests.incrementAndGet();
+        long start = System.nanoTime();
+        return sendAsync(() -> endpoint.service.sendBatchAsync(batchRequest)).handle((response, error) -> {
+            if(error == null){
+                endpoint.record(System.nanoTime() - start, true);
+                return CompletableFuture.completedFuture(response);
+            }
+            endpoint.record(System.nanoTime() - start, false);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if(!(cause instanceof IOException)){
+                return PooledWeb3jService.<BatchResponse>failed(cause);
+            }
+            return sendBatchAsync(batchRequest, tried, cause);
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Send a request to one node and record the outcome
+     */
+    private <T extends Response> CompletableFuture<T> attempt(Endpoint endpoint, Request request, Class<T> responseType){
+        endpoint.requests.incrementAndGet();
+        long start = System.nanoTime();
+        return sendAsync(() -> endpoint.service.sendAsync(request, responseType)).handle((response, error) -> {
+            if(error != null){
+                endpoint.record(System.nanoTime() - start, false);
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            boolean healthy = !isNodeError(response);
+            endpoint.record(System.nanoTime() - start, healthy);
+            if(!healthy){
+                throw new NodeException(endpoint, response);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Start a request on a node, a node that throws instead of returning a future fails the future
+     */
+    private static <T> CompletableFuture<T> sendAsync(Supplier<CompletableFuture<T>> sender){
+        try {
+            return sender.get();
+        } catch (RuntimeException e){
+            return failed(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e){
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    /**
+     * The available node with the best score that is not in excluded, null if there is none.
+     * If every node is left out, the one that comes back first is used anyway
+     */
+    private Endpoint choose(Set<Endpoint> excluded){
+        List<Endpoint> candidates = new ArrayList<>(endpoints);
+        candidates.removeAll(excluded);
+        if(candidates.isEmpty()){
+            return null;
+        }
+        candidates.sort((a, b) -> Double.compare(a.score(), b.score()));
+
+        long now = System.nanoTime();
+        for(Endpoint endpoint : candidates){
+            if(endpoint.tryAcquire(now)){
+                return endpoint;
+            }
+        }
+        Endpoint soonest = candidates.get(0);
+        for(Endpoint endpoint : candidates){
+            if(endpoint.openUntil < soonest.openUntil){
+                soonest = endpoint;
+            }
+        }
+        return soonest;
+    }
+
+    /**
+     * Whether a response says the node, not the request, is the problem, e.g. a rate limit
+     */
+    private static boolean isNodeError(Response<?> response){
+        return response == null || Throttling.isThrottled(response);
+    }
+
+    /**
+     * One request, with its hedges and retries
+     */
+    private class Call<T extends Response> {
+
+        private final Request request;
+
+        private final Class<T> responseType;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Set<Endpoint> tried = new HashSet<>();
+
+        private int outstanding;
+
+        private Throwable lastError;
+
+        private Call(Request request, Class<T> responseType){
+            this.request = request;
+            this.responseType = responseType;
+        }
+
+        private CompletableFuture<T> start(){
+            launch();
+            return result;
+        }
+
+        /**
+         * Send the request to the next node, returns false if there is none left
+         */
+        private boolean launch(){
+            Endpoint endpoint;
+            lock.lock();
+            try {
+                if(result.isDone() || tried.size() >= Math.min(maxAttempts, endpoints.size())){
+                    return false;
+                }
+                endpoint = choose(tried);
+                if(endpoint == null){
+                    return false;
+                }
+                tried.add(endpoint);
+                outstanding++;
+            } finally {
+                lock.unlock();
+            }
+
+            if(hedgeDelay > 0){
+                TIMER.schedule(() -> {
+                    if(!result.isDone()){
+                        logger.debug(request.getMethod() + " is slow on " + endpoint.name + ", hedging");
+                        launch();
+                    }
+                }, hedgeDelay, TimeUnit.MILLISECONDS);
+            }
+
+            attempt(endpoint, request, responseType).whenComplete((response, error) -> {
+                if(error == null){
+                    result.complete(response);
+                    return;
+                }
+                lock.lock();
+                try {
+                    outstanding--;
+                    lastError = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                } finally {
+                    lock.unlock();
+                }
+                // Try another node at once instead of waiting for the hedge
+                if(launch()){
+                    return;
+                }
+                boolean last;
+                lock.lock();
+                try {
+                    last = outstanding == 0;
+                } finally {
+                    lock.unlock();
+                }
+                if(last){
+                    if(lastError instanceof NodeException){
+                        result.complete(responseType.cast(((NodeException) lastError).response));
+                    } else {
+                        result.completeExceptionally(lastError);
+                    }
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * A node refused the request because of its own state, the response is kept in case no other node answers
+     */
+    private static class NodeException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Response<?> response;
+
+        private NodeException(Endpoint endpoint, Response<?> response){
+            super(endpoint.name + ": " + (response == null || response.getError() == null ? "no response" : response.getError().getMessage()));
+            this.response = response;
+        }
+    }
+
+    /**
+     * A node and its stats
+     */
+    public class Endpoint {
+
+        private final String name;
+
+        private final Web3jService service;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * EWMA of the latency, in nanoseconds, 0 until the first answer so new nodes are tried first
+         */
+        private volatile double latency;
+
+        /**
+         * EWMA of the failures, between 0 and 1
+         */
+        private volatile double errorRate;
+
+        private int consecutiveFailures;
+
+        /**
+         * System.nanoTime until which the node is left out, 0 if it is not
+         */
+        private volatile long openUntil;
+
+        /**
+         * Whether the one request that tries a node after openInterval is on its way
+         */
+        private final AtomicBoolean trial = new AtomicBoolean();
+
+        private final AtomicLong requests = new AtomicLong();
+
+        private Endpoint(String name, Web3jService service){
+            this.name = name;
+            this.service = service;
+        }
+
+        /**
+         * Lower is better, errors weigh more than latency
+         */
+        private double score(){
+            return latency * (1 + 10 * errorRate);
+        }
+
+        /**
+         * Whether a request may go to the node, takes the trial of a node whose openInterval is over
+         */
+        private boolean tryAcquire(long now){
+            long until = openUntil;
+            if(until == 0){
+                return true;
+            }
+            if(now < until){
+                return false;
+            }
+            return trial.compareAndSet(false, true);
+        }
+
+        private void record(long elapsed, boolean success){
+            // A failure costs at least a hedge, so a node that refuses at once does not look fast
+            double sample = success ? elapsed : Math.max(elapsed, TimeUnit.MILLISECONDS.toNanos(hedgeDelay));
+            lock.lock();
+            try {
+                latency = latency == 0 ? sample : ALPHA * sample + (1 - ALPHA) * latency;
+                errorRate = ALPHA * (success ? 0 : 1) + (1 - ALPHA) * errorRate;
+                if(success){
+                    consecutiveFailures = 0;
+                    openUntil = 0;
+                } else {
+                    consecutiveFailures++;
+                    if(trial.get() || consecutiveFailures >= failureThreshold){
+                        if(openUntil == 0){
+                            logger.warn("endpoint " + name + " failed " + consecutiveFailures + " times in a row, leaving it out for " + openInterval + "ms");
+                        }
+                        openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openInterval);
+                    }
+                }
+                trial.set(false);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * EWMA of the latency in milliseconds
+         * @return
+         */
+        public double getLatency() {
+            return latency / 1000000.0;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        /**
+         * Whether the node is left out because it kept failing
+         * @return
+         */
+        public boolean isOpen() {
+            long until = openUntil;
+            return until != 0 && System.nanoTime() < until;
+        }
+
+        public long getRequests() {
+            return requests.get();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.blockchain.tools.eth.rpc;
+
+import org.web3j.protocol.core.Response;
+
+/**
+ * Recognizes the errors nodes return when one request asks for more than they serve at once
+ */
+public final class RpcErrors {
+
+    private RpcErrors(){
+    }
+
+    /**
+     * Whether the node refused the request for its size: too many results, a block range above its limit or a response too large,
+     * e.g. -32005 query returned more than 10000 results. A smaller request succeeds, the same one sent again does not
+     * @param error
+     * @return
+     */
+    public static boolean isTooLarge(Response.Error error){
+        if(error == null || error.getMessage() == null){
+            return false;
+        }
+        String message = error.getMessage().toLowerCase();
+        if(message.contains("rate limit") || message.contains("too many requests")){
+            return false;
+        }
+        boolean range = message.contains("range")
+                && (message.contains("limit") || message.contains("exceed") || message.contains("too large")
+                || message.contains("too wide") || message.contains("too big") || message.contains("maximum"));
+        boolean results = (message.contains("result") || message.contains("logs"))
+                && (message.contains("more than") || message.contains("too many") || message.contains("exceed") || message.contains("limit"));
+        boolean response = message.contains("response size") || message.contains("response too large");
+        return range || results || response;
+    }
+}
@@ -0,0 +1,226 @@
+package com.blockchain.tools.eth.rpc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads large JSON-RPC responses one element at a time
+ *
+ * web3j maps a whole response into objects before returning it, so a wide eth_getLogs or a full block
+ * is held in memory at once. This client parses the response stream with the Jackson streaming parser,
+ * maps one log or transaction at a time and hands it to a consumer, memory stays bounded by the largest element:
+ * <pre>
+ * StreamingRpcClient client = StreamingRpcClient.builder("https://...");
+ * client.getLogs(filter, log -&gt; { ... });
+ * </pre>
+ */
+public class StreamingRpcClient {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+    /**
+     * Address of the node
+     */
+    private String url;
+
+    private OkHttpClient httpClient;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    private StreamingRpcClient(String url, OkHttpClient httpClient){
+        this.url = url;
+        this.httpClient = httpClient;
+    }
+
+    public static StreamingRpcClient builder(String url){
+        return new StreamingRpcClient(url, new OkHttpClient());
+    }
+
+    public static StreamingRpcClient builder(String url, OkHttpClient httpClient){
+        return new StreamingRpcClient(url, httpClient);
+    }
+
+    /**
+     * eth_getLogs, each log is handed to the consumer as it is parsed
+     * @param filter
+     * @param consumer
+     * @return number of logs
+     * @throws Exception
+     */
+    public long getLogs(EthFilter filter, ResultConsumer<Log> consumer) throws Exception {
+        try (InputStream response = post("eth_getLogs", Arrays.asList(filter))) {
+            return readLogs(response, consumer);
+        }
+    }
+
+    /**
+     * eth_getBlockByNumber with full transactions, each transaction is handed to the consumer as it is parsed
+     * @param blockParameter
+     * @param consumer
+     * @return number of transactions
+     * @throws Exception
+     */
+    public long getBlockTransactions(DefaultBlockParameter blockParameter, ResultConsumer<Transaction> consumer) throws Exception {
+        try (InputStream response = post("eth_getBlockByNumber", Arrays.asList(blockParameter.getValue(), true))) {
+            return readBlockTransactions(response, consumer);
+        }
+    }
+
+    /**
+     * Parse an eth_getLogs response
+     * @param response
+     * @param consumer
+     * @return number of logs
+     * @throws Exception the error of the response, or the failure of the consumer
+     */
+    public static long readLogs(InputStream response, ResultConsumer<Log> consumer) throws Exception {
+        return readResult(response, (parser, objectMapper) -> readArray(parser, objectMapper, Log.class, consumer));
+    }
+
+    /**
+     * Parse an eth_getBlockByNumber response with full transactions
+     * @param response
+     * @param consumer
+     * @return number of transactions
+     * @throws Exception the error of the response, or the failure of the consumer
+     */
+    public static long readBlockTransactions(InputStream response, ResultConsumer<Transaction> consumer) throws Exception {
+        return readResult(response, (parser, objectMapper) -> {
+            if(parser.currentToken() != JsonToken.START_OBJECT){
+                parser.skipChildren();
+                return 0;
+            }
+            long count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME){
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if("transactions".equals(field)){
+                    count = readArray(parser, objectMapper, EthBlock.TransactionObject.class, consumer);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Send a request and return the body of the response, unread
+     * @param method
+     * @param params
+     * @return
+     * @throws Exception
+     */
+    private InputStream post(String method, List<Object> params) throws Exception {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("jsonrpc", "2.0");
+        request.put("method", method);
+        request.set("params", objectMapper.valueToTree(params));
+        request.put("id", nextId.incrementAndGet());
+
+        Response response = httpClient.newCall(new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(objectMapper.writeValueAsBytes(request), JSON))
+                .build()
+        ).execute();
+
+        ResponseBody body = response.body();
+        if(!response.isSuccessful() || body == null){
+            response.close();
+            throw new Exception(method + " failed with HTTP " + response.code());
+        }
+        return body.byteStream();
+    }
+
+    /**
+     * Walk the response object, the result is handed to the reader, the error is thrown
+     * @param response
+     * @param resultReader
+     * @return
+     * @throws Exception
+     */
+    private static long readResult(InputStream response, ResultReader resultReader) throws Exception {
+        ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+        try (JsonParser parser = objectMapper.getFactory().createParser(response)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT){
+                throw new Exception("the response is not a JSON-RPC object");
+            }
+            long count = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME){
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if("result".equals(field)){
+                    count = resultReader.read(parser, objectMapper);
+                } else if("error".equals(field)){
+                    JsonNode error = objectMapper.readTree(parser);
+                    throw new Exception(error.path("message").asText(error.toString()));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Map the elements of the array the parser is on one by one
+     * @param parser
+     * @param objectMapper
+     * @param type
+     * @param consumer
+     * @param <T>
+     * @return number of elements
+     * @throws Exception
+     */
+    private static <T> long readArray(JsonParser parser, ObjectMapper objectMapper, Class<? extends T> type, ResultConsumer<T> consumer) throws Exception {
+        if(parser.currentToken() != JsonToken.START_ARRAY){
+            parser.skipChildren();
+            return 0;
+        }
+        long count = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT){
+            consumer.accept(objectMapper.readValue(parser, type));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the result of a response, the parser is on its first token
+     */
+    private interface ResultReader {
+
+        long read(JsonParser parser, ObjectMapper objectMapper) throws Exception;
+    }
+
+    /**
+     * Receives the elements of a response one at a time
+     * @param <T>
+     */
+    public interface ResultConsumer<T> {
+
+        void accept(T element) throws Exception;
+    }
+}
@@ -0,0 +1,50 @@
+package com.blockchain.tools.eth.rpc;
+
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Recognizes the ways nodes and providers say they are overloaded
+ */
+class Throttling {
+
+    /**
+     * Whether a response is a rate limit error, e.g. -32005 limit exceeded
+     *
+     * Nodes also use -32005 and limit exceeded for requests that are too large,
+     * those fail the same way when sent again and are not throttling
+     * @param response
+     * @return
+     */
+    static boolean isThrottled(Response<?> response){
+        if(response == null || !response.hasError() || RpcErrors.isTooLarge(response.getError())){
+            return false;
+        }
+        int code = response.getError().getCode();
+        String message = response.getError().getMessage() == null ? "" : response.getError().getMessage().toLowerCase();
+        return code == -32005
+                || code == 429
+                || message.contains("rate limit")
+                || message.contains("limit exceeded")
+                || message.contains("too many requests")
+                || message.contains("capacity exceeded");
+    }
+
+    /**
+     * Whether a failure is an HTTP 429 or a timeout
+     * @param e
+     * @return
+     */
+    static boolean isThrottled(IOException e){
+        if(e instanceof SocketTimeoutException){
+            return true;
+        }
+        String message = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+        return message.contains("429")
+                || message.contains("too many requests")
+                || message.contains("timeout")
+                || message.contains("timed out");
+    }
+}
@@ -0,0 +1,41 @@
+package com.blockchain.tools.eth.signer;
+
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionEncoder;
+
+/**
+ * Signs with a key pair held in memory
+ */
+public class CredentialsSigner implements Signer {
+
+    /**
+     * Key pair and address, derived once
+     */
+    private final Credentials credentials;
+
+    private CredentialsSigner(Credentials credentials){
+        this.credentials = credentials;
+    }
+
+    public static CredentialsSigner builder(Credentials credentials){
+        return new CredentialsSigner(credentials);
+    }
+
+    @Override
+    public String getAddress() {
+        return credentials.getAddress();
+    }
+
+    @Override
+    public byte[] signTransaction(RawTransaction rawTransaction, long chainId) {
+        if(chainId <= -1L){
+            return TransactionEncoder.signMessage(rawTransaction, credentials);
+        }
+        return TransactionEncoder.signMessage(rawTransaction, chainId, credentials);
+    }
+
+    public Credentials getCredentials() {
+        return credentials;
+    }
+}
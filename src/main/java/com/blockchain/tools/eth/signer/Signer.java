@@ -0,0 +1,27 @@
+package com.blockchain.tools.eth.signer;
+
+import org.web3j.crypto.RawTransaction;
+
+/**
+ * Signs transactions for one address
+ *
+ * Implement it to keep the key somewhere else, e.g. a keystore or an HSM,
+ * and pass it with {@link com.blockchain.tools.eth.contract.util.model.SendModel#setSigner(Signer)}
+ */
+public interface Signer {
+
+    /**
+     * Address of the key
+     * @return
+     */
+    String getAddress();
+
+    /**
+     * Sign a transaction
+     * @param rawTransaction
+     * @param chainId -1 to sign without EIP-155 replay protection
+     * @return the signed transaction, ready for eth_sendRawTransaction
+     * @throws Exception
+     */
+    byte[] signTransaction(RawTransaction rawTransaction, long chainId) throws Exception;
+}
@@ -0,0 +1,118 @@
+package com.blockchain.tools.eth.signer;
+
+import org.web3j.crypto.Credentials;
+import org.web3j.utils.Numeric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps signers so keys are not parsed and derived again on every send
+ *
+ * Deriving the address of a private key costs an EC scalar multiplication,
+ * so signers created from private keys are kept in a bounded LRU cache.
+ * Signers registered by address, e.g. keystore or HSM signers, are kept until they are removed
+ */
+public class SignerRegistry {
+
+    /**
+     * Default maximum number of private key signers kept
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Signers derived from private keys, least recently used first
+     */
+    private static final LinkedHashMap<String, CredentialsSigner> DERIVED = new LinkedHashMap<String, CredentialsSigner>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CredentialsSigner> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    /**
+     * Signers registered by address, keyed by lower case address
+     */
+    private static final Map<String, Signer> REGISTERED = new ConcurrentHashMap<>();
+
+    /**
+     * Set the maximum number of private key signers kept
+     * @param size
+     */
+    public static void setMaxSize(int size){
+        maxSize = size;
+    }
+
+    /**
+     * Get the signer of a private key, the key pair is derived on first use only
+     * @param privateKey
+     * @return
+     */
+    public static CredentialsSigner get(String privateKey){
+        String key = Numeric.cleanHexPrefix(privateKey.trim()).toLowerCase();
+
+        LOCK.lock();
+        try {
+            CredentialsSigner signer = DERIVED.get(key);
+            if(signer != null){
+                return signer;
+            }
+        } finally {
+            LOCK.unlock();
+        }
+
+        // Derive outside the lock, two threads may derive the same key once, the result is the same
+        CredentialsSigner signer = CredentialsSigner.builder(Credentials.create(key));
+
+        LOCK.lock();
+        try {
+            DERIVED.put(key, signer);
+        } finally {
+            LOCK.unlock();
+        }
+        return signer;
+    }
+
+    /**
+     * Register a signer, it can then be looked up by its address
+     * @param signer
+     */
+    public static void register(Signer signer){
+        REGISTERED.put(signer.getAddress().toLowerCase(), signer);
+    }
+
+    /**
+     * Get the signer registered for an address
+     * @param address
+     * @return null if none is registered
+     */
+    public static Signer getByAddress(String address){
+        return REGISTERED.get(address.trim().toLowerCase());
+    }
+
+    /**
+     * Remove the signer registered for an address
+     * @param address
+     */
+    public static void remove(String address){
+        REGISTERED.remove(address.trim().toLowerCase());
+    }
+
+    /**
+     * Forget all signers derived from private keys
+     */
+    public static void clear(){
+        LOCK.lock();
+        try {
+            DERIVED.clear();
+        } finally {
+            LOCK.unlock();
+        }
+    }
+}